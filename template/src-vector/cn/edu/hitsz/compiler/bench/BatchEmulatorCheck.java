@@ -0,0 +1,146 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.utils.IRBatchEmulator;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 用随机生成的 IR 检查 {@link IRBatchEmulator} 与 {@link IREmulator} 的结果逐 lane 相同
+ * <br>
+ * 程序由所有二元运算 (含 DIV 与 MULH) 与 MOV 组成, 变量可以在赋值之前被读取, 即程序的输入; RET 之后还可能有不会执行的指令.
+ * 输入的值偏向边界: 0, ±1, {@link Integer#MIN_VALUE}, {@link Integer#MAX_VALUE} 与 31, 32 这样的移位量, 因此常出现除以 0
+ * 与 {@code MIN_VALUE / -1}. 每个程序的 lane 数随机, 覆盖向量化之后剩下的 lane; 每隔若干个程序用一次足以拆分 fork-join 任务的 lane 数.
+ * <br>
+ * 对每条 lane, 在程序前加上给各输入赋值的 MOV, 交给 {@link IREmulator} 执行作为期望的结果.
+ * 发现不一致时抛出异常并给出出错的程序与输入, 否则输出检查的程序数与 lane 数.
+ * <br>
+ * 依赖 src-vector, 编译与运行方式见仓库根目录的 README. 用法 (在 template 目录下运行):
+ * <pre>
+ * java --add-modules jdk.incubator.vector cn.edu.hitsz.compiler.bench.BatchEmulatorCheck [programs=3000] [seed=1] [lanes=300] [large=25000]
+ * </pre>
+ * lanes 是一般程序最多的 lane 数; 每 {@link #LARGE_EVERY} 个程序中有一个使用 large 条 lane.
+ */
+public class BatchEmulatorCheck {
+    // 程序中使用的具名变量数
+    private static final int VARIABLES = 6;
+    // 程序最多的指令数 (不含 RET)
+    private static final int MAX_LENGTH = 40;
+    private static final int LARGE_EVERY = 50;
+    private static final int[] SPECIAL_VALUES = {0, 1, -1, 2, 31, 32, Integer.MIN_VALUE, Integer.MAX_VALUE};
+    private static final List<InstructionKind> KINDS = Arrays.stream(InstructionKind.values())
+        .filter(InstructionKind::isBinary).toList();
+
+    public static void main(String[] args) {
+        var programs = 3000;
+        var seed = 1L;
+        var maxLanes = 300;
+        var large = 25000;
+        for (final var arg : args) {
+            final var pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "programs" -> programs = Integer.parseInt(pair[1]);
+                case "seed" -> seed = Long.parseLong(pair[1]);
+                case "lanes" -> maxLanes = Integer.parseInt(pair[1]);
+                case "large" -> large = Integer.parseInt(pair[1]);
+                default -> throw new RuntimeException("Unknown argument: " + arg);
+            }
+        }
+
+        final var random = new Random(seed);
+        var checkedLanes = 0L;
+        for (int i = 0; i < programs; i++) {
+            final var program = randomProgram(random);
+            final var emulator = IRBatchEmulator.load(program);
+            final var inputs = emulator.getInputs();
+            final var lanes = inputs.isEmpty() ? 1 : i % LARGE_EVERY == 0 ? large : 1 + random.nextInt(maxLanes);
+            final var columns = new int[inputs.size()][lanes];
+            for (final var column : columns) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    column[lane] = randomValue(random);
+                }
+            }
+
+            final var actual = emulator.execute(columns);
+            if (actual.length != lanes) {
+                throw new RuntimeException("Program #%d: %d results for %d lanes%n%s".formatted(i, actual.length, lanes, format(program)));
+            }
+            for (int lane = 0; lane < lanes; lane++) {
+                final var prefixed = new ArrayList<Instruction>(inputs.size() + program.size());
+                for (int k = 0; k < inputs.size(); k++) {
+                    prefixed.add(Instruction.createMov(inputs.get(k), IRImmediate.of(columns[k][lane])));
+                }
+                prefixed.addAll(program);
+                final var expected = IREmulator.load(prefixed).execute().orElseThrow();
+                if (actual[lane] != expected) {
+                    final var values = new ArrayList<String>();
+                    for (int k = 0; k < inputs.size(); k++) {
+                        values.add(inputs.get(k) + " = " + columns[k][lane]);
+                    }
+                    throw new RuntimeException("Program #%d lane %d of %d with %s returned %d, expected %d%n%s".formatted(
+                        i, lane, lanes, values, actual[lane], expected, format(program)));
+                }
+            }
+            checkedLanes += lanes;
+        }
+        System.out.printf("OK %d programs, %d lanes%n", programs, checkedLanes);
+    }
+
+    /**
+     * 生成以 RET 结尾的随机 IR, 其后可能还有几条不会执行的指令
+     */
+    private static List<Instruction> randomProgram(Random random) {
+        final var values = new IRValueFactory();
+        final var variables = new ArrayList<IRVariable>();
+        for (int i = 0; i < VARIABLES; i++) {
+            variables.add(values.named("v" + i));
+        }
+
+        final var program = new ArrayList<Instruction>();
+        final var length = random.nextInt(MAX_LENGTH + 1);
+        for (int i = 0; i < length; i++) {
+            // 结果有时写入新的临时变量, 之后的指令也可以读取它
+            final var result = random.nextInt(3) == 0 ? values.temp() : variables.get(random.nextInt(VARIABLES));
+            program.add(random.nextInt(5) == 0
+                ? Instruction.createMov(result, operand(random, variables))
+                : Instruction.createBinary(KINDS.get(random.nextInt(KINDS.size())), result,
+                operand(random, variables), operand(random, variables)));
+            if (result.isTemp()) {
+                variables.add(result);
+            }
+        }
+        program.add(Instruction.createRet(operand(random, variables)));
+        if (random.nextInt(4) == 0) {
+            program.add(Instruction.createAdd(variables.get(0), variables.get(0), variables.get(1)));
+            program.add(Instruction.createRet(variables.get(0)));
+        }
+        return program;
+    }
+
+    private static IRValue operand(Random random, List<IRVariable> variables) {
+        return random.nextInt(4) == 0 ? IRImmediate.of(randomValue(random)) : variables.get(random.nextInt(variables.size()));
+    }
+
+    private static int randomValue(Random random) {
+        return switch (random.nextInt(3)) {
+            case 0 -> SPECIAL_VALUES[random.nextInt(SPECIAL_VALUES.length)];
+            case 1 -> random.nextInt(201) - 100;
+            default -> random.nextInt();
+        };
+    }
+
+    private static String format(List<Instruction> program) {
+        final var builder = new StringBuilder();
+        program.forEach(instruction -> builder.append("    ").append(instruction).append(System.lineSeparator()));
+        return builder.toString();
+    }
+}
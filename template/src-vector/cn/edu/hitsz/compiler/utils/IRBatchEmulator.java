@@ -0,0 +1,303 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.ir.dataflow.Liveness;
+import cn.edu.hitsz.compiler.ir.dataflow.VariableIndex;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.io.Serial;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 对许多组输入批量模拟执行同一段 IR
+ * <br>
+ * 在赋值之前就被读取的变量视为程序的输入 (见 {@link #getInputs()}). 输入按列给出: 第 k 列是第 k 个输入在各组 (各条 lane) 中的值,
+ * 结果也是一列, 第 j 个元素是第 j 组输入下程序的返回值. 与 {@link IREmulator} 一样只执行到第一条 RET.
+ * <br>
+ * 执行方式:
+ * <ul>
+ *     <li>加载时对 IR 做活跃变量分析, 把变量分配到尽量少的列上: 变量死亡之后它的列即可给之后的变量使用, 结果不被读取的指令直接跳过</li>
+ *     <li>lane 被分成若干块, 用 fork-join 分给各个核; 每块再按 {@link #TILE} 条 lane 分段, 每段内逐条指令地对整段 lane 计算,
+ *     用 Vector API 一次处理 {@link IntVector#SPECIES_PREFERRED} 条 lane, 末尾不足的部分逐个计算</li>
+ *     <li>DIV 在向量化时把除数为 0 的 lane 屏蔽掉, 结果另外置为 -1; MULH 需要 64 位乘积, 逐个 lane 计算</li>
+ * </ul>
+ * Vector API 仍是孵化模块, 因此本类放在独立的源码目录 src-vector 中, 编译器本身不依赖它. 需要时与 src 一起编译,
+ * 编译与运行时都要加上 {@code --add-modules jdk.incubator.vector}, 见仓库根目录的 README.
+ */
+public final class IRBatchEmulator {
+    public static IRBatchEmulator load(List<Instruction> instructions) {
+        return new IRBatchEmulator(instructions);
+    }
+
+    public static IRBatchEmulator load(IRBuffer buffer) {
+        return new IRBatchEmulator(buffer.toInstructions());
+    }
+
+    /**
+     * @return 程序的输入, 即在赋值之前就被读取的变量, 按在 IR 中首次出现的顺序
+     */
+    public List<IRVariable> getInputs() {
+        return Collections.unmodifiableList(inputs);
+    }
+
+    /**
+     * @param inputs 以 {@link #getInputs()} 的顺序排列的输入列, 各列长度相同
+     * @return 各组输入下程序的返回值; 程序没有输入时只有一个元素
+     * @throws RuntimeException 输入的列数或长度不对, 或者程序没有 RET
+     */
+    public int[] execute(int[][] inputs) {
+        if (inputs.length != this.inputs.size()) {
+            throw new RuntimeException("Expected %d input columns %s, got %d".formatted(this.inputs.size(), this.inputs, inputs.length));
+        }
+        final var lanes = inputs.length == 0 ? 1 : inputs[0].length;
+        for (final var column : inputs) {
+            if (column.length != lanes) {
+                throw new RuntimeException("All input columns must have the same length, got %d and %d".formatted(lanes, column.length));
+            }
+        }
+        if (!hasReturn) {
+            throw new RuntimeException("IR has no RET instruction");
+        }
+
+        final var result = new int[lanes];
+        ForkJoinPool.commonPool().invoke(new Task(this, inputs, result, 0, lanes));
+        return result;
+    }
+
+    /**
+     * 每段的 lane 数. 一段中所有列的大小是列数 * TILE * 4 字节, 应当能放进 L2 缓存
+     */
+    private static final int TILE = 1024;
+    // 每个 fork-join 任务至少处理的 lane 数, 再少就不值得拆分
+    private static final int SPLIT_THRESHOLD = 8 * TILE;
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+    // 操作数编码中的立即数标志位, 见 code 的说明
+    private static final int LHS_IMMEDIATE = 1;
+    private static final int RHS_IMMEDIATE = 2;
+
+    private final List<IRVariable> inputs = new ArrayList<>();
+    // 以输入的序号为下标, 该输入所在的列
+    private final int[] inputColumns;
+    private final int columnCount;
+    // 每条要执行的指令占 5 个 int: 种类的序号, 结果列, 左操作数, 右操作数, 立即数标志位.
+    // 操作数是列号, 或者在对应的标志位被置位时是立即数的值
+    private final int[] code;
+    private final boolean hasReturn;
+    // RET 的操作数: 列号或立即数的值
+    private final int returnValue;
+    private final boolean returnsImmediate;
+
+    private IRBatchEmulator(List<Instruction> instructions) {
+        var end = instructions.size();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i).getKind().isReturn()) {
+                end = i + 1;
+                break;
+            }
+        }
+        final var executed = instructions.subList(0, end);
+        for (final var instruction : executed) {
+            if (instruction.getKind().isPhi()) {
+                throw new RuntimeException("Can NOT emulate PHI, leave SSA form first");
+            }
+        }
+
+        // 执行到第一条 RET 为止的指令构成一个基本块, 入口处活跃的变量就是输入
+        final var liveness = Liveness.of(executed);
+        final var variables = liveness.getVariables();
+        final var columnOf = new int[variables.size()];
+        Arrays.fill(columnOf, -1);
+        final var free = new ArrayDeque<Integer>();
+        var columns = 0;
+
+        final var liveIn = liveness.liveIn(0);
+        this.inputColumns = new int[Bits.cardinality(liveIn)];
+        for (int index = Bits.nextSetBit(liveIn, 0); index >= 0; index = Bits.nextSetBit(liveIn, index + 1)) {
+            inputColumns[inputs.size()] = columns;
+            columnOf[index] = columns++;
+            inputs.add(variables.variable(index));
+        }
+
+        final var encoded = new ArrayList<int[]>(end);
+        var returned = false;
+        var returnOperand = 0;
+        var returnImmediate = false;
+        for (int i = 0; i < end; i++) {
+            final var instruction = executed.get(i);
+            final var operands = instruction.getOperands();
+            final var lhs = encode(operands.get(0), variables, columnOf);
+            final var rhs = operands.size() > 1 ? encode(operands.get(1), variables, columnOf) : 0;
+            final var flags = (operands.get(0) instanceof IRImmediate ? LHS_IMMEDIATE : 0)
+                | (operands.size() > 1 && operands.get(1) instanceof IRImmediate ? RHS_IMMEDIATE : 0);
+            if (instruction.getKind().isReturn()) {
+                returned = true;
+                returnOperand = lhs;
+                returnImmediate = (flags & LHS_IMMEDIATE) != 0;
+                break;
+            }
+
+            // 先回收在这条指令处死亡的操作数的列, 结果可以写入其中: 每个 lane 都是先读操作数再写结果
+            final var result = variables.indexOf(instruction.getResult());
+            final var dying = liveness.diesAt(i);
+            var resultDies = false;
+            for (final var index : dying) {
+                resultDies |= index == result;
+                if (columnOf[index] >= 0) {
+                    free.push(columnOf[index]);
+                    columnOf[index] = -1;
+                }
+            }
+            // 结果不再被读取的指令对返回值没有影响
+            if (resultDies) {
+                continue;
+            }
+            if (columnOf[result] < 0) {
+                columnOf[result] = free.isEmpty() ? columns++ : free.pop();
+            }
+            encoded.add(new int[]{instruction.getKind().ordinal(), columnOf[result], lhs, rhs, flags});
+        }
+
+        this.columnCount = Math.max(columns, 1);
+        this.code = new int[encoded.size() * 5];
+        for (int i = 0; i < encoded.size(); i++) {
+            System.arraycopy(encoded.get(i), 0, code, i * 5, 5);
+        }
+        this.hasReturn = returned;
+        this.returnValue = returnOperand;
+        this.returnsImmediate = returnImmediate;
+    }
+
+    /**
+     * @return 立即数的值, 或变量所在的列
+     */
+    private static int encode(IRValue value, VariableIndex variables, int[] columnOf) {
+        if (value instanceof IRImmediate immediate) {
+            return immediate.getValue();
+        }
+        return columnOf[variables.indexOf((IRVariable) value)];
+    }
+
+    /**
+     * 计算 [from, to) 中的 lane, 过多时一分为二
+     * <br>
+     * RecursiveAction 实现了 Serializable, 但任务只在 fork-join 池中使用, 从不序列化, 因此不要求各字段可序列化
+     */
+    @SuppressWarnings("serial")
+    private static class Task extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        Task(IRBatchEmulator emulator, int[][] inputs, int[] result, int from, int to) {
+            this.emulator = emulator;
+            this.inputs = inputs;
+            this.result = result;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                // 在 TILE 的整数倍处拆分, 使得只有最后一段不满
+                final var middle = from + (to - from) / 2 / TILE * TILE;
+                invokeAll(new Task(emulator, inputs, result, from, middle), new Task(emulator, inputs, result, middle, to));
+                return;
+            }
+
+            final var columns = new int[emulator.columnCount][TILE];
+            for (int base = from; base < to; base += TILE) {
+                emulator.runTile(inputs, result, columns, base, Math.min(TILE, to - base));
+            }
+        }
+
+        private final IRBatchEmulator emulator;
+        private final int[][] inputs;
+        private final int[] result;
+        private final int from;
+        private final int to;
+    }
+
+    /**
+     * 对从 base 开始的 length 条 lane 执行所有指令
+     */
+    private void runTile(int[][] inputs, int[] result, int[][] columns, int base, int length) {
+        for (int k = 0; k < inputs.length; k++) {
+            System.arraycopy(inputs[k], base, columns[inputColumns[k]], 0, length);
+        }
+
+        final var bound = SPECIES.loopBound(length);
+        for (int pc = 0; pc < code.length; pc += 5) {
+            final var kind = KINDS[code[pc]];
+            final var target = columns[code[pc + 1]];
+            final var flags = code[pc + 4];
+            final var lhsImmediate = (flags & LHS_IMMEDIATE) != 0;
+            final var rhsImmediate = (flags & RHS_IMMEDIATE) != 0;
+            final var lhs = lhsImmediate ? null : columns[code[pc + 2]];
+            final var rhs = rhsImmediate ? null : columns[code[pc + 3]];
+            final var lhsValue = code[pc + 2];
+            final var rhsValue = code[pc + 3];
+
+            if (kind == InstructionKind.MOV) {
+                if (lhsImmediate) {
+                    Arrays.fill(target, 0, length, lhsValue);
+                } else if (lhs != target) {
+                    System.arraycopy(lhs, 0, target, 0, length);
+                }
+                continue;
+            }
+
+            var lane = 0;
+            if (kind != InstructionKind.MULH) {
+                final var lhsBroadcast = lhsImmediate ? IntVector.broadcast(SPECIES, lhsValue) : null;
+                final var rhsBroadcast = rhsImmediate ? IntVector.broadcast(SPECIES, rhsValue) : null;
+                for (; lane < bound; lane += SPECIES.length()) {
+                    final var a = lhsImmediate ? lhsBroadcast : IntVector.fromArray(SPECIES, lhs, lane);
+                    final var b = rhsImmediate ? rhsBroadcast : IntVector.fromArray(SPECIES, rhs, lane);
+                    apply(kind, a, b).intoArray(target, lane);
+                }
+            }
+            // 向量化剩下的 lane, 以及 MULH
+            for (; lane < length; lane++) {
+                target[lane] = kind.apply(lhsImmediate ? lhsValue : lhs[lane], rhsImmediate ? rhsValue : rhs[lane]);
+            }
+        }
+
+        if (returnsImmediate) {
+            Arrays.fill(result, base, base + length, returnValue);
+        } else {
+            System.arraycopy(columns[returnValue], 0, result, base, length);
+        }
+    }
+
+    private static IntVector apply(InstructionKind kind, IntVector a, IntVector b) {
+        return switch (kind) {
+            case ADD -> a.add(b);
+            case SUB -> a.sub(b);
+            case MUL -> a.mul(b);
+            // 与标量的移位一样, 移位量只取低 5 位
+            case SLL -> a.lanewise(VectorOperators.LSHL, b);
+            case SRL -> a.lanewise(VectorOperators.LSHR, b);
+            case SRA -> a.lanewise(VectorOperators.ASHR, b);
+            case DIV -> {
+                // 向量除以 0 会抛出异常, 先把这些 lane 的除数换成 1, 再把结果置为 -1
+                final var zero = b.eq(0);
+                yield a.div(b.blend(1, zero)).blend(-1, zero);
+            }
+            default -> throw new RuntimeException("Can NOT vectorize IR kind: " + kind);
+        };
+    }
+}
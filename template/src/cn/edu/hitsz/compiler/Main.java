@@ -1,6 +1,11 @@
 package cn.edu.hitsz.compiler;
 
 import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRFile;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.pass.PassManager;
+import cn.edu.hitsz.compiler.ir.pass.PassRegistry;
 import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.parser.IRGenerator;
@@ -9,15 +14,48 @@ import cn.edu.hitsz.compiler.parser.SemanticAnalyzer;
 import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
 import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
 import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.parser.trace.ReductionTrace;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 import cn.edu.hitsz.compiler.utils.IREmulator;
+import cn.edu.hitsz.compiler.utils.IRJit;
+import cn.edu.hitsz.compiler.utils.IRProfile;
 
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 
 public class Main {
+    /**
+     * 不带参数时执行完整的编译流程. 可用的参数:
+     * <ul>
+     *     <li>{@code --from-ir[=路径]}: 只运行后端, 直接读取之前输出的二进制中间代码 (默认为
+     *     {@link FilePathConfig#INTERMEDIATE_CODE_BINARY_PATH}), 不再进行词法分析与语法分析.
+     *     若源代码在生成该文件之后被修改过, 则报错.</li>
+     *     <li>{@code --passes=a,b,c}: 要运行的 IR pass, 按给出的顺序执行; 默认为 {@link PassRegistry#defaultPipeline()},
+     *     {@code --passes=} 表示不运行任何 pass</li>
+     *     <li>{@code --no-verify}: 不在每个 pass 之后验证 IR</li>
+     *     <li>{@code --time-passes}: 在标准输出打印各 pass 的耗时与指令条数</li>
+     *     <li>{@code --sethi-ullman}: 按 Sethi–Ullman 顺序生成表达式的 IR, 见 {@link IRGenerator#setSethiUllman(boolean)}</li>
+     *     <li>{@code --jit}: 把 IR 编译为 JVM 字节码执行, 代替模拟执行, 见 {@link IRJit}; 程序过大时仍然模拟执行</li>
+     *     <li>{@code --profile}: 模拟执行时记录剖析数据, 写入 {@link FilePathConfig#IR_PROFILE_PATH}, 并用于汇编生成时的寄存器分配.
+     *     与 {@code --jit} 同时给出时仍然模拟执行</li>
+     *     <li>{@code --profile-use=路径}: 读取之前输出的剖析数据用于寄存器分配, 不在本次执行中剖析</li>
+     * </ul>
+     */
     public static void main(String[] args) {
+        final var options = Options.parse(args);
+
+        if (options.irPath != null) {
+            final var irFile = IRFile.read(options.irPath);
+            if (!irFile.isGeneratedFrom(FilePathConfig.SRC_CODE_PATH)) {
+                throw new RuntimeException("Binary IR %s is stale: source code has changed".formatted(options.irPath));
+            }
+            runBackend(irFile.getBuffer(), IRValueFactory.after(irFile.getBuffer()), options);
+            return;
+        }
+
         // 构建符号表以供各部分使用
         TokenKind.loadTokenKinds();
         final var symbolTable = new SymbolTable();
@@ -45,8 +83,9 @@ public class Main {
         parser.loadTokens(tokens);
         parser.loadLRTable(lrTable);
 
-        // 加入生成规约列表的 Observer
-        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction());
+        // 加入生成规约列表的 Observer, 规约列表在解析过程中直接写入文件
+        final var trace = ReductionTrace.text(FilePathConfig.PARSER_PATH);
+        final var productionCollector = new ProductionCollector(GrammarInfo.getBeginProduction(), trace);
         parser.registerObserver(productionCollector);
 
         // 加入用作语义检查的 Observer
@@ -54,26 +93,96 @@ public class Main {
         parser.registerObserver(semanticAnalyzer);
 
         // 加入用作 IR 生成的 Observer
-        final var irGenerator = new IRGenerator();
+        final var irGenerator = new IRGenerator().setSethiUllman(options.sethiUllman);
         parser.registerObserver(irGenerator);
 
-        // 执行语法解析并在解析过程中依次调用各 Observer
-        parser.run();
+        // 执行语法解析并在解析过程中依次调用各 Observer; 无论解析是否出错, 规约列表都会写完并关闭
+        try (trace) {
+            parser.run();
+        }
 
         // 各 Observer 输出结果
-        productionCollector.dumpToFile(FilePathConfig.PARSER_PATH);
         symbolTable.dumpTable(FilePathConfig.NEW_SYMBOL_TABLE);
-        final var instructions = irGenerator.getIR();
+        final var instructions = irGenerator.getIRBuffer();
         irGenerator.dumpIR(FilePathConfig.INTERMEDIATE_CODE_PATH);
+        irGenerator.dumpIRBinary(FilePathConfig.INTERMEDIATE_CODE_BINARY_PATH, IRFile.hashSource(FilePathConfig.SRC_CODE_PATH));
+
+        runBackend(instructions, irGenerator.getValueFactory(), options);
+    }
+
+    private static void runBackend(IRBuffer frontEndIR, IRValueFactory values, Options options) {
+        // 在 IR 上依次运行各 pass
+        final var passManager = new PassManager(values)
+            .setVerify(options.verify)
+            .addAll(options.passes);
+        final var instructions = IRBuffer.of(passManager.run(frontEndIR.toInstructions()));
+        instructions.dump(FilePathConfig.OPTIMIZED_CODE_PATH);
+        passManager.dumpReports(FilePathConfig.PASS_REPORT_PATH);
+        if (options.timePasses) {
+            passManager.formatReports().forEach(System.out::println);
+        }
 
         // 模拟执行 IR 并输出结果
-        final var emulator = IREmulator.load(instructions);
-        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, emulator.execute().map(Objects::toString).orElse("No return value"));
+        IRProfile profile = options.profileUsePath == null ? null : IRProfile.read(options.profileUsePath);
+        final Optional<Integer> result;
+        if (options.jit && !options.profile && IRJit.canCompile(instructions)) {
+            result = IRJit.compile(instructions).execute();
+        } else {
+            final var emulator = IREmulator.load(instructions).setProfiling(options.profile);
+            result = emulator.execute();
+            if (options.profile) {
+                profile = emulator.getProfile();
+                profile.dump(FilePathConfig.IR_PROFILE_PATH);
+            }
+        }
+        FileUtils.writeFile(FilePathConfig.EMULATE_RESULT, result.map(Objects::toString).orElse("No return value"));
 
         // 由 IR 生成汇编
-        final var asmGenerator = new AssemblyGenerator();
+        final var asmGenerator = new AssemblyGenerator(values).setProfile(profile);
         asmGenerator.loadIR(instructions);
         asmGenerator.run();
         asmGenerator.dump(FilePathConfig.ASSEMBLY_LANGUAGE_PATH);
     }
+
+    /**
+     * 命令行参数, 见 {@link #main(String[])}
+     */
+    private static class Options {
+        String irPath = null;
+        List<String> passes = PassRegistry.defaultPipeline();
+        boolean verify = true;
+        boolean timePasses = false;
+        boolean sethiUllman = false;
+        boolean jit = false;
+        boolean profile = false;
+        String profileUsePath = null;
+
+        static Options parse(String[] args) {
+            final var options = new Options();
+            for (final var arg : args) {
+                if (arg.equals("--from-ir")) {
+                    options.irPath = FilePathConfig.INTERMEDIATE_CODE_BINARY_PATH;
+                } else if (arg.startsWith("--from-ir=")) {
+                    options.irPath = arg.substring("--from-ir=".length());
+                } else if (arg.startsWith("--passes=")) {
+                    options.passes = PassRegistry.parsePipeline(arg.substring("--passes=".length()));
+                } else if (arg.equals("--no-verify")) {
+                    options.verify = false;
+                } else if (arg.equals("--time-passes")) {
+                    options.timePasses = true;
+                } else if (arg.equals("--sethi-ullman")) {
+                    options.sethiUllman = true;
+                } else if (arg.equals("--jit")) {
+                    options.jit = true;
+                } else if (arg.equals("--profile")) {
+                    options.profile = true;
+                } else if (arg.startsWith("--profile-use=")) {
+                    options.profileUsePath = arg.substring("--profile-use=".length());
+                } else {
+                    throw new RuntimeException("Unknown argument: " + arg);
+                }
+            }
+            return options;
+        }
+    }
 }
@@ -2,7 +2,11 @@ package cn.edu.hitsz.compiler.asm;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.ir.*;
+import cn.edu.hitsz.compiler.ir.dataflow.Liveness;
+import cn.edu.hitsz.compiler.ir.pass.LegalizeImmediatesPass;
+import cn.edu.hitsz.compiler.utils.Bits;
 import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IRProfile;
 
 import java.lang.classfile.instruction.SwitchCase;
 import java.util.*;
@@ -44,8 +48,46 @@ public class AssemblyGenerator {
 
     private final List<String> asmInstructions = new ArrayList<>(List.of(".text"));
 
+    // 用于创建调整中间代码时所需的临时变量, 须与前端使用同一个工厂, 以免临时变量重名
+    private IRValueFactory values;
+
+    // 活跃变量分析的结果, 以及生成到当前指令时活跃的变量 (以 liveness 中的变量下标表示), 在 run() 中建立并逐条指令更新
+    private Liveness liveness;
+    private long[] live;
+
+    // 执行剖析, 寄存器不足时据此选择要溢出到栈上的变量; 没有时为 null
+    private IRProfile profile = null;
+    // 被溢出过的变量在栈帧中的槽号, 槽 k 位于 4k(sp)
+    private final Map<IRVariable, Integer> spillSlots = new HashMap<>();
+    // 以 liveness 中的变量下标为下标, 已生成的指令读取各变量的次数
+    private int[] readsSoFar;
+
+    public AssemblyGenerator() {
+        // 未指定工厂时, 在加载中间代码时根据其中已有的变量创建
+        this(null);
+    }
+
+    /**
+     * @param values 前端生成中间代码时所用的 IR 值工厂
+     */
+    public AssemblyGenerator(IRValueFactory values) {
+        this.values = values;
+    }
+
+    /**
+     * @param profile 执行剖析, 见 {@link IRProfile}. 寄存器不足时优先把之后被读取次数少的变量溢出到栈上, 让热的变量留在寄存器中
+     * @return this
+     */
+    public AssemblyGenerator setProfile(IRProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
     public void loadIR(List<Instruction> originInstructions) {
         // TODO: 读入前端提供的中间代码并生成所需要的信息
+        if(values == null) {
+            values = IRValueFactory.after(originInstructions);
+        }
         for(Instruction instr: originInstructions) {
             InstructionKind instrKind = instr.getKind();
             // 判断是否为ret指令，如果是ret指令，则直接丢弃后续指令
@@ -57,64 +99,46 @@ public class AssemblyGenerator {
             if(instrKind.isUnary()) {
                 instructions.add(instr);
             } else if(instrKind.isBinary()) {   // 如果指令是二元的 (有返回值, 有两个参数)，分类讨论
-                IRValue lhs = instr.getLHS();
-                IRValue rhs = instr.getRHS();
-                IRVariable result = instr.getResult();
-                // 情况一：如果两个操作数均为立即数，则将两个立即数直接进行BinaryOp操作求得结果，然后替换为MOV指令
-                if(lhs.isImmediate() && rhs.isImmediate()) {
-                    int opResult = 0;
-                    if(instrKind == InstructionKind.ADD) {
-                        opResult = ((IRImmediate)lhs).getValue() + ((IRImmediate)rhs).getValue();
-                    }else if(instrKind == InstructionKind.SUB) {
-                        opResult = ((IRImmediate)lhs).getValue() - ((IRImmediate)rhs).getValue();
-                    }else if(instrKind == InstructionKind.MUL) {
-                        opResult = ((IRImmediate)lhs).getValue() * ((IRImmediate)rhs).getValue();
-                    }else{
-                        System.out.println("Error");
-                    }
-                    instructions.add(Instruction.createMov(result, IRImmediate.of(opResult)));
-                // 情况二：如果左操作数为立即数，右操作数为变量，且运算类型为减法或乘法，
-                // 则用MOV指令将立即数存入临时变量temp，转为无立即数指令
-                // 如果为加法，则只需要将立即数移至右边即可
-                }else if(lhs.isImmediate() && rhs.isIRVariable()){
-                    if(instrKind == InstructionKind.ADD){
-                        instructions.add(Instruction.createAdd(result, rhs, lhs));
-                    }else if(instrKind == InstructionKind.SUB){
-                        IRVariable temp = IRVariable.temp();
-                        instructions.add(Instruction.createMov(temp, lhs));
-                        instructions.add(Instruction.createSub(result, temp, rhs));
-                    }else if(instrKind == InstructionKind.MUL){
-                        IRVariable temp = IRVariable.temp();
-                        instructions.add(Instruction.createMov(temp, lhs));
-                        instructions.add(Instruction.createMul(result, temp, rhs));
-                    }else{
-                        System.out.println("Error");
-                    }
-                // 情况三：如果左操作数为变量，右操作数为立即数，且运算类型为减法或乘法，
-                // 则用MOV指令将立即数存入临时变量temp，转为无立即数指令
-                // 如果为加法，不需要额外操作，直接加入instructions即可
-                }else if(lhs.isIRVariable() && rhs.isImmediate()){
-                    if(instrKind == InstructionKind.ADD){
-                        instructions.add(instr);
-                    }else if(instrKind == InstructionKind.SUB){
-                        IRVariable temp = IRVariable.temp();
-                        instructions.add(Instruction.createMov(temp, rhs));
-                        instructions.add(Instruction.createSub(result, lhs, temp));
-                    }else if(instrKind == InstructionKind.MUL){
-                        IRVariable temp = IRVariable.temp();
-                        instructions.add(Instruction.createMov(temp, rhs));
-                        instructions.add(Instruction.createMul(result, lhs, temp));
-                    }else{
-                        System.out.println("Error");
-                    }
-                // 情况四：如果两个操作数均为变量，直接加入instructions即可
-                }else{
-                    instructions.add(instr);
-                }
+                loadBinary(instrKind, instr.getResult(), instr.getLHS(), instr.getRHS());
+            }
+        }
+    }
+
+    /**
+     * 直接从按列存储的 IR 中加载, 与 {@link #loadIR(List)} 的效果相同, 但不需要先还原出整个指令列表
+     *
+     * @param buffer 前端提供的中间代码
+     */
+    public void loadIR(IRBuffer buffer) {
+        if(values == null) {
+            values = IRValueFactory.after(buffer);
+        }
+        for(int i = 0; i < buffer.size(); i++) {
+            InstructionKind instrKind = buffer.kind(i);
+            IRValue lhs = buffer.isLhsImmediate(i) ? IRImmediate.of(buffer.lhs(i)) : buffer.variable(buffer.lhs(i));
+            if(instrKind.isReturn()) {
+                instructions.add(Instruction.createRet(lhs));
+                break;
+            }
+            IRVariable result = buffer.variable(buffer.result(i));
+            if(instrKind.isUnary()) {
+                instructions.add(Instruction.createMov(result, lhs));
+            } else if(instrKind.isBinary()) {
+                IRValue rhs = buffer.isRhsImmediate(i) ? IRImmediate.of(buffer.rhs(i)) : buffer.variable(buffer.rhs(i));
+                loadBinary(instrKind, result, lhs, rhs);
             }
         }
     }
 
+    /**
+     * 将一条二元指令调整为更接近 risc-v 汇编的形式后加入 instructions
+     *
+     * @see LegalizeImmediatesPass#legalize 具体的调整规则
+     */
+    private void loadBinary(InstructionKind instrKind, IRVariable result, IRValue lhs, IRValue rhs) {
+        LegalizeImmediatesPass.legalize(instrKind, result, lhs, rhs, values, instructions);
+    }
+
     public void VariableToRegister(IRValue operands, int index){
         // 立即数无需分配寄存器
         if(operands.isImmediate()){
@@ -124,28 +148,57 @@ public class AssemblyGenerator {
         if(registerBMap.containsKey(operands)){
             return;
         }
+        Register register = findRegister(index);
+        registerBMap.replace(operands, register);
+        // 被溢出的变量若仍然活跃, 从栈中取回; 不活跃说明它将被当前指令重新赋值, 旧值无需取回
+        Integer slot = spillSlots.get((IRVariable) operands);
+        if(slot != null && Bits.get(live, liveness.getVariables().indexOf((IRVariable) operands))){
+            asmInstructions.add(String.format("\tlw %s, %d(sp)", register.toString(), slot * 4));
+        }
+    }
+
+    /**
+     * @param index 当前指令的下标
+     * @return 可以分给新变量的寄存器; 其中原有的变量已被移出 registerBMap
+     */
+    private Register findRegister(int index){
         // 寻找空闲的寄存器
         for(Register register: Register.values()){
             if(!registerBMap.containsValue(register)){
-                registerBMap.replace(operands, register);
-                return;
+                return register;
             }
         }
-        // 若无空闲寄存器，则夺取不再使用的变量所占的寄存器
-        Set<Register> notUseRegs = new HashSet<>(List.of(Register.values()));
-        for(int i = index; i < instructions.size(); i++) {
-            Instruction instr = instructions.get(i);
-            // 遍历搜索不再使用的变量
-            for(IRValue irValue: instr.getOperands()){
-                notUseRegs.remove(registerBMap.getByKey(irValue));
+        // 若无空闲寄存器，则夺取不再活跃的变量所占的寄存器
+        // 当前指令的操作数在指令之前都是活跃的, 不会被夺取; 按编号顺序选取, 输出的汇编是确定的
+        for(Register register: Register.values()){
+            int variable = liveness.getVariables().indexOf((IRVariable) registerBMap.getByValue(register));
+            if(!Bits.get(live, variable)){
+                registerBMap.removeByValue(register);
+                return register;
             }
         }
-        if(!notUseRegs.isEmpty()){
-            registerBMap.replace(operands, notUseRegs.iterator().next());
-            return;
+        // 否则把当前指令不读取的变量中最冷的一个存入栈中: 剖析中的读次数减去已生成的读取, 即之后还会被读取的次数;
+        // 没有剖析时各变量一样冷, 按编号顺序选取
+        List<IRValue> operands = instructions.get(index).getOperands();
+        Register victim = null;
+        long coldest = Long.MAX_VALUE;
+        for(Register register: Register.values()){
+            IRVariable variable = (IRVariable) registerBMap.getByValue(register);
+            int id = liveness.getVariables().indexOf(variable);
+            long heat = profile == null ? 0 : profile.reads(variable) - readsSoFar[id];
+            if(!operands.contains(variable) && heat < coldest){
+                victim = register;
+                coldest = heat;
+            }
+        }
+        if(victim == null){
+            throw new RuntimeException("No enough registers!");
         }
-        // 否则无法分配寄存器并报错
-        throw new RuntimeException("No enough registers!");
+        IRVariable spilled = (IRVariable) registerBMap.getByValue(victim);
+        int slot = spillSlots.computeIfAbsent(spilled, ignored -> spillSlots.size());
+        asmInstructions.add(String.format("\tsw %s, %d(sp)", victim.toString(), slot * 4));
+        registerBMap.removeByValue(victim);
+        return victim;
     }
 
     /**
@@ -159,6 +212,10 @@ public class AssemblyGenerator {
      */
     public void run() {
         // TODO: 执行寄存器分配与代码生成
+        // 第一条指令之前活跃的是程序的输入, 之后每生成一条指令就据 liveness 更新 live, 无需再向后搜索剩余的指令
+        liveness = Liveness.of(instructions);
+        live = liveness.liveIn(0).clone();
+        readsSoFar = new int[liveness.getVariables().size()];
         int i = 0;
         String asmCode = null;
         for(Instruction instr: instructions){
@@ -204,6 +261,37 @@ public class AssemblyGenerator {
                     Register resultReg = registerBMap.getByKey(result);
                     asmCode = String.format("\tmul %s, %s, %s", resultReg.toString(), lhsReg.toString(), rhsReg.toString());
                 }
+                case DIV, MULH -> {
+                    IRValue lhs = instr.getLHS();
+                    IRValue rhs = instr.getRHS();
+                    IRVariable result = instr.getResult();
+                    VariableToRegister(lhs, i);
+                    VariableToRegister(rhs, i);
+                    VariableToRegister(result, i);
+                    Register lhsReg = registerBMap.getByKey(lhs);
+                    Register rhsReg = registerBMap.getByKey(rhs);
+                    Register resultReg = registerBMap.getByKey(result);
+                    // div 与 mulh 没有立即数形式, 加载时已将立即数存入临时变量
+                    asmCode = String.format("\t%s %s, %s, %s", instrKind.toString().toLowerCase(), resultReg.toString(), lhsReg.toString(), rhsReg.toString());
+                }
+                case SLL, SRL, SRA -> {
+                    IRValue lhs = instr.getLHS();
+                    IRValue rhs = instr.getRHS();
+                    IRVariable result = instr.getResult();
+                    VariableToRegister(lhs, i);
+                    VariableToRegister(rhs, i);
+                    VariableToRegister(result, i);
+                    Register lhsReg = registerBMap.getByKey(lhs);
+                    Register rhsReg = registerBMap.getByKey(rhs);
+                    Register resultReg = registerBMap.getByKey(result);
+                    // 指令名与 IR 种类同名: sll/srl/sra, 右操作数为立即数时为 slli/srli/srai
+                    String op = instrKind.toString().toLowerCase();
+                    if(rhs.isImmediate()){
+                        asmCode = String.format("\t%si %s, %s, %s", op, resultReg.toString(), lhsReg.toString(), rhs.toString());
+                    }else{
+                        asmCode = String.format("\t%s %s, %s, %s", op, resultReg.toString(), lhsReg.toString(), rhsReg.toString());
+                    }
+                }
                 case MOV -> {
                     IRValue form = instr.getFrom();
                     IRVariable result = instr.getResult();
@@ -219,20 +307,44 @@ public class AssemblyGenerator {
                 }
                 case RET -> {
                     IRValue returnValue = instr.getReturnValue();
-                    Register returnReg = registerBMap.getByKey(returnValue);
-                    asmCode = String.format("\tmv a0, %s", returnReg.toString());
+                    // 返回值可能已被溢出到栈上
+                    VariableToRegister(returnValue, i);
+                    // 返回值为立即数时直接装入 a0
+                    if(returnValue.isImmediate()){
+                        asmCode = String.format("\tli a0, %s", returnValue.toString());
+                    }else{
+                        Register returnReg = registerBMap.getByKey(returnValue);
+                        asmCode = String.format("\tmv a0, %s", returnReg.toString());
+                    }
                 }
                 default -> System.out.println("error asm!");
             }
 
             asmCode += "\t\t#  %s".formatted(instr.toString());
             asmInstructions.add(asmCode);
+            if(!instrKind.isReturn()){
+                Bits.set(live, liveness.getVariables().indexOf(instr.getResult()));
+            }
+            for(IRValue operand: instr.getOperands()){
+                if(operand instanceof IRVariable variable){
+                    readsSoFar[liveness.getVariables().indexOf(variable)]++;
+                }
+            }
+            for(int dead: liveness.diesAt(i)){
+                Bits.clear(live, dead);
+            }
             i++;
 
             if(instrKind == InstructionKind.RET){
                 break;
             }
         }
+
+        // 有变量被溢出时, 在开头为它们分配栈帧, 在末尾释放
+        if(!spillSlots.isEmpty()){
+            asmInstructions.add(1, String.format("\taddi sp, sp, %d", -4 * spillSlots.size()));
+            asmInstructions.add(String.format("\taddi sp, sp, %d", 4 * spillSlots.size()));
+        }
     }
 
 
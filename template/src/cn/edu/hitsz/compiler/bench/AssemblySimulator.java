@@ -0,0 +1,120 @@
+package cn.edu.hitsz.compiler.bench;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个只支持 {@link cn.edu.hitsz.compiler.asm.AssemblyGenerator} 所生成指令的 RV32 模拟器, 用来检查生成的汇编
+ * <br>
+ * 不依赖编译器的其它部分: 各指令的语义直接按 RISC-V 手册实现, 以便与 IR 的模拟执行互相印证.
+ * 读取未写入的寄存器或栈槽, 访问栈帧以外的内存, 以及无法编码的立即数 (addi 超出 12 位有符号数, 移位量超出 [0, 31]) 都会报错.
+ */
+final class AssemblySimulator {
+    // sp 的初值, 栈向低地址增长
+    private static final int STACK_TOP = 1 << 20;
+    // I 型指令的 12 位有符号立即数的范围
+    private static final int MIN_IMMEDIATE = -2048;
+    private static final int MAX_IMMEDIATE = 2047;
+
+    /**
+     * @param lines 汇编代码的各行
+     * @return 执行结束时 a0 的值
+     */
+    static int run(List<String> lines) {
+        final var registers = new HashMap<String, Integer>();
+        final Map<Integer, Integer> memory = new HashMap<>();
+        registers.put("sp", STACK_TOP);
+
+        for (final var line : lines) {
+            final var code = line.split("#", 2)[0].trim();
+            if (code.isEmpty() || code.startsWith(".")) {
+                continue;
+            }
+            final var fields = code.split("[\\s,]+");
+            final var op = fields[0];
+
+            if (op.equals("sw") || op.equals("lw")) {
+                final var address = address(registers, fields[2], line);
+                if (op.equals("sw")) {
+                    memory.put(address, read(registers, fields[1], line));
+                } else if (memory.containsKey(address)) {
+                    registers.put(fields[1], memory.get(address));
+                } else {
+                    throw new RuntimeException("Load from unwritten stack slot: " + line);
+                }
+                continue;
+            }
+
+            final int value = switch (op) {
+                case "li" -> Integer.parseInt(fields[2]);
+                case "mv" -> read(registers, fields[2], line);
+                case "neg" -> -read(registers, fields[2], line);
+                case "add" -> read(registers, fields[2], line) + read(registers, fields[3], line);
+                case "addi" -> read(registers, fields[2], line) + immediate(fields[3], MIN_IMMEDIATE, MAX_IMMEDIATE, line);
+                case "sub" -> read(registers, fields[2], line) - read(registers, fields[3], line);
+                case "mul" -> read(registers, fields[2], line) * read(registers, fields[3], line);
+                case "mulh" -> (int) ((long) read(registers, fields[2], line) * read(registers, fields[3], line) >> 32);
+                case "div" -> divide(read(registers, fields[2], line), read(registers, fields[3], line));
+                case "sll" -> read(registers, fields[2], line) << read(registers, fields[3], line);
+                case "srl" -> read(registers, fields[2], line) >>> read(registers, fields[3], line);
+                case "sra" -> read(registers, fields[2], line) >> read(registers, fields[3], line);
+                case "slli" -> read(registers, fields[2], line) << immediate(fields[3], 0, Integer.SIZE - 1, line);
+                case "srli" -> read(registers, fields[2], line) >>> immediate(fields[3], 0, Integer.SIZE - 1, line);
+                case "srai" -> read(registers, fields[2], line) >> immediate(fields[3], 0, Integer.SIZE - 1, line);
+                default -> throw new RuntimeException("Unsupported instruction: " + line);
+            };
+            registers.put(fields[1], value);
+        }
+
+        return read(registers, "a0", "<end>");
+    }
+
+    /**
+     * RISC-V 的 div: 除以 0 得 -1, MIN_VALUE / -1 回绕为 MIN_VALUE
+     */
+    private static int divide(int lhs, int rhs) {
+        if (rhs == 0) {
+            return -1;
+        }
+        if (lhs == Integer.MIN_VALUE && rhs == -1) {
+            return lhs;
+        }
+        return lhs / rhs;
+    }
+
+    /**
+     * @return 立即数的值
+     * @throws RuntimeException 立即数超出 [min, max], 无法编码进指令
+     */
+    private static int immediate(String text, int min, int max, String line) {
+        final var value = Integer.parseInt(text);
+        if (value < min || value > max) {
+            throw new RuntimeException("Immediate %d out of range [%d, %d]: %s".formatted(value, min, max, line));
+        }
+        return value;
+    }
+
+    private static int read(Map<String, Integer> registers, String register, String line) {
+        if (register.equals("zero")) {
+            return 0;
+        }
+        final var value = registers.get(register);
+        if (value == null) {
+            throw new RuntimeException("Read of unwritten register %s: %s".formatted(register, line));
+        }
+        return value;
+    }
+
+    /**
+     * @param operand 形如 {@code 8(sp)} 的内存操作数
+     */
+    private static int address(Map<String, Integer> registers, String operand, String line) {
+        final var parts = operand.split("[()]");
+        final var address = Integer.parseInt(parts[0]) + read(registers, parts[1], line);
+        if (address < read(registers, "sp", line) || address >= STACK_TOP) {
+            throw new RuntimeException("Access outside the stack frame: " + line);
+        }
+        return address;
+    }
+}
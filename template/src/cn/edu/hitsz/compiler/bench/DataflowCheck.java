@@ -0,0 +1,263 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.ir.cfg.ControlFlowGraph;
+import cn.edu.hitsz.compiler.ir.dataflow.DefUseChains;
+import cn.edu.hitsz.compiler.ir.dataflow.ReachingDefinitions;
+import cn.edu.hitsz.compiler.utils.Bits;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * 在随机生成的多块控制流图上, 用逐条路径搜索的朴素做法检查 {@link ReachingDefinitions} 与 {@link DefUseChains}
+ * <br>
+ * 图由 {@link ControlFlowGraph#ControlFlowGraph(List, List)} 直接构造, 有分支, 汇合, 循环, 自环, 也可能有不可达的块.
+ * 朴素做法不解数据流方程:
+ * <ul>
+ *     <li>到达定值: 从定值之后沿各条边向前搜索, 遇到重新给同一变量赋值的块为止, 途经的块入口与出口都有该定值到达</li>
+ *     <li>使用-定值链: 从使用处向后扫描本块, 再沿各条边向后搜索前驱块, 每条路径上遇到的第一个同一变量的定值都到达这次使用</li>
+ *     <li>定值-使用链: 由使用-定值链按指令顺序反过来得到</li>
+ * </ul>
+ * 发现不一致时抛出异常并给出出错的图, 否则输出检查的图数与操作数个数.
+ * <br>
+ * 用法 (在 template 目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.DataflowCheck [graphs=2000] [seed=1] [blocks=8]
+ * </pre>
+ * blocks 是每个图最多的块数.
+ */
+public class DataflowCheck {
+    // 图中使用的具名变量数, 较少时更容易出现同一变量的多个定值
+    private static final int VARIABLES = 4;
+    // 每块最多的指令数
+    private static final int MAX_BLOCK_SIZE = 5;
+    private static final List<InstructionKind> KINDS = List.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL);
+
+    public static void main(String[] args) {
+        var graphs = 2000;
+        var seed = 1L;
+        var maxBlocks = 8;
+        for (final var arg : args) {
+            final var pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "graphs" -> graphs = Integer.parseInt(pair[1]);
+                case "seed" -> seed = Long.parseLong(pair[1]);
+                case "blocks" -> maxBlocks = Integer.parseInt(pair[1]);
+                default -> throw new RuntimeException("Unknown argument: " + arg);
+            }
+        }
+
+        final var random = new Random(seed);
+        var operands = 0L;
+        for (int i = 0; i < graphs; i++) {
+            final var cfg = randomGraph(random, 2 + random.nextInt(Math.max(1, maxBlocks - 1)));
+            try {
+                operands += check(cfg);
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Graph #%d failed:%n%s".formatted(i, format(cfg)), e);
+            }
+        }
+        System.out.printf("OK %d graphs, %d operands%n", graphs, operands);
+    }
+
+    /**
+     * @return 检查的操作数个数
+     */
+    private static int check(ControlFlowGraph cfg) {
+        final var reaching = ReachingDefinitions.of(cfg);
+        final var chains = DefUseChains.of(reaching);
+        final var instructions = reaching.getInstructions();
+
+        // 每条指令所在的块与块内位置
+        final var blockOf = new int[instructions.size()];
+        final var positionOf = new int[instructions.size()];
+        for (int block = 0; block < cfg.size(); block++) {
+            for (int i = 0; i < cfg.block(block).size(); i++) {
+                final var index = reaching.blockStart(block) + i;
+                if (instructions.get(index) != cfg.block(block).get(i)) {
+                    throw new RuntimeException("Instruction %d is not at block %d position %d".formatted(index, block, i));
+                }
+                blockOf[index] = block;
+                positionOf[index] = i;
+            }
+        }
+
+        for (int definition = 0; definition < instructions.size(); definition++) {
+            if (instructions.get(definition).getKind().isReturn()) {
+                continue;
+            }
+            final var variable = instructions.get(definition).getResult();
+            if (Arrays.binarySearch(reaching.definitionsOf(variable), definition) < 0) {
+                throw new RuntimeException("Definition %d is missing from definitionsOf(%s)".formatted(definition, variable));
+            }
+
+            final var reachesIn = new boolean[cfg.size()];
+            final var reachesOut = new boolean[cfg.size()];
+            final var block = blockOf[definition];
+            if (findDefinition(cfg.block(block), variable, positionOf[definition] + 1, cfg.block(block).size()) < 0) {
+                reachesOut[block] = true;
+                final var worklist = new ArrayDeque<Integer>();
+                worklist.add(block);
+                while (!worklist.isEmpty()) {
+                    for (final var successor : cfg.successors(worklist.poll())) {
+                        if (reachesIn[successor]) {
+                            continue;
+                        }
+                        reachesIn[successor] = true;
+                        if (findDefinition(cfg.block(successor), variable, 0, cfg.block(successor).size()) < 0) {
+                            reachesOut[successor] = true;
+                            worklist.add(successor);
+                        }
+                    }
+                }
+            }
+
+            for (int target = 0; target < cfg.size(); target++) {
+                if (Bits.get(reaching.reachingIn(target), definition) != reachesIn[target]
+                    || Bits.get(reaching.reachingOut(target), definition) != reachesOut[target]) {
+                    throw new RuntimeException("Definition %d (%s) at block %d: reachingIn %s, reachingOut %s, expected %s, %s".formatted(
+                        definition, instructions.get(definition), target, Bits.get(reaching.reachingIn(target), definition),
+                        Bits.get(reaching.reachingOut(target), definition), reachesIn[target], reachesOut[target]));
+                }
+            }
+        }
+
+        final var expectedUses = new ArrayList<List<DefUseChains.Use>>();
+        for (int i = 0; i < instructions.size(); i++) {
+            expectedUses.add(new ArrayList<>());
+        }
+        var operands = 0;
+        for (int index = 0; index < instructions.size(); index++) {
+            final var values = instructions.get(index).getOperands();
+            for (int j = 0; j < values.size(); j++) {
+                final int[] expected = values.get(j) instanceof IRVariable variable
+                    ? reachingUse(cfg, variable, blockOf[index], positionOf[index], reaching) : new int[0];
+                final var actual = chains.definitions(index, j);
+                if (!Arrays.equals(expected, actual)) {
+                    throw new RuntimeException("Operand %d of instruction %d (%s): definitions %s, expected %s".formatted(
+                        j, index, instructions.get(index), Arrays.toString(actual), Arrays.toString(expected)));
+                }
+                for (final var definition : expected) {
+                    expectedUses.get(definition).add(new DefUseChains.Use(index, j));
+                }
+                operands++;
+            }
+        }
+
+        for (int definition = 0; definition < instructions.size(); definition++) {
+            if (!chains.uses(definition).equals(expectedUses.get(definition))) {
+                throw new RuntimeException("Uses of instruction %d (%s): %s, expected %s".formatted(
+                    definition, instructions.get(definition), chains.uses(definition), expectedUses.get(definition)));
+            }
+        }
+        return operands;
+    }
+
+    /**
+     * 第 block 块第 position 条指令读取 variable 时到达的定值
+     *
+     * @return 定值的下标, 从小到大
+     */
+    private static int[] reachingUse(ControlFlowGraph cfg, IRVariable variable, int block, int position,
+                                     ReachingDefinitions reaching) {
+        final var local = findDefinition(cfg.block(block), variable, 0, position);
+        if (local >= 0) {
+            return new int[]{reaching.blockStart(block) + local};
+        }
+
+        final var found = new TreeSet<Integer>();
+        final var visited = new boolean[cfg.size()];
+        final var worklist = new ArrayDeque<>(cfg.predecessors(block));
+        while (!worklist.isEmpty()) {
+            final int predecessor = worklist.poll();
+            if (visited[predecessor]) {
+                continue;
+            }
+            visited[predecessor] = true;
+            final var code = cfg.block(predecessor);
+            final var definition = findDefinition(code, variable, 0, code.size());
+            if (definition >= 0) {
+                found.add(reaching.blockStart(predecessor) + definition);
+            } else {
+                worklist.addAll(cfg.predecessors(predecessor));
+            }
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return code 中下标在 [from, to) 内的最后一个给 variable 赋值的指令的下标; 没有时返回 -1
+     */
+    private static int findDefinition(List<Instruction> code, IRVariable variable, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            final var instruction = code.get(i);
+            if (!instruction.getKind().isReturn() && instruction.getResult() == variable) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 生成随机的控制流图. 每块有 0 到 2 个后继 (不含入口块), 没有后继的块以 RET 结尾
+     */
+    private static ControlFlowGraph randomGraph(Random random, int size) {
+        final var values = new IRValueFactory();
+        final var variables = new ArrayList<IRVariable>();
+        for (int i = 0; i < VARIABLES; i++) {
+            variables.add(values.named("v" + i));
+        }
+
+        final var blocks = new ArrayList<List<Instruction>>();
+        final var successors = new ArrayList<List<Integer>>();
+        for (int block = 0; block < size; block++) {
+            final var targets = new ArrayList<Integer>();
+            final var count = random.nextInt(3);
+            for (int i = 0; i < count; i++) {
+                final var target = 1 + random.nextInt(size - 1);
+                if (!targets.contains(target)) {
+                    targets.add(target);
+                }
+            }
+            successors.add(targets);
+
+            final var code = new ArrayList<Instruction>();
+            final var length = random.nextInt(MAX_BLOCK_SIZE + 1);
+            for (int i = 0; i < length; i++) {
+                final var result = variables.get(random.nextInt(VARIABLES));
+                code.add(random.nextInt(3) == 0
+                    ? Instruction.createMov(result, operand(random, variables))
+                    : Instruction.createBinary(KINDS.get(random.nextInt(KINDS.size())), result,
+                    operand(random, variables), operand(random, variables)));
+            }
+            if (targets.isEmpty()) {
+                code.add(Instruction.createRet(operand(random, variables)));
+            }
+            blocks.add(code);
+        }
+        return new ControlFlowGraph(blocks, successors);
+    }
+
+    private static IRValue operand(Random random, List<IRVariable> variables) {
+        return random.nextInt(4) == 0 ? IRImmediate.of(random.nextInt(10)) : variables.get(random.nextInt(variables.size()));
+    }
+
+    private static String format(ControlFlowGraph cfg) {
+        final var builder = new StringBuilder();
+        for (int block = 0; block < cfg.size(); block++) {
+            builder.append("block %d -> %s%n".formatted(block, cfg.successors(block)));
+            cfg.block(block).forEach(instruction -> builder.append("    ").append(instruction).append(System.lineSeparator()));
+        }
+        return builder.toString();
+    }
+}
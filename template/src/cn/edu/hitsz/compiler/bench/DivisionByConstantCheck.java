@@ -0,0 +1,124 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.ir.pass.DivisionByConstantPass;
+import cn.edu.hitsz.compiler.ir.pass.PassManager;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 对 {@link DivisionByConstantPass} 的除数扫描检查
+ * <br>
+ * 除数取 [-limit, limit] 中的每个数, 所有 {@code ±2^k}, {@code ±(2^k ± 1)}, INT_MIN, INT_MAX, 以及若干个随机数;
+ * 对每个除数, 被除数取 0, ±1, INT_MIN, INT_MAX 等边界值, 除数的倍数及其左右, 以及若干个随机数.
+ * 分别构造 {@code r = x / d} 与 {@code x = x / d} 两种程序, 只运行这一个 pass,
+ * 并要求改写后的程序模拟执行的结果与 {@link InstructionKind#apply(int, int)} 中 DIV 的语义相同.
+ * 发现不一致时抛出异常, 否则输出检查的程序数与被改写的除法数.
+ * <br>
+ * 用法 (在 template 目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.DivisionByConstantCheck [limit=1024] [random=200] [seed=1]
+ * </pre>
+ */
+public class DivisionByConstantCheck {
+    private static final int[] DIVIDENDS = {
+        0, 1, -1, 2, -2, 3, -3, 7, -7, 100, -100, 12345, -12345, 0x55555555, 0xaaaaaaaa,
+        Integer.MIN_VALUE, Integer.MIN_VALUE + 1, Integer.MAX_VALUE, Integer.MAX_VALUE - 1,
+    };
+    // 每个除数额外取的随机被除数个数
+    private static final int RANDOM_DIVIDENDS = 8;
+
+    public static void main(String[] args) {
+        var limit = 1024;
+        var random = 200;
+        var seed = 1L;
+        for (final var arg : args) {
+            final var pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "limit" -> limit = Integer.parseInt(pair[1]);
+                case "random" -> random = Integer.parseInt(pair[1]);
+                case "seed" -> seed = Long.parseLong(pair[1]);
+                default -> throw new RuntimeException("Unknown argument: " + arg);
+            }
+        }
+
+        final var rng = new Random(seed);
+        var programs = 0;
+        var lowered = 0;
+        for (final var divisor : divisors(limit, random, rng)) {
+            for (final var dividend : dividends(divisor, rng)) {
+                for (final var inPlace : new boolean[]{false, true}) {
+                    final var values = new IRValueFactory();
+                    final var x = values.named("x");
+                    final var target = inPlace ? x : values.named("r");
+                    final var original = List.of(
+                        Instruction.createMov(x, IRImmediate.of(dividend)),
+                        Instruction.createDiv(target, x, IRImmediate.of(divisor)),
+                        Instruction.createRet(target));
+                    final var optimized = new PassManager(values).add(new DivisionByConstantPass()).run(original);
+
+                    final var expected = InstructionKind.DIV.apply(dividend, divisor);
+                    final var actual = IREmulator.load(optimized).execute();
+                    if (actual.isEmpty() || actual.get() != expected) {
+                        throw new RuntimeException("%d / %d: expected %d, got %s%n%s".formatted(
+                            dividend, divisor, expected, actual, optimized));
+                    }
+                    programs++;
+                    if (optimized.stream().noneMatch(instruction -> instruction.getKind() == InstructionKind.DIV)) {
+                        lowered++;
+                    }
+                }
+            }
+        }
+        System.out.printf("OK %d programs, %d divisions lowered%n", programs, lowered);
+    }
+
+    private static Set<Integer> divisors(int limit, int random, Random rng) {
+        final var divisors = new LinkedHashSet<Integer>();
+        for (int d = -limit; d <= limit; d++) {
+            divisors.add(d);
+        }
+        for (int k = 0; k < 32; k++) {
+            final var power = 1 << k;
+            for (final var delta : new int[]{0, 1, -1}) {
+                divisors.add(power + delta);
+                divisors.add(-(power + delta));
+            }
+        }
+        divisors.add(Integer.MIN_VALUE);
+        divisors.add(Integer.MAX_VALUE);
+        for (int i = 0; i < random; i++) {
+            divisors.add(rng.nextInt());
+        }
+        return divisors;
+    }
+
+    private static Set<Integer> dividends(int divisor, Random rng) {
+        final var dividends = new LinkedHashSet<Integer>();
+        for (final var dividend : DIVIDENDS) {
+            dividends.add(dividend);
+        }
+        // 商恰好变化的位置: 除数的倍数及其左右, 以及最大的那个倍数
+        for (final var multiple : new int[]{1, 2, 3, -1, -2, -3}) {
+            final var product = divisor * multiple;
+            dividends.add(product);
+            dividends.add(product - 1);
+            dividends.add(product + 1);
+        }
+        if (divisor != 0) {
+            dividends.add(Integer.MAX_VALUE / divisor * divisor);
+            dividends.add(Integer.MIN_VALUE / divisor * divisor);
+        }
+        for (int i = 0; i < RANDOM_DIVIDENDS; i++) {
+            dividends.add(rng.nextInt());
+        }
+        return dividends;
+    }
+}
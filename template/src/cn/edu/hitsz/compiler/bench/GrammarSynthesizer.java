@@ -0,0 +1,126 @@
+package cn.edu.hitsz.compiler.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 合成指定规模的文法, 供分析表生成的基准测试使用
+ * <br>
+ * 合成的文法只能使用码点文件 (coding_map.csv) 中已有的终结符, 并且不能使用 "," (它无法写进 CSV 格式的分析表).
+ * 为了在终结符数量固定的情况下仍能得到任意多的非终结符, 文法由 groups 份互相独立的表达式子文法组成, 第 i 份子文法只能通过赋值号后一串唯一的 "+"/"-" 前缀 (i 的二进制编码) 进入:
+ * <pre>
+ * P -> S_list;
+ * S_list -> S Semicolon S_list;
+ * S_list -> S Semicolon;
+ * S -> return X0;
+ * S -> id = code(i) Xi;   (每份子文法一条)
+ * Xi -> Xi op Yi;         (每份子文法 alternatives 条, 运算符轮流取 + - * /)
+ * Xi -> Yi;
+ * Yi -> ( Xi );
+ * Yi -> id;
+ * Yi -> IntConst;
+ * </pre>
+ * 非终结符个数为 2 * groups + 3, 产生式条数为 groups * (alternatives + 5) + 4. 在此基础上可以按 {@link Ambiguity} 注入歧义.
+ */
+public class GrammarSynthesizer {
+    /**
+     * 注入文法的歧义模式
+     */
+    public enum Ambiguity {
+        /**
+         * 不注入歧义, 合成的文法是 SLR(1) 的
+         */
+        NONE,
+
+        /**
+         * 每 period 份子文法加入一条 Xi -> Xi op Xi, 产生移入-规约冲突
+         */
+        SELF_BINARY,
+
+        /**
+         * 每 period 份子文法加入一条多余的 Xi -> ( Yi ), 与 Yi -> ( Xi ) 一起产生冲突
+         */
+        REDUNDANT_PAREN
+    }
+
+    private static final List<String> BINARY_OPERATORS = List.of("+", "-", "*", "/");
+
+    /**
+     * @param groups       子文法的份数, 至少为 1
+     * @param alternatives 每份子文法的二元产生式条数, 取值 [1, 4]
+     * @param ambiguity    歧义模式
+     * @param period       每隔多少份子文法注入一次歧义, 至少为 1
+     */
+    public GrammarSynthesizer(int groups, int alternatives, Ambiguity ambiguity, int period) {
+        if (groups < 1 || alternatives < 1 || alternatives > BINARY_OPERATORS.size() || period < 1) {
+            throw new RuntimeException("Illegal grammar shape: groups=%d, alternatives=%d, period=%d"
+                .formatted(groups, alternatives, period));
+        }
+
+        this.groups = groups;
+        this.alternatives = alternatives;
+        this.ambiguity = ambiguity;
+        this.period = period;
+        this.codeWidth = Math.max(1, 32 - Integer.numberOfLeadingZeros(groups - 1));
+    }
+
+    /**
+     * @return 语法文件的各行, 格式与 grammar.txt 相同
+     */
+    public List<String> synthesize() {
+        final var lines = new ArrayList<String>();
+        lines.add("P -> S_list;");
+        lines.add("S_list -> S Semicolon S_list;");
+        lines.add("S_list -> S Semicolon;");
+        lines.add("S -> return X0;");
+
+        for (int i = 0; i < groups; i++) {
+            lines.add("S -> id = %s X%d;".formatted(code(i), i));
+        }
+
+        for (int i = 0; i < groups; i++) {
+            for (int j = 0; j < alternatives; j++) {
+                lines.add("X%d -> X%d %s Y%d;".formatted(i, i, BINARY_OPERATORS.get((i + j) % BINARY_OPERATORS.size()), i));
+            }
+            lines.add("X%d -> Y%d;".formatted(i, i));
+            lines.add("Y%d -> ( X%d );".formatted(i, i));
+            lines.add("Y%d -> id;".formatted(i));
+            lines.add("Y%d -> IntConst;".formatted(i));
+
+            if (i % period == 0) {
+                switch (ambiguity) {
+                    case SELF_BINARY -> lines.add("X%d -> X%d %s X%d;".formatted(i, i, BINARY_OPERATORS.get(i % BINARY_OPERATORS.size()), i));
+                    case REDUNDANT_PAREN -> lines.add("X%d -> ( Y%d );".formatted(i, i));
+                    case NONE -> {
+                    }
+                }
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * @return 合成文法的非终结符个数
+     */
+    public int countNonTerminals() {
+        return 2 * groups + 3;
+    }
+
+    private final int groups;
+    private final int alternatives;
+    private final Ambiguity ambiguity;
+    private final int period;
+    private final int codeWidth;
+
+    /**
+     * @return 第 index 份子文法的入口前缀, 即 index 的定长二进制编码, 0 写作 "+", 1 写作 "-"
+     */
+    private String code(int index) {
+        final var words = new ArrayList<String>();
+        for (int bit = codeWidth - 1; bit >= 0; bit--) {
+            words.add((index >>> bit & 1) == 0 ? "+" : "-");
+        }
+        return String.join(" ", words);
+    }
+}
@@ -0,0 +1,189 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.asm.AssemblyGenerator;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.pass.PassManager;
+import cn.edu.hitsz.compiler.ir.pass.PassRegistry;
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.IRGenerator;
+import cn.edu.hitsz.compiler.parser.SyntaxAnalyzer;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FilePathConfig;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+import cn.edu.hitsz.compiler.utils.IRJit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * 用随机生成的源程序对整个编译流程做差分检查
+ * <br>
+ * 每个程序先经前端生成 IR, 以未经优化的 IR 的模拟执行结果为准, 依次检查:
+ * <ul>
+ *     <li>运行给定的 pass 之后, IR 的模拟执行结果不变</li>
+ *     <li>打开剖析时模拟执行的结果不变</li>
+ *     <li>{@link IRJit} 编译执行的结果相同 (程序过大无法编译时跳过)</li>
+ *     <li>由优化后的 IR 生成的汇编经 {@link AssemblySimulator} 执行, a0 的值相同; 偶数号程序在生成汇编时使用剖析数据</li>
+ * </ul>
+ * 发现不一致时抛出异常并给出出错的源程序, 否则输出检查的程序数与优化前后的指令条数.
+ * <br>
+ * 用法 (在 template 目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.IRFuzzCheck [passes=去掉 const-prop 的默认流水线] [programs=500] [seed=1] [ops=+-*&#47;] [sethi-ullman=false]
+ * </pre>
+ * passes 的写法与 Main 的 {@code --passes=} 相同; ops 是表达式中可以出现的运算符.
+ * <br>
+ * 源语言没有输入, 生成的程序中每个变量都在赋值之后才被读取, 所以 const-prop 总能把整个程序折叠为一条 RET,
+ * 其后的 pass 与后端都无事可做. 因此默认的流水线去掉了 const-prop; 用 {@code passes=default} 检查完整的默认流水线.
+ */
+public class IRFuzzCheck {
+    private static final String OUT_DIR = "data/out/bench";
+    private static final String SOURCE_PATH = OUT_DIR + "/fuzz_input.txt";
+    private static final String ASSEMBLY_PATH = OUT_DIR + "/fuzz.asm";
+    // 源程序中最多声明的变量数
+    private static final int MAX_VARIABLES = 8;
+    // 会把生成的程序整个折叠掉的 pass, 默认不运行
+    private static final String FOLDING_PASS = "const-prop";
+
+    public static void main(String[] args) {
+        var passes = PassRegistry.defaultPipeline().stream().filter(name -> !name.equals(FOLDING_PASS)).toList();
+        var programs = 500;
+        var seed = 1L;
+        var ops = "+-*/";
+        var sethiUllman = false;
+        for (final var arg : args) {
+            final var pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "passes" -> passes = PassRegistry.parsePipeline(pair[1]);
+                case "programs" -> programs = Integer.parseInt(pair[1]);
+                case "seed" -> seed = Long.parseLong(pair[1]);
+                case "ops" -> ops = pair[1];
+                case "sethi-ullman" -> sethiUllman = Boolean.parseBoolean(pair[1]);
+                default -> throw new RuntimeException("Unknown argument: " + arg);
+            }
+        }
+
+        TokenKind.loadTokenKinds();
+        new File(OUT_DIR).mkdirs();
+        final var table = new TableLoader().load(FilePathConfig.LR1_TABLE_PATH);
+        final var generator = new ProgramGenerator(new Random(seed), ops);
+
+        var before = 0L;
+        var after = 0L;
+        var jitChecked = 0;
+        for (int i = 0; i < programs; i++) {
+            final var source = generator.program();
+            try {
+                final var front = compile(source, table, sethiUllman);
+                final var expected = IREmulator.load(front.instructions()).execute();
+                final var optimized = new PassManager(front.values()).addAll(passes).run(front.instructions());
+                before += front.instructions().size();
+                after += optimized.size();
+
+                expect(expected, IREmulator.load(optimized).execute(), "optimized IR");
+                final var profiler = IREmulator.load(optimized).setProfiling(true);
+                expect(expected, profiler.execute(), "profiled emulation");
+
+                final var buffer = IRBuffer.of(optimized);
+                if (IRJit.canCompile(buffer)) {
+                    expect(expected, IRJit.compile(buffer).execute(), "JIT");
+                    jitChecked++;
+                }
+
+                final var asmGenerator = new AssemblyGenerator(front.values())
+                    .setProfile(i % 2 == 0 ? profiler.getProfile() : null);
+                asmGenerator.loadIR(optimized);
+                asmGenerator.run();
+                asmGenerator.dump(ASSEMBLY_PATH);
+                expect(expected, Optional.of(AssemblySimulator.run(FileUtils.readLines(ASSEMBLY_PATH))), "assembly");
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Program #%d failed:%n%s".formatted(i, source), e);
+            }
+        }
+        System.out.printf("OK %d programs, instructions %d -> %d, JIT checked %d%n", programs, before, after, jitChecked);
+    }
+
+    /**
+     * 前端的输出
+     */
+    private record FrontEnd(List<Instruction> instructions, IRValueFactory values) {
+    }
+
+    private static FrontEnd compile(String source, LRTable table, boolean sethiUllman) {
+        FileUtils.writeFile(SOURCE_PATH, source);
+        final var symbolTable = new SymbolTable();
+        final var lexer = new LexicalAnalyzer(symbolTable);
+        lexer.loadFile(SOURCE_PATH);
+        lexer.run();
+
+        final var parser = new SyntaxAnalyzer(symbolTable);
+        parser.loadTokens(lexer.getTokens());
+        parser.loadLRTable(table);
+        final var irGenerator = new IRGenerator().setSethiUllman(sethiUllman);
+        parser.registerObserver(irGenerator);
+        parser.run();
+        return new FrontEnd(irGenerator.getIR(), irGenerator.getValueFactory());
+    }
+
+    private static void expect(Optional<Integer> expected, Optional<Integer> actual, String what) {
+        if (!expected.equals(actual)) {
+            throw new RuntimeException("%s returned %s, expected %s".formatted(what, actual, expected));
+        }
+    }
+
+    /**
+     * 生成只含声明, 赋值与 return 的随机源程序. 变量只在赋值之后才被读取, 因此程序总有确定的返回值
+     */
+    private static class ProgramGenerator {
+        ProgramGenerator(Random random, String ops) {
+            this.random = random;
+            this.ops = ops;
+        }
+
+        String program() {
+            final var builder = new StringBuilder();
+            final var declared = new ArrayList<String>();
+            final var assigned = new ArrayList<String>();
+            final var statements = 5 + random.nextInt(40);
+            for (int i = 0; i < statements; i++) {
+                if (declared.size() < MAX_VARIABLES && random.nextInt(3) == 0) {
+                    final var name = "v" + declared.size();
+                    declared.add(name);
+                    builder.append("int ").append(name).append(";\n");
+                } else if (!declared.isEmpty()) {
+                    final var target = declared.get(random.nextInt(declared.size()));
+                    builder.append(target).append(" = ").append(expression(assigned, 1 + random.nextInt(4))).append(";\n");
+                    if (!assigned.contains(target)) {
+                        assigned.add(target);
+                    }
+                }
+            }
+            builder.append("return ").append(expression(assigned, 2)).append(";\n");
+            return builder.toString();
+        }
+
+        private String expression(List<String> variables, int depth) {
+            if (depth <= 0 || random.nextInt(4) == 0) {
+                if (variables.isEmpty() || random.nextInt(3) == 0) {
+                    return Integer.toString(random.nextInt(random.nextBoolean() ? 10 : 100000));
+                }
+                return variables.get(random.nextInt(variables.size()));
+            }
+            final var op = ops.charAt(random.nextInt(ops.length()));
+            final var expression = expression(variables, depth - 1) + " " + op + " " + expression(variables, depth - 1);
+            return random.nextInt(3) == 0 ? "(" + expression + ")" : expression;
+        }
+
+        private final Random random;
+        private final String ops;
+    }
+}
@@ -0,0 +1,260 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.cfg.ControlFlowGraph;
+import cn.edu.hitsz.compiler.ir.pass.SSAConstructionPass;
+import cn.edu.hitsz.compiler.ir.pass.SSADestructionPass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在有汇合点的控制流图上检查 SSA 的构造与离开
+ * <br>
+ * IR 中还没有条件跳转, 因此这里的图都是直接构造的, 并沿给定的路径 (依次经过的块号) 解释执行: 进入块时按来路对应的操作数
+ * 并行地求所有 φ 函数的值, 到 RET 为止. 检查以下几种图:
+ * <ul>
+ *     <li>菱形与循环: 先用 {@link SSAConstructionPass#construct} 转换为 SSA 形式, 检查每个变量只被定义一次且确实插入了 φ 函数,
+ *     再用 {@link SSADestructionPass#destruct} 离开 SSA 形式; 沿每条路径三者的结果都相同</li>
+ *     <li>交换与丢失复写: 直接写出的 SSA 形式, 前者的 φ 函数互相读取, 离开 SSA 时要打破并行复写中的环;
+ *     后者的两个版本互相干扰, 不能合并回原名. 离开 SSA 形式前后沿每条路径的结果相同</li>
+ * </ul>
+ * 发现不一致时抛出异常, 否则输出检查的路径数.
+ * <br>
+ * 用法 (在 template 目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.SSARoundTripCheck [iterations=5]
+ * </pre>
+ * iterations 是循环路径最多绕回的次数.
+ */
+public class SSARoundTripCheck {
+    public static void main(String[] args) {
+        var iterations = 5;
+        for (final var arg : args) {
+            final var pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "iterations" -> iterations = Integer.parseInt(pair[1]);
+                default -> throw new RuntimeException("Unknown argument: " + arg);
+            }
+        }
+
+        var paths = 0;
+        paths += roundTrip("diamond", diamond(new IRValueFactory()), List.of(List.of(0, 1, 3), List.of(0, 2, 3)));
+        paths += roundTrip("loop", loop(new IRValueFactory()), loopPaths(iterations));
+        paths += destruct("swap", swap(new IRValueFactory()), loopPaths(iterations));
+        paths += destruct("lost copy", lostCopy(new IRValueFactory()), loopPaths(iterations));
+        System.out.printf("OK %d paths%n", paths);
+    }
+
+    /**
+     * 沿各路径比较原图, SSA 形式与离开 SSA 形式之后的结果
+     *
+     * @return 检查的路径数
+     */
+    private static int roundTrip(String name, Graph graph, List<List<Integer>> paths) {
+        final var ssa = SSAConstructionPass.construct(graph.cfg(), graph.values());
+        final var defined = new HashSet<IRVariable>();
+        var phis = 0;
+        for (final var instruction : ssa.toInstructions()) {
+            if (!instruction.getKind().isReturn() && !defined.add(instruction.getResult())) {
+                throw new RuntimeException("%s: %s is defined more than once in SSA form%n%s".formatted(name, instruction.getResult(), format(ssa)));
+            }
+            phis += instruction.getKind().isPhi() ? 1 : 0;
+        }
+        if (phis == 0) {
+            throw new RuntimeException("%s: no phi was inserted%n%s".formatted(name, format(ssa)));
+        }
+
+        final var lowered = SSADestructionPass.destruct(ssa, graph.values());
+        ensureNoPhi(name, lowered);
+        for (final var path : paths) {
+            final var expected = execute(graph.cfg(), path);
+            expect(name + " in SSA form", path, expected, execute(ssa, path), ssa);
+            expect(name + " out of SSA form", path, expected, execute(lowered, path), lowered);
+        }
+        return paths.size();
+    }
+
+    /**
+     * 沿各路径比较直接写出的 SSA 形式与离开 SSA 形式之后的结果
+     *
+     * @return 检查的路径数
+     */
+    private static int destruct(String name, Graph graph, List<List<Integer>> paths) {
+        final var lowered = SSADestructionPass.destruct(graph.cfg(), graph.values());
+        ensureNoPhi(name, lowered);
+        for (final var path : paths) {
+            expect(name + " out of SSA form", path, execute(graph.cfg(), path), execute(lowered, path), lowered);
+        }
+        return paths.size();
+    }
+
+    private static void ensureNoPhi(String name, ControlFlowGraph cfg) {
+        if (cfg.toInstructions().stream().anyMatch(instruction -> instruction.getKind().isPhi())) {
+            throw new RuntimeException("%s: phi left after leaving SSA form%n%s".formatted(name, format(cfg)));
+        }
+    }
+
+    private static void expect(String what, List<Integer> path, int expected, int actual, ControlFlowGraph cfg) {
+        if (expected != actual) {
+            throw new RuntimeException("%s along %s returned %d, expected %d%n%s".formatted(what, path, actual, expected, format(cfg)));
+        }
+    }
+
+    /**
+     * 沿路径解释执行控制流图
+     *
+     * @param path 依次经过的块号, 从入口开始, 到以 RET 结尾的块为止
+     * @return RET 的值
+     */
+    private static int execute(ControlFlowGraph cfg, List<Integer> path) {
+        final var environment = new HashMap<IRVariable, Integer>();
+        var previous = -1;
+        for (final var block : path) {
+            if (previous < 0 ? block != 0 : !cfg.successors(previous).contains(block)) {
+                throw new RuntimeException("Illegal path %s at block %d".formatted(path, block));
+            }
+
+            final var code = cfg.block(block);
+            var i = 0;
+            // φ 函数是并行的: 先全部求值, 再一起写入
+            final var phiValues = new HashMap<IRVariable, Integer>();
+            for (; i < code.size() && code.get(i).getKind().isPhi(); i++) {
+                final var incoming = code.get(i).getIncoming().get(cfg.predecessors(block).indexOf(previous));
+                phiValues.put(code.get(i).getResult(), valueOf(incoming, environment));
+            }
+            environment.putAll(phiValues);
+
+            for (; i < code.size(); i++) {
+                final var instruction = code.get(i);
+                final var kind = instruction.getKind();
+                if (kind.isReturn()) {
+                    return valueOf(instruction.getReturnValue(), environment);
+                }
+                final var value = kind.isBinary()
+                    ? kind.apply(valueOf(instruction.getLHS(), environment), valueOf(instruction.getRHS(), environment))
+                    : valueOf(instruction.getFrom(), environment);
+                environment.put(instruction.getResult(), value);
+            }
+            previous = block;
+        }
+        throw new RuntimeException("Path %s ends without RET".formatted(path));
+    }
+
+    private static int valueOf(IRValue value, Map<IRVariable, Integer> environment) {
+        if (value instanceof IRImmediate immediate) {
+            return immediate.getValue();
+        }
+        final var result = environment.get((IRVariable) value);
+        if (result == null) {
+            throw new RuntimeException("Use of undefined IR variable: " + value);
+        }
+        return result;
+    }
+
+    private static String format(ControlFlowGraph cfg) {
+        final var builder = new StringBuilder();
+        for (int block = 0; block < cfg.size(); block++) {
+            builder.append("block %d -> %s%n".formatted(block, cfg.successors(block)));
+            cfg.block(block).forEach(instruction -> builder.append("    ").append(instruction).append(System.lineSeparator()));
+        }
+        return builder.toString();
+    }
+
+    //============================== 被检查的图 ==============================
+
+    /**
+     * 被检查的图, 以及创建其中变量的工厂
+     */
+    private record Graph(ControlFlowGraph cfg, IRValueFactory values) {
+    }
+
+    /**
+     * 循环形状的图都是 0 -> 1, 1 -> 2 | 3, 2 -> 1; 依次绕回 0 到 iterations 次
+     */
+    private static List<List<Integer>> loopPaths(int iterations) {
+        final var paths = new ArrayList<List<Integer>>();
+        for (int k = 0; k <= iterations; k++) {
+            final var path = new ArrayList<>(List.of(0, 1));
+            for (int j = 0; j < k; j++) {
+                path.addAll(List.of(2, 1));
+            }
+            path.add(3);
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * 两个分支分别给 a 赋值, 其中一个还给 b 赋值, 在汇合点读取两者
+     */
+    private static Graph diamond(IRValueFactory values) {
+        final var a = values.named("a");
+        final var b = values.named("b");
+        final var sum = values.temp();
+        return new Graph(new ControlFlowGraph(
+            List.of(
+                List.of(Instruction.createMov(a, IRImmediate.of(1)), Instruction.createMov(b, IRImmediate.of(2))),
+                List.of(Instruction.createAdd(a, a, IRImmediate.of(10))),
+                List.of(Instruction.createMul(a, a, IRImmediate.of(3)), Instruction.createMov(b, a)),
+                List.of(Instruction.createAdd(sum, a, b), Instruction.createRet(sum))),
+            List.of(List.of(1, 2), List.of(3), List.of(3), List.of())), values);
+    }
+
+    /**
+     * 循环头读取 s 与 i, 循环体给两者重新赋值
+     */
+    private static Graph loop(IRValueFactory values) {
+        final var i = values.named("i");
+        final var s = values.named("s");
+        final var difference = values.temp();
+        return new Graph(new ControlFlowGraph(
+            List.of(
+                List.of(Instruction.createMov(i, IRImmediate.of(0)), Instruction.createMov(s, IRImmediate.of(1))),
+                List.of(Instruction.createAdd(s, s, i)),
+                List.of(Instruction.createAdd(i, i, IRImmediate.of(1)), Instruction.createMul(s, s, IRImmediate.of(2))),
+                List.of(Instruction.createSub(difference, s, i), Instruction.createRet(difference))),
+            List.of(List.of(1), List.of(2, 3), List.of(1), List.of())), values);
+    }
+
+    /**
+     * 每绕一圈交换 a 与 b: 循环头的两个 φ 函数互相读取对方
+     */
+    private static Graph swap(IRValueFactory values) {
+        final var a1 = values.named("a.1");
+        final var b1 = values.named("b.1");
+        final var a2 = values.named("a.2");
+        final var b2 = values.named("b.2");
+        final var difference = values.temp();
+        return new Graph(new ControlFlowGraph(
+            List.of(
+                List.of(Instruction.createMov(a1, IRImmediate.of(1)), Instruction.createMov(b1, IRImmediate.of(2))),
+                List.of(Instruction.createPhi(a2, List.of(a1, b2)), Instruction.createPhi(b2, List.of(b1, a2))),
+                List.of(),
+                List.of(Instruction.createSub(difference, a2, b2), Instruction.createRet(difference))),
+            List.of(List.of(1), List.of(2, 3), List.of(1), List.of())), values);
+    }
+
+    /**
+     * 循环头定义 x.3 之后, 出口仍读取 x.2: 两个版本互相干扰, 合并回 x 就会丢失 x.2 的值
+     */
+    private static Graph lostCopy(IRValueFactory values) {
+        final var x1 = values.named("x.1");
+        final var x2 = values.named("x.2");
+        final var x3 = values.named("x.3");
+        return new Graph(new ControlFlowGraph(
+            List.of(
+                List.of(Instruction.createMov(x1, IRImmediate.of(5))),
+                List.of(Instruction.createPhi(x2, List.of(x1, x3)), Instruction.createAdd(x3, x2, IRImmediate.of(1))),
+                List.of(),
+                List.of(Instruction.createRet(x2))),
+            List.of(List.of(1), List.of(2, 3), List.of(1), List.of())), values);
+    }
+}
@@ -0,0 +1,105 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+import cn.edu.hitsz.compiler.ir.pass.PassManager;
+import cn.edu.hitsz.compiler.ir.pass.StrengthReductionPass;
+import cn.edu.hitsz.compiler.utils.IREmulator;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 对 {@link StrengthReductionPass} 的穷举检查
+ * <br>
+ * 对 [-limit, limit] 中的每个乘数 (默认范围覆盖 MultiplyPlan 预先算好的表, 以及表外按需计算的一部分),
+ * 以及所有 {@code ±2^k}, {@code ±(2^k ± 1)}, {@code ±(2^k ± 3)}, 分别构造 {@code r = x * c}, {@code r = c * x} 与 {@code x = x * c} 三种程序,
+ * 其中 x 取 0, ±1, INT_MIN, INT_MAX 等边界值. 每个程序只运行这一个 pass, 并要求改写后的程序与改写前的程序模拟执行的结果相同.
+ * 发现不一致时抛出异常, 否则输出检查的程序数与被改写的乘法数.
+ * <br>
+ * 用法 (在 template 目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.StrengthReductionCheck [limit=2048]
+ * </pre>
+ */
+public class StrengthReductionCheck {
+    private static final int[] OPERANDS = {
+        0, 1, -1, 2, -2, 3, -7, 12345, -12345, 0x55555555, 0xaaaaaaaa,
+        Integer.MIN_VALUE, Integer.MIN_VALUE + 1, Integer.MAX_VALUE, Integer.MAX_VALUE - 1,
+    };
+
+    public static void main(String[] args) {
+        var limit = 2048;
+        for (final var arg : args) {
+            final var pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "limit" -> limit = Integer.parseInt(pair[1]);
+                default -> throw new RuntimeException("Unknown argument: " + arg);
+            }
+        }
+
+        var programs = 0;
+        var reduced = 0;
+        for (final var constant : constants(limit)) {
+            for (final var shape : Shape.values()) {
+                for (final var operand : OPERANDS) {
+                    final var values = new IRValueFactory();
+                    final var original = shape.build(values, constant, operand);
+                    final var optimized = new PassManager(values).add(new StrengthReductionPass()).run(original);
+
+                    final var expected = IREmulator.load(original).execute();
+                    final var actual = IREmulator.load(optimized).execute();
+                    if (!expected.equals(actual)) {
+                        throw new RuntimeException("Strength reduction changed the result of %s: expected %s, got %s%n%s".formatted(
+                            original, expected, actual, optimized));
+                    }
+                    programs++;
+                    if (optimized.stream().noneMatch(instruction -> instruction.getKind() == InstructionKind.MUL)) {
+                        reduced++;
+                    }
+                }
+            }
+        }
+        System.out.printf("OK %d programs, %d multiplications reduced%n", programs, reduced);
+    }
+
+    /**
+     * 被检查的程序的形状
+     */
+    private enum Shape {
+        // r = x * c
+        VARIABLE_TIMES_CONSTANT,
+        // r = c * x
+        CONSTANT_TIMES_VARIABLE,
+        // x = x * c, 结果写回操作数
+        IN_PLACE;
+
+        List<Instruction> build(IRValueFactory values, int constant, int operand) {
+            final var x = values.named("x");
+            final var target = this == IN_PLACE ? x : values.named("r");
+            final var c = IRImmediate.of(constant);
+            return List.of(
+                Instruction.createMov(x, IRImmediate.of(operand)),
+                this == CONSTANT_TIMES_VARIABLE ? Instruction.createMul(target, c, x) : Instruction.createMul(target, x, c),
+                Instruction.createRet(target));
+        }
+    }
+
+    private static Set<Integer> constants(int limit) {
+        final var constants = new LinkedHashSet<Integer>();
+        for (int c = -limit; c <= limit; c++) {
+            constants.add(c);
+        }
+        for (int k = 0; k < 32; k++) {
+            final var power = 1 << k;
+            for (final var delta : new int[]{0, 1, -1, 3, -3}) {
+                constants.add(power + delta);
+                constants.add(-(power + delta));
+            }
+        }
+        return constants;
+    }
+}
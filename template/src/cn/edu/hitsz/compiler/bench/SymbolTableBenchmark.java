@@ -0,0 +1,206 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.LexicalAnalyzer;
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.symtab.ConcurrentSymbolTable;
+import cn.edu.hitsz.compiler.symtab.SourceCodeType;
+import cn.edu.hitsz.compiler.symtab.SymbolTable;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 共享符号表在多线程词法分析下的基准测试
+ * <br>
+ * 先生成若干个源文件, 它们的标识符取自同一个名字空间, 因此不同文件之间有大量重名的符号.
+ * 然后用不同数量的线程并行地对这些文件做词法分析, 所有词法分析器共享同一个符号表, 每个文件分析完后再尝试为其中的符号设置类型.
+ * 分别测试 {@link ConcurrentSymbolTable} 与一个用单个全局锁保护的 {@link SymbolTable},
+ * 并检查两者输出的符号表完全相同. 结果逐行输出到 data/out/bench/symtab.csv.
+ * <br>
+ * 用法 (在 template 目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.SymbolTableBenchmark [threads=1,2,4,8,16] [files=64] [lines=4000] [names=50000] [repeat=3]
+ * </pre>
+ */
+public class SymbolTableBenchmark {
+    private static final String OUT_DIR = "data/out/bench";
+
+    public static void main(String[] args) {
+        var threads = List.of(1, 2, 4, 8, 16);
+        var files = 64;
+        var lines = 4000;
+        var names = 50000;
+        var repeat = 3;
+
+        for (final var arg : args) {
+            final var pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "threads" -> threads = Arrays.stream(pair[1].split(",")).map(Integer::valueOf).toList();
+                case "files" -> files = Integer.parseInt(pair[1]);
+                case "lines" -> lines = Integer.parseInt(pair[1]);
+                case "names" -> names = Integer.parseInt(pair[1]);
+                case "repeat" -> repeat = Integer.parseInt(pair[1]);
+                default -> throw new RuntimeException("Unknown argument: " + arg);
+            }
+        }
+
+        TokenKind.loadTokenKinds();
+        final var sources = generateSources(files, lines, names);
+
+        final var result = new ArrayList<String>();
+        result.add("table,threads,files,symbols,ms");
+        for (final var threadCount : threads) {
+            final var locked = measure(repeat, threadCount, sources, LockedSymbolTable::new);
+            final var concurrent = measure(repeat, threadCount, sources, ConcurrentSymbolTable::new);
+
+            locked.table.dumpTable(OUT_DIR + "/symtab_locked.txt");
+            concurrent.table.dumpTable(OUT_DIR + "/symtab_concurrent.txt");
+            if (!FileUtils.readLines(OUT_DIR + "/symtab_locked.txt").equals(FileUtils.readLines(OUT_DIR + "/symtab_concurrent.txt"))) {
+                throw new RuntimeException("Symbol tables differ with %d threads".formatted(threadCount));
+            }
+
+            for (final var line : List.of(
+                "locked,%d,%d,%d,%.3f".formatted(threadCount, files, locked.table.size(), locked.millis),
+                "concurrent,%d,%d,%d,%.3f".formatted(threadCount, files, concurrent.table.size(), concurrent.millis))) {
+                System.out.println(line);
+                result.add(line);
+            }
+        }
+
+        FileUtils.writeLines(OUT_DIR + "/symtab.csv", result);
+    }
+
+    /**
+     * 用一个全局锁保护的符号表, 作为对照
+     */
+    private static class LockedSymbolTable extends SymbolTable {
+        @Override
+        public synchronized int intern(CharSequence text) {
+            return super.intern(text);
+        }
+
+        @Override
+        public synchronized int idOf(CharSequence text) {
+            return super.idOf(text);
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
+        @Override
+        public synchronized String getText(int id) {
+            return super.getText(id);
+        }
+
+        @Override
+        public synchronized SourceCodeType getType(int id) {
+            return super.getType(id);
+        }
+
+        @Override
+        public synchronized void setType(int id, SourceCodeType type) {
+            super.setType(id, type);
+        }
+    }
+
+    /**
+     * @param table  最后一次运行得到的符号表
+     * @param millis 多次运行中最短的耗时
+     */
+    private record Measurement(SymbolTable table, double millis) {
+    }
+
+    private static Measurement measure(int repeat, int threadCount, List<String> sources, Supplier<SymbolTable> factory) {
+        // 先运行一次作为预热
+        var table = runOnce(threadCount, sources, factory.get());
+        var bestMillis = Double.MAX_VALUE;
+
+        for (int i = 0; i < repeat; i++) {
+            System.gc();
+            final var begin = System.nanoTime();
+            table = runOnce(threadCount, sources, factory.get());
+            final var end = System.nanoTime();
+            bestMillis = Math.min(bestMillis, (end - begin) / 1e6);
+        }
+
+        return new Measurement(table, bestMillis);
+    }
+
+    private static SymbolTable runOnce(int threadCount, List<String> sources, SymbolTable table) {
+        // 各线程从同一个计数器领取下一个待分析的文件
+        final var next = new AtomicInteger();
+        // 模拟语义分析: 每个线程都尝试为遇到的每个符号设置类型, 每个符号应当恰有一次设置成功
+        final var typed = new AtomicInteger();
+        final var workers = new ArrayList<Thread>();
+        for (int i = 0; i < threadCount; i++) {
+            workers.add(new Thread(() -> {
+                for (int file = next.getAndIncrement(); file < sources.size(); file = next.getAndIncrement()) {
+                    final var lexer = new LexicalAnalyzer(table);
+                    lexer.loadFile(sources.get(file));
+                    lexer.run();
+
+                    for (final var token : lexer.getTokens()) {
+                        if (!token.getKindId().equals("id")) {
+                            continue;
+                        }
+
+                        final var id = table.idOf(token.getText());
+                        if (table.getType(id) == null) {
+                            try {
+                                table.setType(id, SourceCodeType.Int);
+                                typed.incrementAndGet();
+                            } catch (RuntimeException e) {
+                                // 其他线程抢先设置了类型
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+
+        workers.forEach(Thread::start);
+        for (final var worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        if (typed.get() != table.size()) {
+            throw new RuntimeException("%d types set for %d symbols".formatted(typed.get(), table.size()));
+        }
+        return table;
+    }
+
+    private static List<String> generateSources(int files, int lines, int names) {
+        final var dir = OUT_DIR + "/symtab_src";
+        new File(dir).mkdirs();
+
+        final var random = new Random(0);
+        final var paths = new ArrayList<String>();
+        for (int file = 0; file < files; file++) {
+            final var code = new ArrayList<String>();
+            for (int line = 0; line < lines; line++) {
+                final var target = "v" + random.nextInt(names);
+                if (line % 4 == 0) {
+                    code.add("int " + target + ";");
+                } else {
+                    code.add("%s = v%d + v%d * %d;".formatted(target, random.nextInt(names), random.nextInt(names), line));
+                }
+            }
+
+            final var path = dir + "/file_%d.txt".formatted(file);
+            FileUtils.writeLines(path, code);
+            paths.add(path);
+        }
+        return paths;
+    }
+}
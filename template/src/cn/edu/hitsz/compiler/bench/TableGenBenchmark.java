@@ -0,0 +1,178 @@
+package cn.edu.hitsz.compiler.bench;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.LRTable;
+import cn.edu.hitsz.compiler.parser.table.TableGenerator;
+import cn.edu.hitsz.compiler.parser.table.TableLoader;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 分析表构造的基准测试
+ * <br>
+ * 对一系列规模递增的合成文法 (见 {@link GrammarSynthesizer}), 分别计时 {@link TableGenerator#run()} 从文法构造分析表,
+ * 以及 {@link TableLoader#load(String)} 读取同一张表的 CSV 形式, 并记录两者运行期间的堆内存峰值.
+ * 峰值是运行期间每 {@link #SAMPLE_INTERVAL_MILLIS} 毫秒对整个堆的已用量采样所得的最大值: 各内存池的峰值出现在不同时刻,
+ * 把它们相加会高估峰值. 采样可能错过两次采样之间的短暂高点, 因此记录的值略低于真实峰值.
+ * 结果按规模逐行输出到 data/out/bench/table_gen.csv, 便于画出随规模变化的曲线.
+ * <br>
+ * 用法 (在 template 目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.bench.TableGenBenchmark [groups=1,2,4,8,16,32,64] [alternatives=2] [ambiguity=NONE] [period=1] [repeat=3]
+ * </pre>
+ * 存在冲突的文法无法构造出分析表, 其结果行会记录冲突信息而不是耗时.
+ */
+public class TableGenBenchmark {
+    private static final String OUT_DIR = "data/out/bench";
+    private static final long SAMPLE_INTERVAL_MILLIS = 1;
+
+    public static void main(String[] args) {
+        var groups = List.of(1, 2, 4, 8, 16, 32, 64);
+        var alternatives = 2;
+        var ambiguity = GrammarSynthesizer.Ambiguity.NONE;
+        var period = 1;
+        var repeat = 3;
+
+        for (final var arg : args) {
+            final var pair = arg.split("=", 2);
+            switch (pair[0]) {
+                case "groups" -> groups = Arrays.stream(pair[1].split(",")).map(Integer::valueOf).toList();
+                case "alternatives" -> alternatives = Integer.parseInt(pair[1]);
+                case "ambiguity" -> ambiguity = GrammarSynthesizer.Ambiguity.valueOf(pair[1]);
+                case "period" -> period = Integer.parseInt(pair[1]);
+                case "repeat" -> repeat = Integer.parseInt(pair[1]);
+                default -> throw new RuntimeException("Unknown argument: " + arg);
+            }
+        }
+
+        TokenKind.loadTokenKinds();
+        new File(OUT_DIR).mkdirs();
+
+        final var lines = new ArrayList<String>();
+        lines.add("groups,nonTerminals,productions,states,generateMs,generatePeakMB,loadMs,loadPeakMB,note");
+        for (final var size : groups) {
+            final var line = runOne(new GrammarSynthesizer(size, alternatives, ambiguity, period), size, repeat);
+            System.out.println(line);
+            lines.add(line);
+        }
+
+        FileUtils.writeLines(OUT_DIR + "/table_gen.csv", lines);
+    }
+
+    private static String runOne(GrammarSynthesizer synthesizer, int groups, int repeat) {
+        final var grammar = synthesizer.synthesize();
+        final var grammarPath = OUT_DIR + "/grammar_%d.txt".formatted(groups);
+        final var tablePath = OUT_DIR + "/table_%d.csv".formatted(groups);
+        FileUtils.writeLines(grammarPath, grammar);
+        GrammarInfo.load(grammarPath);
+
+        final var prefix = "%d,%d,%d".formatted(groups, synthesizer.countNonTerminals(), grammar.size());
+
+        final Measurement generate;
+        try {
+            generate = measure(repeat, () -> {
+                final var generator = new TableGenerator();
+                generator.run();
+                return generator.getTable();
+            });
+        } catch (RuntimeException e) {
+            return prefix + ",,,,,,\"" + e.getMessage() + "\"";
+        }
+
+        generate.table.dumpTable(tablePath);
+        final var states = countStates(tablePath);
+        final var load = measure(repeat, () -> new TableLoader().load(tablePath));
+
+        return "%s,%d,%.3f,%.2f,%.3f,%.2f,".formatted(
+            prefix, states, generate.millis, generate.peakMB, load.millis, load.peakMB);
+    }
+
+    /**
+     * 一次测量的结果
+     *
+     * @param table  构造出的分析表
+     * @param millis 多次运行中最短的耗时
+     * @param peakMB 多次运行中最大的堆内存峰值
+     */
+    private record Measurement(LRTable table, double millis, double peakMB) {
+    }
+
+    private static Measurement measure(int repeat, Supplier<LRTable> task) {
+        // 先运行一次作为预热
+        var table = task.get();
+        var bestMillis = Double.MAX_VALUE;
+        var peakMB = 0.0;
+
+        for (int i = 0; i < repeat; i++) {
+            System.gc();
+            final var sampler = new HeapSampler();
+            sampler.start();
+
+            final var begin = System.nanoTime();
+            table = task.get();
+            final var end = System.nanoTime();
+
+            bestMillis = Math.min(bestMillis, (end - begin) / 1e6);
+            peakMB = Math.max(peakMB, sampler.finish() / 1024.0 / 1024.0);
+        }
+
+        return new Measurement(table, bestMillis, peakMB);
+    }
+
+    /**
+     * 在后台线程中定期采样整个堆的已用量, 记录其最大值
+     */
+    private static class HeapSampler extends Thread {
+        HeapSampler() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                sample();
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 停止采样
+         *
+         * @return 采样期间堆已用量的最大值, 单位为字节
+         */
+        long finish() {
+            running = false;
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // 补上结束时的一次, 任务很短时也至少有一个采样
+            sample();
+            return peak;
+        }
+
+        private void sample() {
+            peak = Math.max(peak, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+
+        private volatile boolean running = true;
+        private volatile long peak = 0;
+    }
+
+    private static int countStates(String tablePath) {
+        // 表头占两行
+        return FileUtils.readLines(tablePath).size() - 2;
+    }
+}
@@ -0,0 +1,315 @@
+package cn.edu.hitsz.compiler.ir;
+
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 紧凑存储的 IR 指令序列
+ * <br>
+ * 与 {@code List<Instruction>} 表示的是同一段 IR, 但不为每条指令创建对象, 而是按列存放在几个平行的基本类型数组中:
+ * 第 i 条指令的种类, 结果, 左操作数与右操作数分别是 {@code kinds[i]}, {@code results[i]}, {@code lhs[i]}, {@code rhs[i]}.
+ * <ul>
+ *     <li>IR 变量按首次出现的顺序获得一个从 0 开始的稠密 id, 列中存放的是 id; 变量的名字保存在变量表中</li>
+ *     <li>立即数直接以其值存放在操作数列中, 由 {@code immediates[i]} 的标志位区分操作数是立即数还是变量 id</li>
+ *     <li>MOV 与 RET 只有一个操作数, 存放在左操作数列中; RET 没有结果, 其结果列为 -1</li>
+ * </ul>
+ * 所有按下标读取的方法都只读数组, 不创建任何对象, 适合需要遍历大量指令的模拟执行与代码生成.
+ * 需要 {@link Instruction} 对象时可以用 {@link #instruction(int)} 或 {@link #toInstructions()} 按需还原.
+ */
+public final class IRBuffer {
+    private static final byte LHS_IMMEDIATE = 1;
+    private static final byte RHS_IMMEDIATE = 2;
+    private static final InstructionKind[] KINDS = InstructionKind.values();
+
+    public IRBuffer() {
+        this.size = 0;
+        this.kinds = new byte[64];
+        this.results = new int[64];
+        this.lhs = new int[64];
+        this.rhs = new int[64];
+        this.immediates = new byte[64];
+    }
+
+    /**
+     * 直接以现成的列构造, 供 {@link IRFile} 读取二进制文件时使用
+     */
+    IRBuffer(int size, byte[] kinds, int[] results, int[] lhs, int[] rhs, byte[] immediates, List<IRVariable> variables) {
+        this.size = size;
+        this.kinds = kinds;
+        this.results = results;
+        this.lhs = lhs;
+        this.rhs = rhs;
+        this.immediates = immediates;
+        for (final var variable : variables) {
+            variableId(variable);
+        }
+    }
+
+    /**
+     * @param instructions 指令列表
+     * @return 与之等价的 IRBuffer
+     */
+    public static IRBuffer of(List<Instruction> instructions) {
+        final var buffer = new IRBuffer();
+        for (final var instruction : instructions) {
+            buffer.append(instruction);
+        }
+        return buffer;
+    }
+
+
+    //============================== 构造 ==============================
+    public void appendAdd(IRVariable result, IRValue lhs, IRValue rhs) {
+        append(InstructionKind.ADD, result, lhs, rhs);
+    }
+
+    public void appendSub(IRVariable result, IRValue lhs, IRValue rhs) {
+        append(InstructionKind.SUB, result, lhs, rhs);
+    }
+
+    public void appendMul(IRVariable result, IRValue lhs, IRValue rhs) {
+        append(InstructionKind.MUL, result, lhs, rhs);
+    }
+
+    public void appendDiv(IRVariable result, IRValue lhs, IRValue rhs) {
+        append(InstructionKind.DIV, result, lhs, rhs);
+    }
+
+    /**
+     * @param kind 二元 IR 的种类
+     */
+    public void appendBinary(InstructionKind kind, IRVariable result, IRValue lhs, IRValue rhs) {
+        if (!kind.isBinary()) {
+            throw new RuntimeException("Not a binary instruction kind: " + kind);
+        }
+        append(kind, result, lhs, rhs);
+    }
+
+    public void appendMov(IRVariable result, IRValue from) {
+        append(InstructionKind.MOV, result, from, null);
+    }
+
+    public void appendRet(IRValue returnValue) {
+        append(InstructionKind.RET, null, returnValue, null);
+    }
+
+    public void append(Instruction instruction) {
+        final var kind = instruction.getKind();
+        if (kind.isPhi()) {
+            // φ 函数的操作数个数不定, 无法按列存放; 它们应当在离开 SSA 形式时被消除
+            throw new RuntimeException("Can NOT store PHI in IRBuffer, leave SSA form first: " + instruction);
+        }
+        if (kind.isBinary()) {
+            append(kind, instruction.getResult(), instruction.getLHS(), instruction.getRHS());
+        } else if (kind.isUnary()) {
+            append(kind, instruction.getResult(), instruction.getFrom(), null);
+        } else {
+            append(kind, null, instruction.getReturnValue(), null);
+        }
+    }
+
+    /**
+     * 取得 IR 变量的 id, 若该变量尚未出现过则为其分配新 id
+     *
+     * @param variable IR 变量
+     * @return 该变量的 id
+     */
+    public int variableId(IRVariable variable) {
+        final var id = findVariable(variable);
+        if (id >= 0) {
+            return id;
+        }
+
+        final var key = variable.getId();
+        if (key >= bufferIds.length) {
+            bufferIds = Arrays.copyOf(bufferIds, Math.max(key + 1, bufferIds.length * 2));
+        }
+        if (bufferIds[key] != 0) {
+            throw new RuntimeException("IR mixes variables from different factories: %s and %s"
+                .formatted(variables.get(bufferIds[key] - 1), variable));
+        }
+
+        final var newId = variables.size();
+        variables.add(variable);
+        bufferIds[key] = newId + 1;
+        return newId;
+    }
+
+    /**
+     * @param variable IR 变量
+     * @return 该变量的 id; 若该变量未在 IR 中出现过则返回 -1
+     */
+    public int findVariable(IRVariable variable) {
+        final var key = variable.getId();
+        if (key >= bufferIds.length) {
+            return -1;
+        }
+        final var id = bufferIds[key] - 1;
+        return id >= 0 && variables.get(id) == variable ? id : -1;
+    }
+
+
+    //============================== 按下标读取 ==============================
+    /**
+     * @return 指令条数
+     */
+    public int size() {
+        return size;
+    }
+
+    public InstructionKind kind(int index) {
+        return KINDS[kinds[index]];
+    }
+
+    /**
+     * @return 结果变量的 id; RET 指令返回 -1
+     */
+    public int result(int index) {
+        return results[index];
+    }
+
+    /**
+     * @return 左操作数 (MOV 与 RET 的唯一操作数): 若为立即数则是其值, 否则是变量 id
+     */
+    public int lhs(int index) {
+        return lhs[index];
+    }
+
+    /**
+     * @return 右操作数: 若为立即数则是其值, 否则是变量 id
+     */
+    public int rhs(int index) {
+        return rhs[index];
+    }
+
+    public boolean isLhsImmediate(int index) {
+        return (immediates[index] & LHS_IMMEDIATE) != 0;
+    }
+
+    public boolean isRhsImmediate(int index) {
+        return (immediates[index] & RHS_IMMEDIATE) != 0;
+    }
+
+    /**
+     * @return 标志位: 第 0 位表示左操作数是立即数, 第 1 位表示右操作数是立即数
+     */
+    byte immediateFlags(int index) {
+        return immediates[index];
+    }
+
+    /**
+     * @return IR 中出现的变量个数, 所有变量 id 都小于它
+     */
+    public int variableCount() {
+        return variables.size();
+    }
+
+    /**
+     * @param id 变量 id
+     * @return 该 id 对应的 IR 变量
+     */
+    public IRVariable variable(int id) {
+        return variables.get(id);
+    }
+
+
+    //============================== 还原为 Instruction ==============================
+    public Instruction instruction(int index) {
+        final var result = results[index] < 0 ? null : variables.get(results[index]);
+        final var lhsValue = isLhsImmediate(index) ? IRImmediate.of(lhs[index]) : variables.get(lhs[index]);
+        return switch (kind(index)) {
+            case MOV -> Instruction.createMov(result, lhsValue);
+            case RET -> Instruction.createRet(lhsValue);
+            default -> Instruction.createBinary(kind(index), result,
+                lhsValue, isRhsImmediate(index) ? IRImmediate.of(rhs[index]) : variables.get(rhs[index]));
+        };
+    }
+
+    public List<Instruction> toInstructions() {
+        final var instructions = new ArrayList<Instruction>(size);
+        for (int i = 0; i < size; i++) {
+            instructions.add(instruction(i));
+        }
+        return instructions;
+    }
+
+    /**
+     * 按与 {@link Instruction#toString()} 相同的格式输出所有指令
+     *
+     * @param path 输出文件路径
+     */
+    public void dump(String path) {
+        final var lines = new ArrayList<String>(size);
+        final var builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            builder.setLength(0);
+            builder.append('(').append(kind(i)).append(", ");
+            if (results[i] >= 0) {
+                builder.append(variables.get(results[i]).getName());
+            }
+            builder.append(", ");
+            appendOperand(builder, lhs[i], isLhsImmediate(i));
+            if (kind(i).isBinary()) {
+                builder.append(", ");
+                appendOperand(builder, rhs[i], isRhsImmediate(i));
+            }
+            lines.add(builder.append(')').toString());
+        }
+
+        FileUtils.writeLines(path, lines);
+    }
+
+
+    //============================== 基础设施 ==============================
+    private byte[] kinds;
+    private int[] results;
+    private int[] lhs;
+    private int[] rhs;
+    private byte[] immediates;
+    private int size;
+
+    // 变量表: 以 id 为下标的变量, 以及以变量在其工厂中的 id ({@link IRVariable#getId()}) 为下标的索引, 存放本表中的 id + 1, 0 表示未出现
+    private final List<IRVariable> variables = new ArrayList<>();
+    private int[] bufferIds = new int[16];
+
+    private void append(InstructionKind kind, IRVariable result, IRValue lhsValue, IRValue rhsValue) {
+        if (size == kinds.length) {
+            final var capacity = Math.max(64, size * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            results = Arrays.copyOf(results, capacity);
+            lhs = Arrays.copyOf(lhs, capacity);
+            rhs = Arrays.copyOf(rhs, capacity);
+            immediates = Arrays.copyOf(immediates, capacity);
+        }
+
+        byte flags = 0;
+        if (lhsValue instanceof IRImmediate immediate) {
+            flags |= LHS_IMMEDIATE;
+            lhs[size] = immediate.getValue();
+        } else {
+            lhs[size] = variableId((IRVariable) lhsValue);
+        }
+        if (rhsValue instanceof IRImmediate immediate) {
+            flags |= RHS_IMMEDIATE;
+            rhs[size] = immediate.getValue();
+        } else {
+            rhs[size] = rhsValue == null ? 0 : variableId((IRVariable) rhsValue);
+        }
+
+        kinds[size] = (byte) kind.ordinal();
+        results[size] = result == null ? -1 : variableId(result);
+        immediates[size] = flags;
+        size++;
+    }
+
+    private void appendOperand(StringBuilder builder, int operand, boolean immediate) {
+        if (immediate) {
+            builder.append(operand);
+        } else {
+            builder.append(variables.get(operand).getName());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * IR 的二进制文件格式
+ * <br>
+ * 用于缓存前端的输出: 后端可以直接读取该文件, 而不必重新进行词法分析与语法分析. 文件内容与 {@link IRBuffer} 的列一一对应,
+ * 读取时把文件映射到内存后整块拷贝各列, 不需要解析文本. 文件中所有多字节整数均为小端序, 依次为:
+ * <ol>
+ *     <li>魔数 {@link #MAGIC}, 4 字节</li>
+ *     <li>格式版本 {@link #VERSION}, int</li>
+ *     <li>源代码的 SHA-256 摘要, {@link #HASH_LENGTH} 字节, 用于判断缓存是否与源代码一致</li>
+ *     <li>指令条数 n 与变量个数 m, 各一个 int</li>
+ *     <li>变量表: 按 id 顺序, 每个变量是名字的 UTF-8 字节数 (short) 加上名字本身</li>
+ *     <li>指令的各列: kinds (n 字节, {@link InstructionKind} 的序号), immediates (n 字节), results, lhs, rhs (各 n 个 int)</li>
+ * </ol>
+ * 指令种类按枚举序号存储, 因此只能在 {@link InstructionKind} 的末尾添加新种类; 调整已有种类的顺序时必须提升版本号.
+ */
+public final class IRFile {
+    public static final byte[] MAGIC = {'H', 'I', 'R', 'B'};
+    public static final int VERSION = 1;
+    public static final int HASH_LENGTH = 32;
+
+    /**
+     * 将 IR 写入二进制文件
+     *
+     * @param path       输出文件路径
+     * @param buffer     要写入的 IR
+     * @param sourceHash 源代码的摘要, 见 {@link #hashSource(String)}
+     */
+    public static void write(String path, IRBuffer buffer, byte[] sourceHash) {
+        if (sourceHash.length != HASH_LENGTH) {
+            throw new RuntimeException("Source hash must be %d bytes".formatted(HASH_LENGTH));
+        }
+
+        final var names = new ArrayList<byte[]>(buffer.variableCount());
+        var namesLength = 0;
+        for (int id = 0; id < buffer.variableCount(); id++) {
+            final var name = buffer.variable(id).getName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            namesLength += Short.BYTES + name.length;
+        }
+
+        final var n = buffer.size();
+        final var length = MAGIC.length + Integer.BYTES + HASH_LENGTH + 2 * Integer.BYTES
+            + namesLength + 2 * n + 3 * n * Integer.BYTES;
+        final var bytes = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+        bytes.put(MAGIC).putInt(VERSION).put(sourceHash).putInt(n).putInt(buffer.variableCount());
+        for (final var name : names) {
+            bytes.putShort((short) name.length).put(name);
+        }
+        for (int i = 0; i < n; i++) {
+            bytes.put((byte) buffer.kind(i).ordinal());
+        }
+        for (int i = 0; i < n; i++) {
+            bytes.put(buffer.immediateFlags(i));
+        }
+        for (int i = 0; i < n; i++) {
+            bytes.putInt(buffer.result(i));
+        }
+        for (int i = 0; i < n; i++) {
+            bytes.putInt(buffer.lhs(i));
+        }
+        for (int i = 0; i < n; i++) {
+            bytes.putInt(buffer.rhs(i));
+        }
+
+        try (final var channel = FileChannel.open(Paths.get(path),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    /**
+     * 读取二进制 IR 文件
+     *
+     * @param path 文件路径
+     * @return 读出的文件
+     * @throws RuntimeException 文件格式或版本不正确
+     */
+    public static IRFile read(String path) {
+        try (final var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            final var bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            return read(path, bytes);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    /**
+     * 计算源代码文件的摘要
+     *
+     * @param sourcePath 源代码路径
+     * @return SHA-256 摘要
+     */
+    public static byte[] hashSource(String sourcePath) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(Paths.get(sourcePath)));
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + sourcePath, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return 生成该 IR 的源代码的摘要
+     */
+    public byte[] getSourceHash() {
+        return sourceHash.clone();
+    }
+
+    /**
+     * @param sourcePath 源代码路径
+     * @return 该文件是否由这份源代码生成, 即缓存是否仍然有效
+     */
+    public boolean isGeneratedFrom(String sourcePath) {
+        return Arrays.equals(sourceHash, hashSource(sourcePath));
+    }
+
+    public IRBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return "IRFile(source=%s, instructions=%d, variables=%d)".formatted(
+            HexFormat.of().formatHex(sourceHash), buffer.size(), buffer.variableCount());
+    }
+
+    private IRFile(byte[] sourceHash, IRBuffer buffer) {
+        this.sourceHash = sourceHash;
+        this.buffer = buffer;
+    }
+
+    private final byte[] sourceHash;
+    private final IRBuffer buffer;
+
+    private static IRFile read(String path, ByteBuffer bytes) {
+        final var magic = new byte[MAGIC.length];
+        bytes.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new RuntimeException("Not a binary IR file: " + path);
+        }
+        final var version = bytes.getInt();
+        if (version != VERSION) {
+            throw new RuntimeException("Unsupported binary IR version %d in %s".formatted(version, path));
+        }
+
+        final var sourceHash = new byte[HASH_LENGTH];
+        bytes.get(sourceHash);
+        final var n = bytes.getInt();
+        final var variableCount = bytes.getInt();
+
+        final var variables = new ArrayList<IRVariable>(variableCount);
+        for (int id = 0; id < variableCount; id++) {
+            final var name = new byte[Short.toUnsignedInt(bytes.getShort())];
+            bytes.get(name);
+            variables.add(new IRVariable(new String(name, StandardCharsets.UTF_8), id));
+        }
+
+        final var kinds = new byte[n];
+        final var immediates = new byte[n];
+        final var results = new int[n];
+        final var lhs = new int[n];
+        final var rhs = new int[n];
+        bytes.get(kinds).get(immediates);
+        bytes.asIntBuffer().get(results);
+        bytes.position(bytes.position() + n * Integer.BYTES);
+        bytes.asIntBuffer().get(lhs);
+        bytes.position(bytes.position() + n * Integer.BYTES);
+        bytes.asIntBuffer().get(rhs);
+
+        final var kindCount = InstructionKind.values().length;
+        for (final var kind : kinds) {
+            if (kind < 0 || kind >= kindCount) {
+                throw new RuntimeException("Unknown instruction kind %d in %s".formatted(kind, path));
+            }
+        }
+
+        return new IRFile(sourceHash, new IRBuffer(n, kinds, results, lhs, rhs, immediates, variables));
+    }
+}
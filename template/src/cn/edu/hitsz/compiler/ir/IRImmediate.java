@@ -2,9 +2,24 @@ package cn.edu.hitsz.compiler.ir;
 
 /**
  * IR 中的立即数
+ * <br>
+ * 立即数是不可变的值对象, 等价性由其值确定. 较小的立即数 (源程序中绝大多数常量) 会被缓存并共享同一个对象.
  */
 public class IRImmediate implements IRValue {
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final IRImmediate[] CACHE = new IRImmediate[CACHE_HIGH - CACHE_LOW];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new IRImmediate(CACHE_LOW + i);
+        }
+    }
+
     public static IRImmediate of(int value) {
+        if (value >= CACHE_LOW && value < CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
         return new IRImmediate(value);
     }
 
@@ -19,6 +34,16 @@ public class IRImmediate implements IRValue {
         return Integer.toString(value);
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof IRImmediate immediate && value == immediate.value;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(value);
+    }
+
     private IRImmediate(int value) {
         this.value = value;
     }
@@ -0,0 +1,133 @@
+package cn.edu.hitsz.compiler.ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一次编译中所有 IR 值的工厂
+ * <br>
+ * 每次编译使用自己的工厂, 因此同一个 JVM 中可以并行地进行多次互不干扰的编译, 且每次编译的输出都是确定的:
+ * <ul>
+ *     <li>同名的具名变量只创建一次, 之后总是返回同一个对象, 所以同一次编译中的变量可以直接用 == 比较</li>
+ *     <li>临时变量从 $0 开始编号, 编号只取决于本次编译中已经创建了多少临时变量</li>
+ *     <li>所有变量 (具名的和临时的) 按创建顺序获得从 0 开始的稠密 id, 见 {@link IRVariable#getId()}</li>
+ *     <li>立即数由 {@link IRImmediate#of(int)} 创建, 较小的值会共享缓存的对象</li>
+ * </ul>
+ * 该类不是线程安全的, 不应在多次编译之间共享.
+ */
+public class IRValueFactory {
+    public IRValueFactory() {
+    }
+
+    /**
+     * 构造一个新工厂, 它接管给定 IR 中出现的所有变量: 这些变量对象保持原有的 id, 同名的具名变量总是返回已有的对象,
+     * 新变量的 id 与临时变量的编号都从已有的之后开始. 用于为不知道来源的 IR 补充新的变量而不与已有的冲突.
+     *
+     * @param instructions 已有的 IR, 其中的变量必须来自同一个工厂
+     * @return 新工厂
+     * @throws RuntimeException IR 中混有来自不同工厂的变量
+     */
+    public static IRValueFactory after(List<Instruction> instructions) {
+        final var factory = new IRValueFactory();
+        for (final var instruction : instructions) {
+            if (!instruction.getKind().isReturn()) {
+                factory.adopt(instruction.getResult());
+            }
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    factory.adopt(variable);
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * @see #after(List)
+     */
+    public static IRValueFactory after(IRBuffer buffer) {
+        final var factory = new IRValueFactory();
+        for (int id = 0; id < buffer.variableCount(); id++) {
+            factory.adopt(buffer.variable(id));
+        }
+        return factory;
+    }
+
+    /**
+     * @param name 源语言中变量的名字
+     * @return 本次编译中该名字对应的唯一 IRVariable
+     */
+    public IRVariable named(String name) {
+        final var variable = namedVariables.get(name);
+        if (variable != null) {
+            return variable;
+        }
+
+        final var newVariable = new IRVariable(name, variables.size());
+        variables.add(newVariable);
+        namedVariables.put(name, newVariable);
+        return newVariable;
+    }
+
+    /**
+     * @return 一个新的临时变量
+     */
+    public IRVariable temp() {
+        final var variable = new IRVariable("$" + tempCount++, variables.size());
+        variables.add(variable);
+        return variable;
+    }
+
+    /**
+     * @param value 立即数的值
+     * @return 对应的 IRImmediate
+     */
+    public IRImmediate immediate(int value) {
+        return IRImmediate.of(value);
+    }
+
+    /**
+     * @return 所有变量 id 的上界
+     */
+    public int variableCount() {
+        return variables.size();
+    }
+
+    /**
+     * @param id 变量 id
+     * @return 该 id 对应的变量; 由 {@link #after(List)} 构造的工厂中, 没有在给定 IR 中出现的 id 对应 null
+     */
+    public IRVariable variable(int id) {
+        return variables.get(id);
+    }
+
+    private final List<IRVariable> variables = new ArrayList<>();
+    private final Map<String, IRVariable> namedVariables = new HashMap<>();
+    private int tempCount = 0;
+
+    /**
+     * 接管一个来自其他工厂的变量, 保证之后创建的变量不与它的 id 或名字冲突
+     */
+    private void adopt(IRVariable variable) {
+        final var id = variable.getId();
+        while (variables.size() <= id) {
+            variables.add(null);
+        }
+        final var known = variable.isTemp() ? variables.get(id) : namedVariables.getOrDefault(variable.getName(), variables.get(id));
+        if (known == variable) {
+            return;
+        }
+        if (known != null) {
+            throw new RuntimeException("IR mixes variables from different factories: %s and %s".formatted(known, variable));
+        }
+
+        variables.set(id, variable);
+        if (variable.isTemp()) {
+            tempCount = Math.max(tempCount, Integer.parseInt(variable.getName().substring(1)) + 1);
+        } else {
+            namedVariables.put(variable.getName(), variable);
+        }
+    }
+}
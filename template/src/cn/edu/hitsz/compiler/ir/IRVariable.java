@@ -6,22 +6,17 @@ package cn.edu.hitsz.compiler.ir;
  * 我们允许 IR 中的变量保存一些有关源语言的信息 -- 比如它在源语言里对应的是具体的源语言变量还是源语言中的临时变量. 这些信息用一个字符串
  * name 来表示. 临时变量的 name 都是 "$[0-9]+", 而非临时变量的 name 都是 "[a-zA-Z_][a-zA-Z0-9_]*"
  * <br>
- * IR 变量的等价性由 name 唯一确定.
+ * 在 SSA 形式中, 具名变量的每次定义对应一个版本, 其 name 为 "原名.版本号", 见 {@link cn.edu.hitsz.compiler.ir.pass.SSAConstructionPass}.
+ * <br>
+ * IR 变量只能由每次编译独立的 {@link IRValueFactory} 创建 (或从 {@link IRFile} 读入). 同一次编译中同名的变量只有一个对象,
+ * 因此 IR 变量的等价性就是同一性, 可以直接用 == 比较; 每个变量还有一个在该次编译中稠密的 id, 见 {@link #getId()}.
  */
 public class IRVariable implements IRValue {
     /**
-     * @param name 源语言中变量的名字
-     * @return 一个对应于源语言中具体变量的 IRVariable
-     */
-    public static IRVariable named(String name) {
-        return new IRVariable(name);
-    }
-
-    /**
-     * @return 一个对应于源语言中的临时变量的新 IRVariable
+     * @return 变量在创建它的 {@link IRValueFactory} 中的 id, 从 0 开始; 从 IR 文件读入的变量即其在文件中的 id
      */
-    public static IRVariable temp() {
-        return new IRVariable("$" + count++);
+    public int getId() {
+        return id;
     }
 
     public String getName() {
@@ -43,18 +38,19 @@ public class IRVariable implements IRValue {
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof IRVariable reg && name.equals(reg.name);
+        return this == obj;
     }
 
     @Override
     public int hashCode() {
-        return name.hashCode();
+        return id;
     }
 
-    private IRVariable(String name) {
+    IRVariable(String name, int id) {
         this.name = name;
+        this.id = id;
     }
 
     private final String name;
-    private static int count = 0;
+    private final int id;
 }
@@ -1,6 +1,7 @@
 package cn.edu.hitsz.compiler.ir;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -40,6 +41,14 @@ public class Instruction {
         return new Instruction(InstructionKind.MUL, result, List.of(lhs, rhs));
     }
 
+    public static Instruction createDiv(IRVariable result, IRValue lhs, IRValue rhs) {
+        return new Instruction(InstructionKind.DIV, result, List.of(lhs, rhs));
+    }
+
+    public static Instruction createSll(IRVariable result, IRValue lhs, IRValue rhs) {
+        return new Instruction(InstructionKind.SLL, result, List.of(lhs, rhs));
+    }
+
     public static Instruction createMov(IRVariable result, IRValue from) {
         return new Instruction(InstructionKind.MOV, result, List.of(from));
     }
@@ -48,6 +57,23 @@ public class Instruction {
         return new Instruction(InstructionKind.RET, null, List.of(returnValue));
     }
 
+    /**
+     * @param incoming 按控制流图中前驱的顺序, 从每个前驱到达时 result 的值
+     */
+    public static Instruction createPhi(IRVariable result, List<IRValue> incoming) {
+        return new Instruction(InstructionKind.PHI, result, List.copyOf(incoming));
+    }
+
+    /**
+     * @param kind 二元 IR 的种类
+     */
+    public static Instruction createBinary(InstructionKind kind, IRVariable result, IRValue lhs, IRValue rhs) {
+        if (!kind.isBinary()) {
+            throw new RuntimeException("Not a binary instruction kind: " + kind);
+        }
+        return new Instruction(kind, result, List.of(lhs, rhs));
+    }
+
 
     //============================== 不同种类 IR 的参数 getter ==============================
     public InstructionKind getKind() {
@@ -55,30 +81,35 @@ public class Instruction {
     }
 
     public IRVariable getResult() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL, InstructionKind.MOV));
+        ensureKindMatch(KINDS_WITH_RESULT);
         return result;
     }
 
     public IRValue getLHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL));
+        ensureKindMatch(BINARY_KINDS);
         return operands.get(0);
     }
 
     public IRValue getRHS() {
-        ensureKindMatch(Set.of(InstructionKind.ADD, InstructionKind.SUB, InstructionKind.MUL));
+        ensureKindMatch(BINARY_KINDS);
         return operands.get(1);
     }
 
     public IRValue getFrom() {
-        ensureKindMatch(Set.of(InstructionKind.MOV));
+        ensureKindMatch(MOV_KINDS);
         return operands.get(0);
     }
 
     public IRValue getReturnValue() {
-        ensureKindMatch(Set.of(InstructionKind.RET));
+        ensureKindMatch(RET_KINDS);
         return operands.get(0);
     }
 
+    public List<IRValue> getIncoming() {
+        ensureKindMatch(PHI_KINDS);
+        return Collections.unmodifiableList(operands);
+    }
+
 
     //============================== 基础设施 ==============================
     @Override
@@ -103,6 +134,14 @@ public class Instruction {
     private final IRVariable result;
     private final List<IRValue> operands;
 
+    // 各 getter 所接受的指令种类, 只构造一次, 避免每次访问参数都创建新集合
+    private static final Set<InstructionKind> KINDS_WITH_RESULT = EnumSet.complementOf(EnumSet.of(InstructionKind.RET));
+    private static final Set<InstructionKind> BINARY_KINDS =
+        EnumSet.complementOf(EnumSet.of(InstructionKind.MOV, InstructionKind.RET, InstructionKind.PHI));
+    private static final Set<InstructionKind> MOV_KINDS = EnumSet.of(InstructionKind.MOV);
+    private static final Set<InstructionKind> RET_KINDS = EnumSet.of(InstructionKind.RET);
+    private static final Set<InstructionKind> PHI_KINDS = EnumSet.of(InstructionKind.PHI);
+
     private void ensureKindMatch(Set<InstructionKind> targetKinds) {
         final var kind = getKind();
         if (!targetKinds.contains(kind)) {
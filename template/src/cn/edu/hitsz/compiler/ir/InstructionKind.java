@@ -2,15 +2,23 @@ package cn.edu.hitsz.compiler.ir;
 
 /**
  * IR 的种类
+ * <br>
+ * 二进制 IR 文件中以序号保存种类, 新的种类只能加在末尾.
  */
 public enum InstructionKind {
-    ADD, SUB, MUL, MOV, RET;
+    ADD, SUB, MUL, MOV, RET,
+    // 逻辑左移, 逻辑右移, 算术右移; 与 RV32 一样只使用右操作数的低 5 位
+    SLL, SRL, SRA,
+    // 有符号除法 (向零取整), 以及有符号乘积的高 32 位
+    DIV, MULH,
+    // SSA 形式中的 φ 函数, 第 i 个操作数是从控制流图中第 i 个前驱到达时的值
+    PHI;
 
     /**
      * @return IR 是否是二元的 (有返回值, 有两个参数)
      */
     public boolean isBinary() {
-        return this != MOV && this != RET;
+        return this != MOV && this != RET && this != PHI;
     }
 
     /**
@@ -26,4 +34,40 @@ public enum InstructionKind {
     public boolean isReturn() {
         return this == RET;
     }
+
+    /**
+     * @return IR 是否为 φ 函数 (有返回值, 每个前驱一个参数)
+     */
+    public boolean isPhi() {
+        return this == PHI;
+    }
+
+    /**
+     * @return IR 是否为移位指令
+     */
+    public boolean isShift() {
+        return this == SLL || this == SRL || this == SRA;
+    }
+
+    /**
+     * 按 RV32 的语义计算二元 IR 的结果, 模拟执行与常量折叠都以此为准.
+     * 与 RV32 的 div 一样, 除以 0 的结果为 -1, {@code MIN_VALUE / -1} 的结果为 {@code MIN_VALUE}, 都不会出错.
+     *
+     * @param lhs 左操作数
+     * @param rhs 右操作数
+     * @return 运算结果 (溢出时按 32 位补码回绕)
+     */
+    public int apply(int lhs, int rhs) {
+        return switch (this) {
+            case ADD -> lhs + rhs;
+            case SUB -> lhs - rhs;
+            case MUL -> lhs * rhs;
+            case SLL -> lhs << rhs;
+            case SRL -> lhs >>> rhs;
+            case SRA -> lhs >> rhs;
+            case DIV -> rhs == 0 ? -1 : lhs / rhs;
+            case MULH -> (int) ((long) lhs * rhs >> 32);
+            default -> throw new RuntimeException("Not a binary instruction kind: " + this);
+        };
+    }
 }
@@ -0,0 +1,151 @@
+package cn.edu.hitsz.compiler.ir.cfg;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.pass.BlockLocalPass;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * IR 的控制流图
+ * <br>
+ * 结点是基本块, 0 号块为入口. 入口块不能有前驱: 程序开始时进入它的那条隐含的边不在图中, 有边进入入口块时它实际上是汇合点,
+ * 支配边界却会漏掉它. 循环需要从第一块开始时, 应在前面另加一个空的入口块. 目前 IR 中唯一的控制转移是 RET: 以 RET 结尾的块没有后继, 其余的块顺序执行到下一块.
+ * 因此由 {@link #of(List)} 得到的图中只有入口块可达. 需要表示其他控制流时可以用 {@link #ControlFlowGraph(List, List)} 直接给出各块的后继.
+ * <br>
+ * 各块的指令列表可以修改, 但图的结构 (块数与边) 在构造后不变.
+ */
+public final class ControlFlowGraph {
+    /**
+     * @param instructions IR
+     * @return 按 {@link BlockLocalPass#splitBlocks(List)} 切分得到的控制流图
+     */
+    public static ControlFlowGraph of(List<Instruction> instructions) {
+        final var blocks = BlockLocalPass.splitBlocks(instructions);
+        final var successors = new ArrayList<List<Integer>>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            final var block = blocks.get(i);
+            final var fallsThrough = i + 1 < blocks.size()
+                && (block.isEmpty() || !block.get(block.size() - 1).getKind().isReturn());
+            successors.add(fallsThrough ? List.of(i + 1) : List.of());
+        }
+        return new ControlFlowGraph(blocks, successors);
+    }
+
+    /**
+     * @param blocks     各基本块
+     * @param successors 以块号为下标, 各块的后继块号; 不能包含入口块 0
+     * @throws RuntimeException 块数与后继列表数不一致, 后继块号越界, 或有边进入入口块
+     */
+    public ControlFlowGraph(List<List<Instruction>> blocks, List<List<Integer>> successors) {
+        if (blocks.isEmpty() || blocks.size() != successors.size()) {
+            throw new RuntimeException("Illegal control flow graph: %d blocks, %d successor lists"
+                .formatted(blocks.size(), successors.size()));
+        }
+
+        this.blocks = new ArrayList<>(blocks.size());
+        this.successors = new ArrayList<>(blocks.size());
+        this.predecessors = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++) {
+            this.blocks.add(new ArrayList<>(blocks.get(i)));
+            this.successors.add(List.copyOf(successors.get(i)));
+            this.predecessors.add(new ArrayList<>());
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            for (final var successor : this.successors.get(i)) {
+                if (successor <= 0 || successor >= blocks.size()) {
+                    throw new RuntimeException("Illegal edge %d -> %d: %s".formatted(i, successor,
+                        successor == 0 ? "the entry block can NOT have predecessors" : "no such block"));
+                }
+                predecessors.get(successor).add(i);
+            }
+        }
+        this.reversePostorder = computeReversePostorder();
+        this.reachable = new boolean[blocks.size()];
+        reversePostorder.forEach(index -> reachable[index] = true);
+    }
+
+    /**
+     * @return 块数
+     */
+    public int size() {
+        return blocks.size();
+    }
+
+    /**
+     * @return 第 index 块的指令, 可以修改
+     */
+    public List<Instruction> block(int index) {
+        return blocks.get(index);
+    }
+
+    public List<Integer> successors(int index) {
+        return successors.get(index);
+    }
+
+    /**
+     * @return 第 index 块的前驱, 按块号从小到大; φ 函数的操作数按此顺序排列
+     */
+    public List<Integer> predecessors(int index) {
+        return Collections.unmodifiableList(predecessors.get(index));
+    }
+
+    /**
+     * @return 从入口可达的块, 按逆后序排列 (入口在最前, 每个块都排在它的所有非回边前驱之后)
+     */
+    public List<Integer> reversePostorder() {
+        return reversePostorder;
+    }
+
+    public boolean isReachable(int index) {
+        return reachable[index];
+    }
+
+    /**
+     * @return 结构相同的图, 各块的指令列表是新的副本
+     */
+    public ControlFlowGraph copy() {
+        return new ControlFlowGraph(blocks, successors);
+    }
+
+    /**
+     * @return 按块号顺序拼接所有块的指令
+     */
+    public List<Instruction> toInstructions() {
+        final var result = new ArrayList<Instruction>();
+        blocks.forEach(result::addAll);
+        return result;
+    }
+
+    private final List<List<Instruction>> blocks;
+    private final List<List<Integer>> successors;
+    private final List<List<Integer>> predecessors;
+    private final List<Integer> reversePostorder;
+    private final boolean[] reachable;
+
+    private List<Integer> computeReversePostorder() {
+        // 用显式栈做深度优先搜索, 以免块数很多时栈溢出
+        final var postorder = new ArrayList<Integer>(blocks.size());
+        final var visited = new boolean[blocks.size()];
+        final var stack = new ArrayList<int[]>();
+        visited[0] = true;
+        stack.add(new int[]{0, 0});
+        while (!stack.isEmpty()) {
+            final var top = stack.get(stack.size() - 1);
+            final var next = successors.get(top[0]);
+            if (top[1] < next.size()) {
+                final var successor = next.get(top[1]++);
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    stack.add(new int[]{successor, 0});
+                }
+            } else {
+                postorder.add(top[0]);
+                stack.remove(stack.size() - 1);
+            }
+        }
+        Collections.reverse(postorder);
+        return List.copyOf(postorder);
+    }
+}
@@ -0,0 +1,140 @@
+package cn.edu.hitsz.compiler.ir.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 控制流图的支配树与支配边界
+ * <br>
+ * 直接支配者用 Cooper, Harvey 与 Kennedy 的迭代算法计算: 按逆后序反复用各前驱的直接支配者求交, 直到不再变化.
+ * 对于可归约的图, 通常两轮即可收敛. 不可达的块不在支配树中.
+ */
+public final class DominatorTree {
+    public static DominatorTree of(ControlFlowGraph cfg) {
+        return new DominatorTree(cfg);
+    }
+
+    /**
+     * @return 第 index 块的直接支配者; 入口块与不可达的块返回 -1
+     */
+    public int idom(int index) {
+        return index == 0 ? -1 : idom[index];
+    }
+
+    /**
+     * @return 在支配树中第 index 块的子结点, 按块号从小到大
+     */
+    public List<Integer> children(int index) {
+        return Collections.unmodifiableList(children.get(index));
+    }
+
+    /**
+     * @return 块 a 是否支配块 b (每个可达的块都支配其自身)
+     */
+    public boolean dominates(int a, int b) {
+        if (idom[b] < 0) {
+            return false;
+        }
+        for (var runner = b; runner >= 0; runner = idom(runner)) {
+            if (runner == a) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 第 index 块的支配边界: 它支配其某个前驱, 但不严格支配其自身的那些块
+     */
+    public Set<Integer> frontier(int index) {
+        return Collections.unmodifiableSet(frontiers.get(index));
+    }
+
+    private final int[] idom;
+    private final List<List<Integer>> children;
+    private final List<Set<Integer>> frontiers;
+
+    private DominatorTree(ControlFlowGraph cfg) {
+        final var order = cfg.reversePostorder();
+        final var position = new int[cfg.size()];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < order.size(); i++) {
+            position[order.get(i)] = i;
+        }
+
+        // 不可达的块与尚未处理的块为 -1, 入口的直接支配者暂记为其自身
+        this.idom = new int[cfg.size()];
+        Arrays.fill(idom, -1);
+        idom[0] = 0;
+        var changed = true;
+        while (changed) {
+            changed = false;
+            for (final var block : order) {
+                if (block == 0) {
+                    continue;
+                }
+                var newIdom = -1;
+                for (final var predecessor : cfg.predecessors(block)) {
+                    if (idom[predecessor] < 0) {
+                        continue;
+                    }
+                    newIdom = newIdom < 0 ? predecessor : intersect(predecessor, newIdom, position);
+                }
+                if (idom[block] != newIdom) {
+                    idom[block] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+
+        this.children = new ArrayList<>(cfg.size());
+        this.frontiers = new ArrayList<>(cfg.size());
+        for (int i = 0; i < cfg.size(); i++) {
+            children.add(new ArrayList<>());
+            frontiers.add(new TreeSet<>());
+        }
+        for (int block = 1; block < cfg.size(); block++) {
+            if (idom[block] >= 0) {
+                children.get(idom[block]).add(block);
+            }
+        }
+
+        // 对每个汇合点, 从其各前驱沿支配树向上走到它的直接支配者为止, 途经的块的支配边界都包含它.
+        // ControlFlowGraph 保证入口块没有前驱, 因此只需数图中的边, 不必考虑程序开始时进入入口的那条边
+        for (final var block : order) {
+            final var predecessors = cfg.predecessors(block);
+            if (predecessors.size() < 2) {
+                continue;
+            }
+            for (final var predecessor : predecessors) {
+                if (idom[predecessor] < 0) {
+                    continue;
+                }
+                for (var runner = predecessor; runner != idom(block); runner = idom(runner)) {
+                    frontiers.get(runner).add(block);
+                    if (runner == 0) {
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private int intersect(int a, int b, int[] position) {
+        var finger1 = a;
+        var finger2 = b;
+        while (finger1 != finger2) {
+            while (position[finger1] > position[finger2]) {
+                finger1 = idom[finger1];
+            }
+            while (position[finger2] > position[finger1]) {
+                finger2 = idom[finger2];
+            }
+        }
+        return finger1;
+    }
+}
@@ -0,0 +1,39 @@
+package cn.edu.hitsz.compiler.ir.dataflow;
+
+/**
+ * {@link DataflowSolver} 的结果: 每个块入口与出口处的位集合
+ * <br>
+ * 返回的数组是内部状态, 调用者不应修改.
+ */
+public final class DataflowResult {
+    DataflowResult(long[][] in, long[][] out, int iterations) {
+        this.in = in;
+        this.out = out;
+        this.iterations = iterations;
+    }
+
+    /**
+     * @return 第 block 块入口处的值
+     */
+    public long[] in(int block) {
+        return in[block];
+    }
+
+    /**
+     * @return 第 block 块出口处的值
+     */
+    public long[] out(int block) {
+        return out[block];
+    }
+
+    /**
+     * @return 到达不动点之前处理块的次数
+     */
+    public int iterations() {
+        return iterations;
+    }
+
+    private final long[][] in;
+    private final long[][] out;
+    private final int iterations;
+}
@@ -0,0 +1,120 @@
+package cn.edu.hitsz.compiler.ir.dataflow;
+
+import cn.edu.hitsz.compiler.ir.cfg.ControlFlowGraph;
+import cn.edu.hitsz.compiler.utils.Bits;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 以基本块为单位求解 gen/kill 形式的位集合数据流方程
+ * <br>
+ * 每个块的传递函数为 {@code f(x) = gen ∪ (x - kill)}. 前向分析中块入口的值是各前驱出口值的交汇, 出口的值为 f(入口);
+ * 后向分析则反过来. 没有前驱 (前向) 或没有后继 (后向) 的块取边界值.
+ * <br>
+ * 用工作表迭代到不动点: 初始时按逆后序 (后向分析则按其逆序) 放入所有块, 某块的结果变化时把受它影响的块重新放入.
+ * 交汇为并集时从空集开始, 为交集时从全集开始, 因此得到的都是最优的不动点.
+ */
+public final class DataflowSolver {
+    public enum Direction {
+        FORWARD, BACKWARD
+    }
+
+    public enum Meet {
+        UNION, INTERSECTION
+    }
+
+    /**
+     * @param cfg       控制流图
+     * @param direction 分析方向
+     * @param meet      交汇运算
+     * @param universe  集合中元素索引的上界 (不含)
+     * @param gen       以块号为下标, 各块的 gen 集合
+     * @param kill      以块号为下标, 各块的 kill 集合
+     * @param boundary  边界值: 前向分析中入口块的入口值, 后向分析中没有后继的块的出口值
+     * @return 各块入口与出口处的值
+     */
+    public static DataflowResult solve(ControlFlowGraph cfg, Direction direction, Meet meet, int universe,
+                                       long[][] gen, long[][] kill, long[] boundary) {
+        final var forward = direction == Direction.FORWARD;
+        final var size = cfg.size();
+        // 对前向分析, before 是入口值, after 是出口值; 后向分析相反
+        final var before = new long[size][];
+        final var after = new long[size][];
+        for (int block = 0; block < size; block++) {
+            before[block] = Bits.create(universe);
+            after[block] = Bits.create(universe);
+            if (meet == Meet.INTERSECTION) {
+                Bits.fill(after[block], universe);
+            }
+        }
+
+        // 可达的块按逆后序, 不可达的块排在最后
+        final var order = new ArrayList<>(cfg.reversePostorder());
+        for (int block = 0; block < size; block++) {
+            if (!cfg.isReachable(block)) {
+                order.add(block);
+            }
+        }
+        if (!forward) {
+            Collections.reverse(order);
+        }
+
+        final var worklist = new ArrayDeque<>(order);
+        final var inWorklist = new boolean[size];
+        order.forEach(block -> inWorklist[block] = true);
+        var iterations = 0;
+        while (!worklist.isEmpty()) {
+            final int block = worklist.poll();
+            inWorklist[block] = false;
+            iterations++;
+
+            final var sources = forward ? cfg.predecessors(block) : cfg.successors(block);
+            final var input = before[block];
+            if (sources.isEmpty()) {
+                System.arraycopy(boundary, 0, input, 0, input.length);
+            } else {
+                System.arraycopy(after[sources.get(0)], 0, input, 0, input.length);
+                for (int i = 1; i < sources.size(); i++) {
+                    if (meet == Meet.UNION) {
+                        Bits.orInto(input, after[sources.get(i)]);
+                    } else {
+                        Bits.andInto(input, after[sources.get(i)]);
+                    }
+                }
+            }
+
+            if (transfer(input, gen[block], kill[block], after[block])) {
+                final List<Integer> targets = forward ? cfg.successors(block) : cfg.predecessors(block);
+                for (final var target : targets) {
+                    if (!inWorklist[target]) {
+                        inWorklist[target] = true;
+                        worklist.add(target);
+                    }
+                }
+            }
+        }
+
+        return forward ? new DataflowResult(before, after, iterations) : new DataflowResult(after, before, iterations);
+    }
+
+    /**
+     * output = gen ∪ (input - kill)
+     *
+     * @return output 是否发生了变化
+     */
+    private static boolean transfer(long[] input, long[] gen, long[] kill, long[] output) {
+        long changed = 0;
+        for (int i = 0; i < output.length; i++) {
+            final var value = gen[i] | (input[i] & ~kill[i]);
+            changed |= value ^ output[i];
+            output[i] = value;
+        }
+        return changed != 0;
+    }
+
+    private DataflowSolver() {
+    }
+}
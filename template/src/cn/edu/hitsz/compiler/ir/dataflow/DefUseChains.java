@@ -0,0 +1,109 @@
+package cn.edu.hitsz.compiler.ir.dataflow;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.utils.Bits;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 由到达定值得到的定值-使用链与使用-定值链
+ * <br>
+ * 指令与定值都用按块号顺序拼接所有块之后的下标表示, 见 {@link ReachingDefinitions#getInstructions()}.
+ * 块内已经被赋值过的变量只有最近的那个定值到达; 否则是到达块入口的定值中属于该变量的那些.
+ */
+public final class DefUseChains {
+    /**
+     * 一次使用: 第 instruction 条指令的第 operand 个操作数
+     */
+    public record Use(int instruction, int operand) {
+    }
+
+    public static DefUseChains of(List<Instruction> instructions) {
+        return new DefUseChains(ReachingDefinitions.of(instructions));
+    }
+
+    public static DefUseChains of(ReachingDefinitions reaching) {
+        return new DefUseChains(reaching);
+    }
+
+    public ReachingDefinitions getReachingDefinitions() {
+        return reaching;
+    }
+
+    /**
+     * @return 到达第 instruction 条指令的第 operand 个操作数的定值, 从小到大; 空数组表示读取的是程序的输入或操作数是立即数
+     */
+    public int[] definitions(int instruction, int operand) {
+        return useDefinitions[instruction][operand];
+    }
+
+    /**
+     * @return 第 definition 条指令定值的所有使用, 按指令顺序; 不是定值的指令返回空列表
+     */
+    public List<Use> uses(int definition) {
+        return Collections.unmodifiableList(definitionUses.get(definition));
+    }
+
+    private static final int[] NONE = new int[0];
+
+    private final ReachingDefinitions reaching;
+    private final int[][][] useDefinitions;
+    private final List<List<Use>> definitionUses;
+
+    private DefUseChains(ReachingDefinitions reaching) {
+        this.reaching = reaching;
+        final var cfg = reaching.getControlFlowGraph();
+        final var instructions = reaching.getInstructions();
+        final var variables = reaching.getVariables();
+
+        this.useDefinitions = new int[instructions.size()][][];
+        this.definitionUses = new ArrayList<>(instructions.size());
+        for (int i = 0; i < instructions.size(); i++) {
+            definitionUses.add(new ArrayList<>());
+        }
+
+        // 以变量下标为下标, 本块中最近一次定值; 用块号作为标记, 以免每块都清空数组
+        final var latest = new int[variables.size()];
+        final var stamp = new int[variables.size()];
+        Arrays.fill(stamp, -1);
+        for (int block = 0; block < cfg.size(); block++) {
+            final var start = reaching.blockStart(block);
+            final var reachingIn = reaching.reachingIn(block);
+            final var code = cfg.block(block);
+            for (int i = 0; i < code.size(); i++) {
+                final var index = start + i;
+                final var instruction = code.get(i);
+                final var operands = instruction.getOperands();
+                useDefinitions[index] = new int[operands.size()][];
+                for (int j = 0; j < operands.size(); j++) {
+                    if (!(operands.get(j) instanceof IRVariable variable)) {
+                        useDefinitions[index][j] = NONE;
+                        continue;
+                    }
+                    final var id = variables.indexOf(variable);
+                    final int[] found;
+                    if (stamp[id] == block) {
+                        found = new int[]{latest[id]};
+                    } else {
+                        found = Arrays.stream(reaching.definitionsOf(variable))
+                            .filter(definition -> Bits.get(reachingIn, definition)).toArray();
+                    }
+                    useDefinitions[index][j] = found.length == 0 ? NONE : found;
+                    for (final var definition : found) {
+                        definitionUses.get(definition).add(new Use(index, j));
+                    }
+                }
+
+                if (!instruction.getKind().isReturn()) {
+                    final var id = variables.indexOf(instruction.getResult());
+                    latest[id] = index;
+                    stamp[id] = block;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package cn.edu.hitsz.compiler.ir.dataflow;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.cfg.ControlFlowGraph;
+import cn.edu.hitsz.compiler.utils.Bits;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 活跃变量分析
+ * <br>
+ * 后向, 交汇为并集: 块的 gen 是在块内被赋值之前就被读取的变量, kill 是块内被赋值的变量, 程序出口处没有活跃变量.
+ * <br>
+ * 除了各块入口与出口的活跃集合, 还在块内做一遍后向扫描, 记下每条指令之后不再活跃的变量 (见 {@link #diesAt(int)}).
+ * 顺序处理指令的使用者 (如寄存器分配) 据此在每条指令之后更新当前的活跃集合, 无需再向后搜索剩余的指令.
+ */
+public final class Liveness {
+    public static Liveness of(List<Instruction> instructions) {
+        return new Liveness(ControlFlowGraph.of(instructions));
+    }
+
+    public static Liveness of(ControlFlowGraph cfg) {
+        return new Liveness(cfg);
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
+    public VariableIndex getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return 在第 block 块入口处活跃的变量, 以 {@link #getVariables()} 中的下标表示; 不应修改
+     */
+    public long[] liveIn(int block) {
+        return result.in(block);
+    }
+
+    /**
+     * @return 在第 block 块出口处活跃的变量, 以 {@link #getVariables()} 中的下标表示; 不应修改
+     */
+    public long[] liveOut(int block) {
+        return result.out(block);
+    }
+
+    public boolean isLiveIn(int block, IRVariable variable) {
+        final var index = variables.indexOf(variable);
+        return index >= 0 && Bits.get(liveIn(block), index);
+    }
+
+    public boolean isLiveOut(int block, IRVariable variable) {
+        final var index = variables.indexOf(variable);
+        return index >= 0 && Bits.get(liveOut(block), index);
+    }
+
+    /**
+     * 在第 instruction 条指令 (按块号顺序拼接所有块之后的下标) 处结束生命期的变量:
+     * 它被该指令读取或赋值, 但在该指令之后不再活跃. 赋值之后从未被读取的结果也在其中.
+     *
+     * @return 变量下标, 不重复; 不应修改
+     */
+    public int[] diesAt(int instruction) {
+        return deaths[instruction];
+    }
+
+    /**
+     * @return 求解不动点时处理块的次数
+     */
+    public int iterations() {
+        return result.iterations();
+    }
+
+    private final ControlFlowGraph cfg;
+    private final VariableIndex variables;
+    private final DataflowResult result;
+    private final int[][] deaths;
+
+    private Liveness(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        final var instructions = cfg.toInstructions();
+        this.variables = VariableIndex.of(instructions);
+        final var universe = variables.size();
+
+        final var gen = new long[cfg.size()][];
+        final var kill = new long[cfg.size()][];
+        for (int block = 0; block < cfg.size(); block++) {
+            gen[block] = Bits.create(universe);
+            kill[block] = Bits.create(universe);
+            for (final var instruction : cfg.block(block)) {
+                for (final var operand : instruction.getOperands()) {
+                    if (operand instanceof IRVariable variable && !Bits.get(kill[block], variables.indexOf(variable))) {
+                        Bits.set(gen[block], variables.indexOf(variable));
+                    }
+                }
+                if (!instruction.getKind().isReturn()) {
+                    Bits.set(kill[block], variables.indexOf(instruction.getResult()));
+                }
+            }
+        }
+        this.result = DataflowSolver.solve(cfg, DataflowSolver.Direction.BACKWARD, DataflowSolver.Meet.UNION,
+            universe, gen, kill, Bits.create(universe));
+
+        this.deaths = new int[instructions.size()][];
+        var offset = 0;
+        for (int block = 0; block < cfg.size(); block++) {
+            final var code = cfg.block(block);
+            final var live = liveOut(block).clone();
+            for (int i = code.size() - 1; i >= 0; i--) {
+                final var instruction = code.get(i);
+                // 被读取或赋值, 但不在该指令之后活跃的变量. 对于 x = x + 1, 旧值虽然死亡, 但 x 仍然活跃, 不算在内
+                final var dying = new ArrayList<Integer>(3);
+                final var defined = instruction.getKind().isReturn() ? -1 : variables.indexOf(instruction.getResult());
+                if (defined >= 0 && !Bits.get(live, defined)) {
+                    dying.add(defined);
+                }
+                for (final var operand : instruction.getOperands()) {
+                    if (operand instanceof IRVariable variable) {
+                        final var index = variables.indexOf(variable);
+                        if (!Bits.get(live, index) && !dying.contains(index)) {
+                            dying.add(index);
+                        }
+                    }
+                }
+
+                if (defined >= 0) {
+                    Bits.clear(live, defined);
+                }
+                for (final var operand : instruction.getOperands()) {
+                    if (operand instanceof IRVariable variable) {
+                        Bits.set(live, variables.indexOf(variable));
+                    }
+                }
+                deaths[offset + i] = dying.stream().mapToInt(Integer::intValue).toArray();
+            }
+            offset += code.size();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package cn.edu.hitsz.compiler.ir.dataflow;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.cfg.ControlFlowGraph;
+import cn.edu.hitsz.compiler.utils.Bits;
+
+import java.util.List;
+
+/**
+ * 到达定值分析
+ * <br>
+ * 每条有结果的指令是一个定值, 以它按块号顺序拼接所有块之后的下标表示. 前向, 交汇为并集:
+ * 块的 gen 是块内每个变量的最后一次定值, kill 是块内被赋值的变量在整个程序中的所有定值, 程序入口处没有定值到达.
+ * 读取时没有定值到达的变量是程序的输入.
+ */
+public final class ReachingDefinitions {
+    public static ReachingDefinitions of(List<Instruction> instructions) {
+        return new ReachingDefinitions(ControlFlowGraph.of(instructions));
+    }
+
+    public static ReachingDefinitions of(ControlFlowGraph cfg) {
+        return new ReachingDefinitions(cfg);
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
+    public VariableIndex getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return 按块号顺序拼接所有块之后的指令, 定值的下标即是其中的下标
+     */
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return 到达第 block 块入口的定值; 不应修改
+     */
+    public long[] reachingIn(int block) {
+        return result.in(block);
+    }
+
+    /**
+     * @return 到达第 block 块出口的定值; 不应修改
+     */
+    public long[] reachingOut(int block) {
+        return result.out(block);
+    }
+
+    /**
+     * @return 变量在整个程序中的所有定值, 从小到大; 不应修改
+     */
+    public int[] definitionsOf(IRVariable variable) {
+        final var index = variables.indexOf(variable);
+        return index < 0 ? new int[0] : definitions[index];
+    }
+
+    /**
+     * @return 第 block 块第一条指令的下标
+     */
+    public int blockStart(int block) {
+        return blockStarts[block];
+    }
+
+    private final ControlFlowGraph cfg;
+    private final VariableIndex variables;
+    private final List<Instruction> instructions;
+    private final int[] blockStarts;
+    // 以变量下标为下标, 该变量的所有定值. 每个变量的定值通常很少, 不用位集合存储
+    private final int[][] definitions;
+    private final DataflowResult result;
+
+    private ReachingDefinitions(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        this.instructions = cfg.toInstructions();
+        this.variables = VariableIndex.of(instructions);
+        final var universe = instructions.size();
+
+        this.blockStarts = new int[cfg.size()];
+        for (int block = 1; block < cfg.size(); block++) {
+            blockStarts[block] = blockStarts[block - 1] + cfg.block(block - 1).size();
+        }
+
+        final var counts = new int[variables.size()];
+        for (final var instruction : instructions) {
+            if (!instruction.getKind().isReturn()) {
+                counts[variables.indexOf(instruction.getResult())]++;
+            }
+        }
+        this.definitions = new int[variables.size()][];
+        for (int i = 0; i < variables.size(); i++) {
+            definitions[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < instructions.size(); i++) {
+            final var instruction = instructions.get(i);
+            if (!instruction.getKind().isReturn()) {
+                final var variable = variables.indexOf(instruction.getResult());
+                definitions[variable][counts[variable]++] = i;
+            }
+        }
+
+        final var gen = new long[cfg.size()][];
+        final var kill = new long[cfg.size()][];
+        for (int block = 0; block < cfg.size(); block++) {
+            gen[block] = Bits.create(universe);
+            kill[block] = Bits.create(universe);
+            // 块内每个变量的最后一次定值
+            final var defined = Bits.create(variables.size());
+            final var code = cfg.block(block);
+            for (int i = code.size() - 1; i >= 0; i--) {
+                final var instruction = code.get(i);
+                if (instruction.getKind().isReturn()) {
+                    continue;
+                }
+                final var variable = variables.indexOf(instruction.getResult());
+                if (!Bits.get(defined, variable)) {
+                    Bits.set(defined, variable);
+                    Bits.set(gen[block], blockStarts[block] + i);
+                    for (final var definition : definitions[variable]) {
+                        Bits.set(kill[block], definition);
+                    }
+                }
+            }
+        }
+        this.result = DataflowSolver.solve(cfg, DataflowSolver.Direction.FORWARD, DataflowSolver.Meet.UNION,
+            universe, gen, kill, Bits.create(universe));
+    }
+}
@@ -0,0 +1,62 @@
+package cn.edu.hitsz.compiler.ir.dataflow;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 为一段 IR 中出现的变量分配从 0 开始的稠密下标, 作为位集合中的索引
+ * <br>
+ * 不直接使用 {@link IRVariable#getId()}: 经过若干 pass 之后, 工厂创建过的许多变量已经不再出现, 按工厂的 id 建立的位集合会很稀疏.
+ * 下标按变量在 IR 中首次出现的顺序分配, 因此是确定的.
+ */
+public final class VariableIndex {
+    public static VariableIndex of(List<Instruction> instructions) {
+        final var index = new VariableIndex();
+        for (final var instruction : instructions) {
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    index.add(variable);
+                }
+            }
+            if (!instruction.getKind().isReturn()) {
+                index.add(instruction.getResult());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return 变量个数, 所有下标都小于它
+     */
+    public int size() {
+        return variables.size();
+    }
+
+    /**
+     * @return 变量的下标; 不在 IR 中出现的变量返回 -1
+     */
+    public int indexOf(IRVariable variable) {
+        return indices.getOrDefault(variable, -1);
+    }
+
+    public IRVariable variable(int index) {
+        return variables.get(index);
+    }
+
+    private final List<IRVariable> variables = new ArrayList<>();
+    private final Map<IRVariable, Integer> indices = new HashMap<>();
+
+    private VariableIndex() {
+    }
+
+    private void add(IRVariable variable) {
+        if (indices.putIfAbsent(variable, variables.size()) == null) {
+            variables.add(variable);
+        }
+    }
+}
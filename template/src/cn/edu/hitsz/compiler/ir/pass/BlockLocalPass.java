@@ -0,0 +1,66 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 只需观察单个基本块 (一段没有控制转移的直线代码) 的 pass
+ * <br>
+ * 这类 pass 对各个块的变换互不影响, 所以各块可以并行处理, 最后按原顺序拼接. 我们的 IR 中唯一的控制转移是 RET,
+ * 因此每个块都以 RET 结尾 (最后一块可能没有). 目前的源语言只能写出一个块, 但在 RET 之后仍有代码的程序中会有多个块.
+ * <br>
+ * 需要创建临时变量的 pass 应覆盖 {@link #createsTemps()}: 此时各块按顺序处理, 以保证临时变量的编号是确定的.
+ */
+public abstract class BlockLocalPass implements IRPass {
+    /**
+     * @param block   一个基本块
+     * @param context 本次编译的 pass 上下文
+     * @return 变换后的基本块
+     */
+    protected abstract List<Instruction> runOnBlock(List<Instruction> block, PassContext context);
+
+    /**
+     * @return 该 pass 是否会通过 {@link PassContext#getValueFactory()} 创建新的临时变量
+     */
+    protected boolean createsTemps() {
+        return false;
+    }
+
+    @Override
+    public final List<Instruction> run(List<Instruction> instructions, PassContext context) {
+        final var blocks = splitBlocks(instructions);
+        if (blocks.size() == 1) {
+            return runOnBlock(blocks.get(0), context);
+        }
+
+        final var stream = createsTemps() ? blocks.stream() : blocks.parallelStream();
+        final var results = stream.map(block -> runOnBlock(block, context)).toList();
+
+        final var result = new ArrayList<Instruction>(instructions.size());
+        results.forEach(result::addAll);
+        return result;
+    }
+
+    /**
+     * 将 IR 切分为基本块, 每个块以 RET 结尾 (最后一块可能没有)
+     *
+     * @param instructions IR
+     * @return 按原顺序排列的基本块, 至少有一个 (可能为空)
+     */
+    public static List<List<Instruction>> splitBlocks(List<Instruction> instructions) {
+        final var blocks = new ArrayList<List<Instruction>>();
+        var begin = 0;
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i).getKind().isReturn()) {
+                blocks.add(instructions.subList(begin, i + 1));
+                begin = i + 1;
+            }
+        }
+        if (begin < instructions.size() || blocks.isEmpty()) {
+            blocks.add(instructions.subList(begin, instructions.size()));
+        }
+        return blocks;
+    }
+}
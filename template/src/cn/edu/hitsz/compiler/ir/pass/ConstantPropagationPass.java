@@ -0,0 +1,144 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 常量传播, 常量折叠与代数化简
+ * <br>
+ * 在每个基本块中从前往后扫描, 记录当前值已知为常量的变量:
+ * <ul>
+ *     <li>操作数中值已知的变量替换为立即数</li>
+ *     <li>两个操作数都是立即数的运算直接算出结果, 替换为 MOV</li>
+ *     <li>化简 {@code x*0}, {@code x*1}, {@code x+0}, {@code x-0}, {@code x-x} (以及交换后的形式), 移位 0 位与 {@code x/1} 为 MOV</li>
+ * </ul>
+ * 变量被重新赋值为非常量时即从记录中移除. 最后再从后往前删除那些被赋值为常量, 但之后再也没有被读取的 MOV:
+ * 它们的所有使用都已被替换为立即数. 因此完全由常量构成的程序最终只剩下一条返回立即数的 RET.
+ */
+public class ConstantPropagationPass extends BlockLocalPass {
+    @Override
+    public String name() {
+        return "const-prop";
+    }
+
+    @Override
+    protected List<Instruction> runOnBlock(List<Instruction> block, PassContext context) {
+        final Map<IRVariable, Integer> constants = new HashMap<>();
+        final var propagated = new ArrayList<Instruction>(block.size());
+        var folded = 0;
+        var simplified = 0;
+
+        for (final var instruction : block) {
+            final var kind = instruction.getKind();
+            if (kind.isReturn()) {
+                propagated.add(Instruction.createRet(substitute(instruction.getReturnValue(), constants)));
+                continue;
+            }
+
+            final var result = instruction.getResult();
+            final Instruction rewritten;
+            if (kind.isUnary()) {
+                rewritten = Instruction.createMov(result, substitute(instruction.getFrom(), constants));
+            } else {
+                final var lhs = substitute(instruction.getLHS(), constants);
+                final var rhs = substitute(instruction.getRHS(), constants);
+                if (lhs instanceof IRImmediate l && rhs instanceof IRImmediate r) {
+                    rewritten = Instruction.createMov(result, IRImmediate.of(kind.apply(l.getValue(), r.getValue())));
+                    folded++;
+                } else {
+                    final var from = simplify(kind, lhs, rhs);
+                    if (from != null) {
+                        rewritten = Instruction.createMov(result, from);
+                        simplified++;
+                    } else {
+                        rewritten = Instruction.createBinary(kind, result, lhs, rhs);
+                    }
+                }
+            }
+
+            if (rewritten.getKind().isUnary() && rewritten.getFrom() instanceof IRImmediate immediate) {
+                constants.put(result, immediate.getValue());
+            } else {
+                constants.remove(result);
+            }
+            propagated.add(rewritten);
+        }
+
+        final var result = removeDeadConstants(propagated);
+        if (folded + simplified > 0 || result.size() < block.size()) {
+            context.note("folded %d, simplified %d, removed %d constant moves".formatted(
+                folded, simplified, propagated.size() - result.size()));
+        }
+        return result;
+    }
+
+    private static IRValue substitute(IRValue value, Map<IRVariable, Integer> constants) {
+        if (value instanceof IRVariable variable) {
+            final var constant = constants.get(variable);
+            if (constant != null) {
+                return IRImmediate.of(constant);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return 若该运算可以化简为 MOV, 返回 MOV 的源操作数; 否则返回 null
+     */
+    private static IRValue simplify(InstructionKind kind, IRValue lhs, IRValue rhs) {
+        return switch (kind) {
+            case ADD -> isConstant(lhs, 0) ? rhs : isConstant(rhs, 0) ? lhs : null;
+            case SUB -> isConstant(rhs, 0) ? lhs
+                : lhs instanceof IRVariable && lhs.equals(rhs) ? IRImmediate.of(0) : null;
+            case MUL -> isConstant(lhs, 0) || isConstant(rhs, 0) ? IRImmediate.of(0)
+                : isConstant(lhs, 1) ? rhs : isConstant(rhs, 1) ? lhs : null;
+            case DIV -> isConstant(rhs, 1) ? lhs : null;
+            case MULH -> isConstant(lhs, 0) || isConstant(rhs, 0) ? IRImmediate.of(0) : null;
+            case SLL, SRL, SRA -> isConstant(rhs, 0) ? lhs : isConstant(lhs, 0) ? IRImmediate.of(0) : null;
+            default -> null;
+        };
+    }
+
+    private static boolean isConstant(IRValue value, int constant) {
+        return value instanceof IRImmediate immediate && immediate.getValue() == constant;
+    }
+
+    /**
+     * 从后往前删除赋值为常量且之后不再被读取的 MOV
+     */
+    private static List<Instruction> removeDeadConstants(List<Instruction> instructions) {
+        final Set<IRVariable> read = new HashSet<>();
+        final var kept = new ArrayList<Instruction>(instructions.size());
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            final var instruction = instructions.get(i);
+            if (instruction.getKind().isUnary() && instruction.getFrom().isImmediate()
+                && !read.contains(instruction.getResult())) {
+                continue;
+            }
+
+            if (!instruction.getKind().isReturn()) {
+                read.remove(instruction.getResult());
+            }
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    read.add(variable);
+                }
+            }
+            kept.add(instruction);
+        }
+
+        Collections.reverse(kept);
+        return kept;
+    }
+}
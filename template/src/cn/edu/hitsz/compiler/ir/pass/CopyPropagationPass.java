@@ -0,0 +1,195 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 复写传播与 MOV 链消除
+ * <br>
+ * 在每个基本块中依次进行三步:
+ * <ol>
+ *     <li>改写目标: 对于 {@code $t = ...; ...; MOV x, $t}, 若 $t 只在这条 MOV 中被使用,
+ *     且 x 在两条指令之间既没有被读取也没有被赋值, 就让定义 $t 的指令直接写入 x, 并删除这条 MOV.
+ *     每条赋值语句 {@code id = E} 产生的 MOV 大多由此消除</li>
+ *     <li>复写传播: 在 {@code MOV x, y} 之后, 只要 x 与 y 都没有被重新赋值, 就把对 x 的读取替换为对 y 的读取</li>
+ *     <li>删除之后不再被读取的 MOV, 以及 {@code MOV x, x}</li>
+ * </ol>
+ */
+public class CopyPropagationPass extends BlockLocalPass {
+    @Override
+    public String name() {
+        return "copy-prop";
+    }
+
+    @Override
+    protected List<Instruction> runOnBlock(List<Instruction> block, PassContext context) {
+        final var code = block.toArray(new Instruction[0]);
+        final var retargeted = retarget(code);
+        final var propagated = propagate(code);
+        final var result = removeDeadMoves(code);
+
+        if (retargeted + propagated > 0 || result.size() < block.size()) {
+            context.note("retargeted %d definitions, propagated %d uses, removed %d moves".formatted(
+                retargeted, propagated, block.size() - result.size()));
+        }
+        return result;
+    }
+
+    /**
+     * 第一步: 让临时变量的定义直接写入 MOV 的目标, 被消除的 MOV 置为 null
+     *
+     * @return 改写的定义条数
+     */
+    private static int retarget(Instruction[] code) {
+        final Map<IRVariable, Integer> uses = new HashMap<>();
+        for (final var instruction : code) {
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable && variable.isTemp()) {
+                    uses.merge(variable, 1, Integer::sum);
+                }
+            }
+        }
+
+        // 每个临时变量的定义位置, 以及每个变量最近一次被读取或赋值的位置
+        final Map<IRVariable, Integer> definitions = new HashMap<>();
+        final Map<IRVariable, Integer> lastAccess = new HashMap<>();
+        var count = 0;
+        for (int i = 0; i < code.length; i++) {
+            final var instruction = code[i];
+            final var kind = instruction.getKind();
+
+            if (kind.isUnary() && instruction.getFrom() instanceof IRVariable temp && temp.isTemp()
+                && uses.get(temp) == 1 && definitions.containsKey(temp)) {
+                final var target = instruction.getResult();
+                final var definition = definitions.get(temp);
+                if (lastAccess.getOrDefault(target, -1) <= definition) {
+                    code[definition] = withResult(code[definition], target);
+                    code[i] = null;
+                    lastAccess.put(target, i);
+                    count++;
+                    continue;
+                }
+            }
+
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    lastAccess.put(variable, i);
+                }
+            }
+            if (!kind.isReturn()) {
+                lastAccess.put(instruction.getResult(), i);
+                if (instruction.getResult().isTemp()) {
+                    definitions.put(instruction.getResult(), i);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 第二步: 把对复写目标的读取替换为对其来源的读取
+     *
+     * @return 被替换的操作数个数
+     */
+    private static int propagate(Instruction[] code) {
+        // 当前有效的复写 x -> y, 以及每个 y 被哪些 x 复写, 用于在 y 被重新赋值时使对应的复写失效
+        final Map<IRVariable, IRVariable> copies = new HashMap<>();
+        final Map<IRVariable, Set<IRVariable>> copiedTo = new HashMap<>();
+        var count = 0;
+
+        for (int i = 0; i < code.length; i++) {
+            final var instruction = code[i];
+            if (instruction == null) {
+                continue;
+            }
+
+            final var operands = new ArrayList<>(instruction.getOperands());
+            var changed = false;
+            for (int j = 0; j < operands.size(); j++) {
+                final var source = copies.get(operands.get(j));
+                if (source != null) {
+                    operands.set(j, source);
+                    changed = true;
+                    count++;
+                }
+            }
+            final var rewritten = changed ? withOperands(instruction, operands) : instruction;
+            code[i] = rewritten;
+
+            if (rewritten.getKind().isReturn()) {
+                continue;
+            }
+            final var result = rewritten.getResult();
+            final var oldSource = copies.remove(result);
+            if (oldSource != null) {
+                copiedTo.get(oldSource).remove(result);
+            }
+            for (final var target : copiedTo.getOrDefault(result, Collections.emptySet())) {
+                copies.remove(target);
+            }
+            copiedTo.remove(result);
+
+            if (rewritten.getKind().isUnary() && rewritten.getFrom() instanceof IRVariable source && !source.equals(result)) {
+                copies.put(result, source);
+                copiedTo.computeIfAbsent(source, ignored -> new HashSet<>()).add(result);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 第三步: 从后往前删除之后不再被读取的 MOV
+     */
+    private static List<Instruction> removeDeadMoves(Instruction[] code) {
+        final Set<IRVariable> read = new HashSet<>();
+        final var kept = new ArrayList<Instruction>(code.length);
+        for (int i = code.length - 1; i >= 0; i--) {
+            final var instruction = code[i];
+            if (instruction == null) {
+                continue;
+            }
+            if (instruction.getKind().isUnary()
+                && (!read.contains(instruction.getResult()) || instruction.getFrom().equals(instruction.getResult()))) {
+                continue;
+            }
+
+            if (!instruction.getKind().isReturn()) {
+                read.remove(instruction.getResult());
+            }
+            for (final var operand : instruction.getOperands()) {
+                if (operand instanceof IRVariable variable) {
+                    read.add(variable);
+                }
+            }
+            kept.add(instruction);
+        }
+
+        Collections.reverse(kept);
+        return kept;
+    }
+
+    private static Instruction withResult(Instruction instruction, IRVariable result) {
+        final var kind = instruction.getKind();
+        if (kind.isUnary()) {
+            return Instruction.createMov(result, instruction.getFrom());
+        }
+        return Instruction.createBinary(kind, result, instruction.getLHS(), instruction.getRHS());
+    }
+
+    private static Instruction withOperands(Instruction instruction, List<IRValue> operands) {
+        return switch (instruction.getKind()) {
+            case MOV -> Instruction.createMov(instruction.getResult(), operands.get(0));
+            case RET -> Instruction.createRet(operands.get(0));
+            default -> Instruction.createBinary(instruction.getKind(), instruction.getResult(), operands.get(0), operands.get(1));
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.dataflow.DefUseChains;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于定值-使用链的死代码删除
+ * <br>
+ * 程序唯一可观察的结果是第一条 RET 返回的值, 因此:
+ * <ul>
+ *     <li>第一条 RET 之后的指令永远不会执行, 全部删除</li>
+ *     <li>从 RET 开始, 沿使用-定值链标记到达各个操作数的定值, 直到没有新的指令被标记:
+ *     未被标记的指令对返回值没有影响, 直接删除</li>
+ * </ul>
+ * 链取自 {@link PassContext#getAnalysis} 缓存的 {@link DefUseChains}.
+ * 没有 RET 的程序没有可观察的结果, 所有指令都会被删除.
+ */
+public class DeadCodeEliminationPass implements IRPass {
+    @Override
+    public String name() {
+        return "dce";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions, PassContext context) {
+        var end = instructions.size();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i).getKind().isReturn()) {
+                end = i + 1;
+                break;
+            }
+        }
+
+        // 链中的下标是按块号拼接各块之后的下标, 由指令列表切分出的图中它与 instructions 的下标相同
+        final var chains = context.getAnalysis(DefUseChains.class, instructions, DefUseChains::of);
+        final var useful = new boolean[end];
+        final var worklist = new ArrayDeque<Integer>();
+        if (end > 0 && instructions.get(end - 1).getKind().isReturn()) {
+            useful[end - 1] = true;
+            worklist.add(end - 1);
+        }
+        while (!worklist.isEmpty()) {
+            final int index = worklist.poll();
+            for (int j = 0; j < instructions.get(index).getOperands().size(); j++) {
+                for (final var definition : chains.definitions(index, j)) {
+                    if (!useful[definition]) {
+                        useful[definition] = true;
+                        worklist.add(definition);
+                    }
+                }
+            }
+        }
+
+        final var kept = new ArrayList<Instruction>(end);
+        var removedTemps = 0;
+        for (int i = 0; i < end; i++) {
+            if (useful[i]) {
+                kept.add(instructions.get(i));
+            } else if (instructions.get(i).getResult().isTemp()) {
+                removedTemps++;
+            }
+        }
+
+        final var unreachable = instructions.size() - end;
+        final var dead = end - kept.size();
+        if (unreachable + dead > 0) {
+            context.note("removed %d dead instructions (%d defining temps), %d after the first RET".formatted(
+                dead, removedTemps, unreachable));
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,148 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将除以常数的 DIV 改写为乘法取高位与移位
+ * <br>
+ * div 在目标处理器上需要数十个周期, 而除数已知时商可以用 "魔数" 乘法算出 (Hacker's Delight 第 10 章):
+ * <ul>
+ *     <li>{@code x / 0} 总是 -1, {@code x / 1} 就是 x, {@code x / -1} 为 {@code 0 - x} (MIN_VALUE 时回绕为自身)</li>
+ *     <li>除数的绝对值为 2^k 时, 先给负的被除数加上 2^k - 1 使结果向零取整, 再算术右移 k 位</li>
+ *     <li>其余除数取 {@code q = MULH(x, M)}, 按 M 与除数的符号修正后算术右移 s 位, 最后给负的商加 1</li>
+ * </ul>
+ * 所有结果都与 {@link InstructionKind#apply} 中 DIV 的语义逐位相同.
+ */
+public class DivisionByConstantPass extends BlockLocalPass {
+    @Override
+    public String name() {
+        return "div-const";
+    }
+
+    @Override
+    protected boolean createsTemps() {
+        return true;
+    }
+
+    /**
+     * 除数对应的魔数与移位位数
+     */
+    record Magic(int multiplier, int shift) {
+        /**
+         * @param divisor 除数, 绝对值至少为 2 且不是 2 的幂
+         */
+        static Magic of(int divisor) {
+            final var two31 = 0x80000000L;
+            final var ad = Math.abs((long) divisor);
+            // 被除数可取到的最大绝对值, 除数为负时多 1
+            final var t = two31 + (divisor < 0 ? 1 : 0);
+            final var anc = t - 1 - t % ad;
+
+            var p = 31;
+            var q1 = two31 / anc;
+            var r1 = two31 - q1 * anc;
+            var q2 = two31 / ad;
+            var r2 = two31 - q2 * ad;
+            long delta;
+            do {
+                p++;
+                q1 = (2 * q1) & 0xffffffffL;
+                r1 = 2 * r1;
+                if (r1 >= anc) {
+                    q1++;
+                    r1 -= anc;
+                }
+                q2 = (2 * q2) & 0xffffffffL;
+                r2 = 2 * r2;
+                if (r2 >= ad) {
+                    q2++;
+                    r2 -= ad;
+                }
+                delta = ad - r2;
+            } while (q1 < delta || (q1 == delta && r1 == 0));
+
+            final var multiplier = (int) (q2 + 1);
+            return new Magic(divisor < 0 ? -multiplier : multiplier, p - 32);
+        }
+    }
+
+    @Override
+    protected List<Instruction> runOnBlock(List<Instruction> block, PassContext context) {
+        final var result = new ArrayList<Instruction>(block.size());
+        var lowered = 0;
+
+        for (final var instruction : block) {
+            if (instruction.getKind() == InstructionKind.DIV
+                && instruction.getLHS() instanceof IRVariable dividend
+                && instruction.getRHS() instanceof IRImmediate divisor) {
+                lower(instruction.getResult(), dividend, divisor.getValue(), context.getValueFactory(), result);
+                lowered++;
+            } else {
+                result.add(instruction);
+            }
+        }
+
+        if (lowered > 0) {
+            context.note("lowered %d divisions by constants".formatted(lowered));
+        }
+        return result;
+    }
+
+    /**
+     * 生成计算 {@code target = x / d} 的指令. 只有最后一条指令写入 target, 因此 target 与 x 相同时也是正确的.
+     */
+    private static void lower(IRVariable target, IRVariable x, int d, IRValueFactory values, List<Instruction> output) {
+        if (d == 0 || d == 1) {
+            output.add(Instruction.createMov(target, d == 0 ? IRImmediate.of(-1) : x));
+            return;
+        }
+        if (d == -1) {
+            output.add(Instruction.createSub(target, IRImmediate.of(0), x));
+            return;
+        }
+
+        final var ad = Math.abs((long) d);
+        if ((ad & (ad - 1)) == 0) {
+            final var k = Long.numberOfTrailingZeros(ad);
+            // x 为负时 bias = 2^k - 1, 否则为 0
+            final var sign = emit(output, values, InstructionKind.SRA, x, IRImmediate.of(31));
+            final var bias = emit(output, values, InstructionKind.SRL, sign, IRImmediate.of(32 - k));
+            final var biased = emit(output, values, InstructionKind.ADD, x, bias);
+            if (d > 0) {
+                output.add(Instruction.createBinary(InstructionKind.SRA, target, biased, IRImmediate.of(k)));
+            } else {
+                final var quotient = emit(output, values, InstructionKind.SRA, biased, IRImmediate.of(k));
+                output.add(Instruction.createSub(target, IRImmediate.of(0), quotient));
+            }
+            return;
+        }
+
+        final var magic = Magic.of(d);
+        IRValue quotient = emit(output, values, InstructionKind.MULH, x, IRImmediate.of(magic.multiplier()));
+        if (d > 0 && magic.multiplier() < 0) {
+            quotient = emit(output, values, InstructionKind.ADD, quotient, x);
+        } else if (d < 0 && magic.multiplier() > 0) {
+            quotient = emit(output, values, InstructionKind.SUB, quotient, x);
+        }
+        if (magic.shift() > 0) {
+            quotient = emit(output, values, InstructionKind.SRA, quotient, IRImmediate.of(magic.shift()));
+        }
+        // 商为负时加 1, 使结果向零取整
+        final var correction = emit(output, values, InstructionKind.SRL, quotient, IRImmediate.of(31));
+        output.add(Instruction.createAdd(target, quotient, correction));
+    }
+
+    private static IRVariable emit(List<Instruction> output, IRValueFactory values, InstructionKind kind, IRValue lhs, IRValue rhs) {
+        final var temp = values.temp();
+        output.add(Instruction.createBinary(kind, temp, lhs, rhs));
+        return temp;
+    }
+}
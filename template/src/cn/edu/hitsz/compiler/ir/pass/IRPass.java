@@ -0,0 +1,27 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.List;
+
+/**
+ * 作用于 IR 的一趟变换 (pass)
+ * <br>
+ * 每个 pass 接受一段 IR, 返回变换后的 IR, 不应修改传入的列表. pass 由 {@link PassManager} 按顺序执行,
+ * 需要新的临时变量时应使用 {@link PassContext#getValueFactory()}, 以免与前端生成的临时变量重名.
+ *
+ * @see PassRegistry 所有可用的 pass
+ */
+public interface IRPass {
+    /**
+     * @return pass 的名字, 用于命令行选择与报告
+     */
+    String name();
+
+    /**
+     * @param instructions 输入的 IR
+     * @param context      本次编译的 pass 上下文
+     * @return 变换后的 IR
+     */
+    List<Instruction> run(List<Instruction> instructions, PassContext context);
+}
@@ -0,0 +1,79 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * IR 的合法性检查
+ * <br>
+ * 检查的内容:
+ * <ul>
+ *     <li>每条指令的结果与操作数个数与其种类相符, 且都不为 null (φ 函数至少有一个操作数)</li>
+ *     <li>临时变量恰好被赋值一次, 且在使用之前已被赋值</li>
+ * </ul>
+ * 具名变量可以被多次赋值; 在赋值之前就被读取的具名变量视为程序的输入, 所以不做检查.
+ */
+public final class IRVerifier {
+    /**
+     * @param instructions 待检查的 IR
+     * @param stage        产生该 IR 的阶段, 用于错误信息
+     * @throws RuntimeException IR 不合法
+     */
+    public static void verify(List<Instruction> instructions, String stage) {
+        final Set<IRVariable> definedTemps = new HashSet<>();
+        for (int i = 0; i < instructions.size(); i++) {
+            final var instruction = instructions.get(i);
+            if (instruction == null) {
+                fail(stage, i, null, "null instruction");
+            }
+
+            final var kind = instruction.getKind();
+            if (kind.isPhi()) {
+                // φ 函数的操作数个数取决于控制流图, 其操作数来自前驱的末尾, 可能在当前位置之后才被定义
+                if (instruction.getOperands().isEmpty()) {
+                    fail(stage, i, instruction, "expect at least 1 operand");
+                }
+            } else {
+                final var expected = kind.isBinary() ? 2 : 1;
+                if (instruction.getOperands().size() != expected) {
+                    fail(stage, i, instruction, "expect %d operands".formatted(expected));
+                }
+
+                for (final var operand : instruction.getOperands()) {
+                    checkUse(stage, i, instruction, operand, definedTemps);
+                }
+            }
+
+            if (!kind.isReturn()) {
+                final var result = instruction.getResult();
+                if (result == null) {
+                    fail(stage, i, instruction, "missing result");
+                }
+                if (result.isTemp() && !definedTemps.add(result)) {
+                    fail(stage, i, instruction, "temp %s assigned more than once".formatted(result));
+                }
+            }
+        }
+    }
+
+    private static void checkUse(String stage, int index, Instruction instruction, IRValue operand, Set<IRVariable> definedTemps) {
+        if (operand == null) {
+            fail(stage, index, instruction, "null operand");
+        }
+        if (operand instanceof IRVariable variable && variable.isTemp() && !definedTemps.contains(variable)) {
+            fail(stage, index, instruction, "temp %s used before assignment".formatted(variable));
+        }
+    }
+
+    private static void fail(String stage, int index, Instruction instruction, String message) {
+        throw new RuntimeException("Invalid IR after %s at #%d %s: %s".formatted(stage, index, instruction, message));
+    }
+
+    private IRVerifier() {
+    }
+}
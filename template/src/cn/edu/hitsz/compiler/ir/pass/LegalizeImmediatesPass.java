@@ -0,0 +1,107 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 将 IR 中立即数的用法调整为 RISC-V 能直接表示的形式
+ * <br>
+ * RISC-V 带立即数的算术指令只有 addi 与移位的 slli, srli, srai, 且立即数只能作右操作数:
+ * addi 的立即数是 12 位有符号数 [-2048, 2047], 移位量只能是 [0, 31]. 因此:
+ * <ul>
+ *     <li>两个操作数都是立即数的指令直接算出结果, 替换为 MOV</li>
+ *     <li>立即数在左的加法交换两个操作数</li>
+ *     <li>立即数在右且在上述范围内的加法与移位保持不变</li>
+ *     <li>其余带立即数的指令先用 MOV 把立即数存入新的临时变量 (后端用 li 加载任意 32 位立即数)</li>
+ * </ul>
+ * 这原本是 {@code AssemblyGenerator#loadIR} 中的一部分, 后端加载 IR 时仍会调用 {@link #legalize}, 所以该 pass 可以不在流水线中.
+ */
+public class LegalizeImmediatesPass extends BlockLocalPass {
+    @Override
+    public String name() {
+        return "legalize";
+    }
+
+    @Override
+    protected boolean createsTemps() {
+        return true;
+    }
+
+    @Override
+    protected List<Instruction> runOnBlock(List<Instruction> block, PassContext context) {
+        final var result = new ArrayList<Instruction>(block.size());
+        for (final var instruction : block) {
+            final var kind = instruction.getKind();
+            if (kind.isBinary()) {
+                legalize(kind, instruction.getResult(), instruction.getLHS(), instruction.getRHS(),
+                    context.getValueFactory(), result);
+            } else {
+                result.add(instruction);
+            }
+        }
+        return result;
+    }
+
+    // addi 的 12 位有符号立即数的范围
+    private static final int MIN_ADD_IMMEDIATE = -2048;
+    private static final int MAX_ADD_IMMEDIATE = 2047;
+
+    /**
+     * @param kind  二元指令的种类
+     * @param value 右操作数的立即数
+     * @return 该指令能否直接带着这个立即数生成汇编 (addi, slli, srli, srai)
+     */
+    private static boolean isEncodable(InstructionKind kind, int value) {
+        if (kind == InstructionKind.ADD) {
+            return value >= MIN_ADD_IMMEDIATE && value <= MAX_ADD_IMMEDIATE;
+        }
+        return kind.isShift() && value >= 0 && value < Integer.SIZE;
+    }
+
+    /**
+     * 将一条二元指令调整为更接近 risc-v 汇编的形式后加入 output
+     *
+     * @param values 用于创建临时变量
+     * @param output 调整后的指令 (一条或两条) 加入其中
+     */
+    public static void legalize(InstructionKind instrKind, IRVariable result, IRValue lhs, IRValue rhs,
+                                IRValueFactory values, List<Instruction> output) {
+        // 情况一：如果两个操作数均为立即数，则将两个立即数直接进行BinaryOp操作求得结果，然后替换为MOV指令
+        if(lhs.isImmediate() && rhs.isImmediate()) {
+            int opResult = instrKind.apply(((IRImmediate)lhs).getValue(), ((IRImmediate)rhs).getValue());
+            output.add(Instruction.createMov(result, IRImmediate.of(opResult)));
+        // 情况二：如果左操作数为立即数，右操作数为变量，且运算类型不是加法，
+        // 则用MOV指令将立即数存入临时变量temp，转为无立即数指令
+        // 如果为加法且立即数在 addi 的范围内，则只需要将立即数移至右边即可
+        }else if(lhs.isImmediate() && rhs.isIRVariable()){
+            if(instrKind == InstructionKind.ADD && isEncodable(instrKind, ((IRImmediate) lhs).getValue())){
+                output.add(Instruction.createAdd(result, rhs, lhs));
+            }else{
+                IRVariable temp = values.temp();
+                output.add(Instruction.createMov(temp, lhs));
+                output.add(Instruction.createBinary(instrKind, result, temp, rhs));
+            }
+        // 情况三：如果左操作数为变量，右操作数为立即数，且立即数不能直接编码 (减法, 乘法, 除法, 或超出范围的加法与移位)，
+        // 则用MOV指令将立即数存入临时变量temp，转为无立即数指令
+        // 如果为范围内的加法或移位，不需要额外操作，直接加入instructions即可
+        }else if(lhs.isIRVariable() && rhs.isImmediate()){
+            if(isEncodable(instrKind, ((IRImmediate) rhs).getValue())){
+                output.add(Instruction.createBinary(instrKind, result, lhs, rhs));
+            }else{
+                IRVariable temp = values.temp();
+                output.add(Instruction.createMov(temp, rhs));
+                output.add(Instruction.createBinary(instrKind, result, lhs, temp));
+            }
+        // 情况四：如果两个操作数均为变量，直接加入instructions即可
+        }else{
+            output.add(Instruction.createBinary(instrKind, result, lhs, rhs));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 用移位与加减实现乘以常数的方案, 及其代价
+ * <br>
+ * 方案取自常数的规范有符号数字表示 (CSD, 又称 NAF): {@code c = Σ ±2^k}, 且任意两个相邻的位不同时非零.
+ * 在所有这种形式的表示中它的非零项最少, 因此 {@code x * c = Σ ±(x << k)} 所需的移位与加减也最少.
+ * 运算都按 32 位补码回绕, 结果与 MUL 逐位相同.
+ * <br>
+ * 代价按 RV32 上的周期数粗略估计: 移位与加减各为 1, mul 为 {@link #MUL_COST}, 另加将常数装入寄存器的 li.
+ * 绝对值不超过 {@link #TABLE_LIMIT} 的常数的方案预先算好存放在表中, 其余的按需计算.
+ *
+ * @param constant 乘数
+ * @param terms    按移位位数从小到大排列的各项
+ */
+record MultiplyPlan(int constant, List<Term> terms) {
+    /**
+     * 一项 {@code ±(x << shift)}
+     */
+    record Term(int shift, boolean negative) {
+    }
+
+    static final int MUL_COST = 4;
+    static final int ALU_COST = 1;
+
+    private static final int TABLE_LIMIT = 1024;
+    private static final MultiplyPlan[] TABLE = new MultiplyPlan[2 * TABLE_LIMIT + 1];
+
+    static {
+        for (int c = -TABLE_LIMIT; c <= TABLE_LIMIT; c++) {
+            TABLE[c + TABLE_LIMIT] = compute(c);
+        }
+    }
+
+    /**
+     * @param constant 乘数
+     * @return 乘以该常数的方案
+     */
+    static MultiplyPlan of(int constant) {
+        if (-TABLE_LIMIT <= constant && constant <= TABLE_LIMIT) {
+            return TABLE[constant + TABLE_LIMIT];
+        }
+        return compute(constant);
+    }
+
+    /**
+     * @return 按该方案计算的代价: 不移位的项不需要指令, 每增加一项需要一次加减;
+     * 没有正项时还需从 0 开始减, 要先把 0 装入寄存器. 乘数为 0 时没有任何项, 只需一条 li
+     */
+    int cost() {
+        if (terms.isEmpty()) {
+            return ALU_COST;
+        }
+        var cost = ALU_COST * (terms.size() - 1);
+        var hasPositive = false;
+        for (final var term : terms) {
+            if (term.shift() > 0) {
+                cost += ALU_COST;
+            }
+            hasPositive |= !term.negative();
+        }
+        return hasPositive ? cost : cost + 2 * ALU_COST;
+    }
+
+    /**
+     * @return 直接使用 mul 的代价
+     */
+    int multiplyCost() {
+        return MUL_COST + loadImmediateCost(constant);
+    }
+
+    /**
+     * @return 该方案是否比直接使用 mul 更便宜
+     */
+    boolean isProfitable() {
+        return cost() < multiplyCost();
+    }
+
+    /**
+     * @return li 展开后的指令条数: 12 位有符号数只需 addi, 低 12 位为 0 时只需 lui, 否则两条都要
+     */
+    private static int loadImmediateCost(int constant) {
+        return -2048 <= constant && constant < 2048 || (constant & 0xfff) == 0 ? ALU_COST : 2 * ALU_COST;
+    }
+
+    private static MultiplyPlan compute(int constant) {
+        final var terms = new ArrayList<Term>();
+        // 按模 2^32 计算, 用 long 避免 c 接近 2^31 时中间结果溢出
+        var rest = (long) constant;
+        for (int shift = 0; rest != 0; shift++, rest >>= 1) {
+            if ((rest & 1) != 0) {
+                // 低两位为 01 时取 +1, 为 11 时取 -1, 使下一位变为 0
+                final var digit = 2 - (rest & 3);
+                terms.add(new Term(shift, digit < 0));
+                rest -= digit;
+            }
+        }
+        return new MultiplyPlan(constant, List.copyOf(terms));
+    }
+}
@@ -0,0 +1,86 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.Instruction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 一次编译中所有 pass 共享的上下文
+ * <br>
+ * 提供本次编译的 {@link IRValueFactory}, 并收集各 pass 运行时留下的说明 (如删除了哪些指令), 由 {@link PassManager} 汇总到报告中.
+ * <br>
+ * 还缓存对当前 IR 的分析结果 (如 {@link cn.edu.hitsz.compiler.ir.dataflow.Liveness}, {@link cn.edu.hitsz.compiler.ir.dataflow.DefUseChains}), 见 {@link #getAnalysis(Class, List, Function)}.
+ */
+public class PassContext {
+    public PassContext(IRValueFactory values) {
+        this.values = values;
+    }
+
+    /**
+     * @return 本次编译的 IR 值工厂
+     */
+    public IRValueFactory getValueFactory() {
+        return values;
+    }
+
+    /**
+     * 为当前正在运行的 pass 记录一条说明. 可以在并行处理基本块时调用.
+     *
+     * @param message 说明
+     */
+    public synchronized void note(String message) {
+        notes.add(message);
+    }
+
+    /**
+     * @return 自上次调用以来记录的所有说明
+     */
+    synchronized List<String> takeNotes() {
+        final var result = List.copyOf(notes);
+        notes.clear();
+        return result;
+    }
+
+    /**
+     * 获取对 instructions 的某项分析的结果. 若缓存中已有对同一个 IR 列表的该项分析则直接返回, 否则计算并缓存.
+     * <br>
+     * 缓存以列表对象本身 (而非其内容) 为准: pass 返回新列表时 {@link PassManager} 会清空缓存, 没有修改 IR 的 pass 返回原列表, 分析结果得以保留.
+     *
+     * @param type         分析结果的类型, 作为缓存的键
+     * @param instructions 要分析的 IR, 调用者不应在之后修改它
+     * @param analysis     计算该项分析的函数, 如 {@code Liveness::of}
+     * @return 分析结果
+     */
+    public synchronized <T> T getAnalysis(Class<T> type, List<Instruction> instructions, Function<List<Instruction>, T> analysis) {
+        if (analyzed != instructions) {
+            analyses.clear();
+            analyzed = instructions;
+        }
+        final var cached = analyses.get(type);
+        if (cached != null) {
+            return type.cast(cached);
+        }
+        final var result = analysis.apply(instructions);
+        analyses.put(type, result);
+        return result;
+    }
+
+    /**
+     * 清空所有缓存的分析结果
+     */
+    synchronized void invalidateAnalyses() {
+        analyses.clear();
+        analyzed = null;
+    }
+
+    private final IRValueFactory values;
+    private final List<String> notes = new ArrayList<>();
+    // 缓存的分析结果, 都是对 analyzed 这个列表的分析
+    private final Map<Class<?>, Object> analyses = new HashMap<>();
+    private List<Instruction> analyzed = null;
+}
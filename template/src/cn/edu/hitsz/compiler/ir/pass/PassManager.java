@@ -0,0 +1,128 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.utils.FileUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按顺序执行一系列 pass
+ * <br>
+ * 每个 pass 运行时都会记录耗时以及运行前后的指令条数, 见 {@link #getReports()}.
+ * 默认在每个 pass 之后用 {@link IRVerifier} 检查 IR 是否仍然合法, 一旦出错即可定位到是哪个 pass 破坏了 IR.
+ * pass 返回了新的 IR 列表时, 清空 {@link PassContext} 中缓存的分析结果.
+ */
+public class PassManager {
+    public PassManager(IRValueFactory values) {
+        this.context = new PassContext(values);
+    }
+
+    /**
+     * 在流水线末尾加入一个 pass
+     *
+     * @param pass 要加入的 pass
+     * @return this
+     */
+    public PassManager add(IRPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    /**
+     * 按名字加入一系列 pass
+     *
+     * @param names pass 的名字, 见 {@link PassRegistry}
+     * @return this
+     */
+    public PassManager addAll(List<String> names) {
+        for (final var name : names) {
+            add(PassRegistry.create(name));
+        }
+        return this;
+    }
+
+    /**
+     * @param verify 是否在每个 pass 之后验证 IR
+     * @return this
+     */
+    public PassManager setVerify(boolean verify) {
+        this.verify = verify;
+        return this;
+    }
+
+    /**
+     * 依次执行所有 pass
+     *
+     * @param instructions 输入的 IR
+     * @return 所有 pass 执行完之后的 IR
+     * @throws RuntimeException 某个 pass 之后的 IR 未能通过验证
+     */
+    public List<Instruction> run(List<Instruction> instructions) {
+        if (verify) {
+            IRVerifier.verify(instructions, "input");
+        }
+
+        var current = instructions;
+        for (final var pass : passes) {
+            final var before = current.size();
+            final var begin = System.nanoTime();
+            final var input = current;
+            current = pass.run(current, context);
+            final var end = System.nanoTime();
+            if (current != input) {
+                context.invalidateAnalyses();
+            }
+
+            reports.add(new PassReport(pass.name(), before, current.size(), end - begin, context.takeNotes()));
+            if (verify) {
+                IRVerifier.verify(current, pass.name());
+            }
+        }
+        return current;
+    }
+
+    public PassContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return 各 pass 按执行顺序的运行记录
+     */
+    public List<PassReport> getReports() {
+        return Collections.unmodifiableList(reports);
+    }
+
+    /**
+     * 输出各 pass 的运行记录
+     *
+     * @param path 输出文件路径
+     */
+    public void dumpReports(String path) {
+        FileUtils.writeLines(path, formatReports());
+    }
+
+    /**
+     * @return 每个 pass 一行的运行记录, 其后缩进列出该 pass 留下的说明
+     */
+    public List<String> formatReports() {
+        final var lines = new ArrayList<String>();
+        var total = 0L;
+        for (final var report : reports) {
+            lines.add(report.toString());
+            for (final var note : report.notes()) {
+                lines.add("    " + note);
+            }
+            total += report.nanos();
+        }
+        lines.add("%-16s %30.3f ms".formatted("total", total / 1e6));
+        return lines;
+    }
+
+    private final List<IRPass> passes = new ArrayList<>();
+    private final List<PassReport> reports = new ArrayList<>();
+    private final PassContext context;
+    private boolean verify = true;
+}
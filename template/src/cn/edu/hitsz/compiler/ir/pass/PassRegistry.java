@@ -0,0 +1,84 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 所有可用的 pass, 按名字索引
+ * <br>
+ * 命令行中用逗号分隔的名字列表选择要运行的 pass, 见 {@link #parsePipeline(String)}.
+ */
+public final class PassRegistry {
+    private static final Map<String, Supplier<IRPass>> PASSES = new LinkedHashMap<>();
+
+    static {
+        register("const-prop", ConstantPropagationPass::new);
+        register("reassoc", ReassociationPass::new);
+        register("lvn", ValueNumberingPass::new);
+        register("copy-prop", CopyPropagationPass::new);
+        register("div-const", DivisionByConstantPass::new);
+        register("strength-reduce", StrengthReductionPass::new);
+        register("dce", DeadCodeEliminationPass::new);
+        register("legalize", LegalizeImmediatesPass::new);
+        register("ssa", SSAConstructionPass::new);
+        register("out-of-ssa", SSADestructionPass::new);
+    }
+
+    /**
+     * 未指定时运行的 pass 流水线
+     */
+    private static final List<String> DEFAULT_PIPELINE = List.of("const-prop", "reassoc", "lvn", "copy-prop", "div-const", "strength-reduce", "dce", "legalize");
+
+    /**
+     * @param name pass 的名字
+     * @return 该 pass 的新实例
+     * @throws RuntimeException 没有该名字的 pass
+     */
+    public static IRPass create(String name) {
+        final var supplier = PASSES.get(name);
+        if (supplier == null) {
+            throw new RuntimeException("Unknown pass: %s, available: %s".formatted(name, String.join(",", names())));
+        }
+        return supplier.get();
+    }
+
+    /**
+     * @return 所有 pass 的名字, 按注册顺序
+     */
+    public static Set<String> names() {
+        return PASSES.keySet();
+    }
+
+    public static List<String> defaultPipeline() {
+        return DEFAULT_PIPELINE;
+    }
+
+    /**
+     * @param spec 逗号分隔的 pass 名字; "default" 表示默认流水线, 空串表示不运行任何 pass
+     * @return pass 名字列表
+     */
+    public static List<String> parsePipeline(String spec) {
+        if (spec.isBlank()) {
+            return List.of();
+        }
+        if (spec.equals("default")) {
+            return DEFAULT_PIPELINE;
+        }
+
+        final var names = Arrays.stream(spec.split(",")).map(String::trim).toList();
+        // 提前检查名字, 以免运行到一半才报错
+        names.forEach(PassRegistry::create);
+        return names;
+    }
+
+    private static void register(String name, Supplier<IRPass> supplier) {
+        PASSES.put(name, supplier);
+    }
+
+    private PassRegistry() {
+    }
+}
@@ -0,0 +1,19 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import java.util.List;
+
+/**
+ * 一个 pass 运行一次的记录
+ *
+ * @param pass   pass 的名字
+ * @param before 运行前的指令条数
+ * @param after  运行后的指令条数
+ * @param nanos  运行耗时, 不含验证
+ * @param notes  pass 通过 {@link PassContext#note(String)} 留下的说明
+ */
+public record PassReport(String pass, int before, int after, long nanos, List<String> notes) {
+    @Override
+    public String toString() {
+        return "%-16s %8d -> %-8d %10.3f ms".formatted(pass, before, after, nanos / 1e6);
+    }
+}
@@ -0,0 +1,288 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 重结合: 降低长运算链的树高
+ * <br>
+ * 文法中 {@code E -> E + A} 与 {@code A -> A * B} 是左递归的, 因此 {@code a+b+c+d} 被翻译为一条严格串行的依赖链,
+ * 顺序发射的处理器每次只能执行其中一条加法. 该 pass 在每个基本块中找出由 ADD/SUB (或由 MUL) 组成的表达式树:
+ * 只被使用一次, 且使用者是同类运算的临时变量即为树的内部结点. 然后:
+ * <ul>
+ *     <li>把 SUB 视为加上相反数, 将整棵树展开为带符号的叶子列表 (乘法则直接是叶子列表)</li>
+ *     <li>所有立即数叶子合并为一个常数, 相同的正负叶子相互抵消. 合并后的常数可能超出 addi 的 12 位立即数,
+ *     这由 {@link LegalizeImmediatesPass} 改写为 li 加 add, 这里不做限制</li>
+ *     <li>正叶子与负叶子分别两两配对组成平衡树, 相减后再加上常数 (乘法则是乘上常数)</li>
+ * </ul>
+ * 于是 n 个叶子的关键路径从 n - 1 缩短到约 log n. 运算都按 32 位补码回绕, 结合律与交换律严格成立, 结果不变.
+ * 仅当树高或指令条数确实减少时才改写. 新的树在原来根结点的位置计算, 因此若叶子中的具名变量在此之前被重新赋值, 就不展开对应的子树.
+ */
+public class ReassociationPass extends BlockLocalPass {
+    @Override
+    public String name() {
+        return "reassoc";
+    }
+
+    @Override
+    protected boolean createsTemps() {
+        return true;
+    }
+
+    /**
+     * 表达式树的结点: 内部结点是一次运算, 叶子是一个 IR 值
+     */
+    private record Node(InstructionKind kind, Node lhs, Node rhs, IRValue leaf) {
+        static Node leaf(IRValue value) {
+            return new Node(null, null, null, value);
+        }
+
+        static Node of(InstructionKind kind, Node lhs, Node rhs) {
+            return new Node(kind, lhs, rhs, null);
+        }
+
+        boolean isLeaf() {
+            return leaf != null;
+        }
+
+        int depth() {
+            return isLeaf() ? 0 : 1 + Math.max(lhs.depth(), rhs.depth());
+        }
+
+        int size() {
+            return isLeaf() ? 0 : 1 + lhs.size() + rhs.size();
+        }
+    }
+
+    /**
+     * 展开一棵表达式树得到的叶子, 以及原来的形状
+     */
+    private static class Chain {
+        final List<IRValue> positives = new ArrayList<>();
+        final List<IRValue> negatives = new ArrayList<>();
+        // 被并入这棵树的内部结点 (不含根) 的下标
+        final List<Integer> absorbed = new ArrayList<>();
+        int constant;
+        int depth;
+
+        Chain(int identity) {
+            this.constant = identity;
+        }
+    }
+
+    @Override
+    protected List<Instruction> runOnBlock(List<Instruction> block, PassContext context) {
+        final var code = block.toArray(new Instruction[0]);
+        final Map<IRVariable, Integer> uses = new HashMap<>();
+        final Map<IRVariable, Integer> definitions = new HashMap<>();
+        for (int i = 0; i < code.length; i++) {
+            for (final var operand : code[i].getOperands()) {
+                if (operand instanceof IRVariable variable && variable.isTemp()) {
+                    uses.merge(variable, 1, Integer::sum);
+                }
+            }
+            if (!code[i].getKind().isReturn() && code[i].getResult().isTemp()) {
+                definitions.put(code[i].getResult(), i);
+            }
+        }
+
+        final var removed = new boolean[code.length];
+        final var replacements = new HashMap<Integer, List<Instruction>>();
+        var rewritten = 0;
+        var depthBefore = 0;
+        var depthAfter = 0;
+
+        // 从后往前处理, 这样总是先遇到树根; 没有被并入其他树的结点再作为新的树根
+        for (int root = code.length - 1; root >= 0; root--) {
+            final var kind = code[root].getKind();
+            if (removed[root] || !(isAdditive(kind) || kind == InstructionKind.MUL)) {
+                continue;
+            }
+
+            final var chain = new Chain(kind == InstructionKind.MUL ? 1 : 0);
+            chain.depth = flatten(code, root, root, false, chain, uses, definitions);
+            final var tree = kind == InstructionKind.MUL ? buildProduct(chain) : buildSum(chain);
+            final var oldSize = chain.absorbed.size() + 1;
+            final var newSize = Math.max(tree.size(), 1);
+            if (tree.depth() >= chain.depth && newSize >= oldSize) {
+                continue;
+            }
+
+            final var output = new ArrayList<Instruction>(newSize);
+            final var target = code[root].getResult();
+            final var value = emit(tree, target, context.getValueFactory(), output);
+            if (tree.isLeaf()) {
+                output.add(Instruction.createMov(target, value));
+            }
+            replacements.put(root, output);
+            chain.absorbed.forEach(index -> removed[index] = true);
+            rewritten++;
+            depthBefore = Math.max(depthBefore, chain.depth);
+            depthAfter = Math.max(depthAfter, tree.depth());
+        }
+
+        if (rewritten == 0) {
+            return block;
+        }
+        final var result = new ArrayList<Instruction>(code.length);
+        for (int i = 0; i < code.length; i++) {
+            if (replacements.containsKey(i)) {
+                result.addAll(replacements.get(i));
+            } else if (!removed[i]) {
+                result.add(code[i]);
+            }
+        }
+        context.note("reassociated %d expressions, longest chain depth %d -> %d".formatted(rewritten, depthBefore, depthAfter));
+        return result;
+    }
+
+    private static boolean isAdditive(InstructionKind kind) {
+        return kind == InstructionKind.ADD || kind == InstructionKind.SUB;
+    }
+
+    /**
+     * 将下标为 index 的结点展开到 chain 中
+     *
+     * @param negate 该结点的值是否要取相反数 (只用于加法树)
+     * @return 该结点在原来的树中的高度
+     */
+    private static int flatten(Instruction[] code, int index, int root, boolean negate, Chain chain,
+                               Map<IRVariable, Integer> uses, Map<IRVariable, Integer> definitions) {
+        final var instruction = code[index];
+        final var kind = instruction.getKind();
+        var depth = 0;
+        final var operands = instruction.getOperands();
+        for (int j = 0; j < operands.size(); j++) {
+            final var operand = operands.get(j);
+            final var negative = negate ^ (j == 1 && kind == InstructionKind.SUB);
+
+            if (operand instanceof IRImmediate immediate) {
+                if (kind == InstructionKind.MUL) {
+                    chain.constant *= immediate.getValue();
+                } else {
+                    chain.constant += negative ? -immediate.getValue() : immediate.getValue();
+                }
+                continue;
+            }
+
+            final var variable = (IRVariable) operand;
+            final var definition = definitions.get(variable);
+            if (definition != null && definition < index && uses.get(variable) == 1
+                && isSameClass(kind, code[definition].getKind()) && isStable(code, definition, root)) {
+                chain.absorbed.add(definition);
+                depth = Math.max(depth, flatten(code, definition, root, negative, chain, uses, definitions));
+            } else if (negative) {
+                chain.negatives.add(variable);
+            } else {
+                chain.positives.add(variable);
+            }
+        }
+        return depth + 1;
+    }
+
+    private static boolean isSameClass(InstructionKind kind, InstructionKind other) {
+        return kind == InstructionKind.MUL ? other == InstructionKind.MUL : isAdditive(other);
+    }
+
+    /**
+     * @return 下标为 definition 的指令所读取的具名变量在它与 root 之间是否都没有被重新赋值
+     */
+    private static boolean isStable(Instruction[] code, int definition, int root) {
+        for (final var operand : code[definition].getOperands()) {
+            if (operand instanceof IRVariable variable && !variable.isTemp()) {
+                for (int i = definition + 1; i < root; i++) {
+                    if (!code[i].getKind().isReturn() && code[i].getResult().equals(variable)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static Node buildSum(Chain chain) {
+        // 相同的正负叶子相互抵消
+        final var positives = new ArrayList<>(chain.positives);
+        final var negatives = new ArrayList<IRValue>();
+        for (final var negative : chain.negatives) {
+            if (!positives.remove(negative)) {
+                negatives.add(negative);
+            }
+        }
+
+        final var positive = balance(positives, InstructionKind.ADD);
+        final var negative = balance(negatives, InstructionKind.ADD);
+        var constant = chain.constant;
+        Node tree = positive;
+        if (negative != null) {
+            // 没有正叶子时从常数开始减
+            tree = Node.of(InstructionKind.SUB, positive == null ? Node.leaf(IRImmediate.of(constant)) : positive, negative);
+            if (positive == null) {
+                constant = 0;
+            }
+        }
+        if (constant != 0 || tree == null) {
+            tree = tree == null ? Node.leaf(IRImmediate.of(constant)) : Node.of(InstructionKind.ADD, tree, Node.leaf(IRImmediate.of(constant)));
+        }
+        return tree;
+    }
+
+    private static Node buildProduct(Chain chain) {
+        if (chain.constant == 0) {
+            return Node.leaf(IRImmediate.of(0));
+        }
+        final var product = balance(chain.positives, InstructionKind.MUL);
+        if (product == null) {
+            return Node.leaf(IRImmediate.of(chain.constant));
+        }
+        return chain.constant == 1 ? product : Node.of(InstructionKind.MUL, product, Node.leaf(IRImmediate.of(chain.constant)));
+    }
+
+    /**
+     * 相邻的值两两配对, 逐层合并为一棵平衡树
+     *
+     * @return 平衡树的根; 没有值时返回 null
+     */
+    private static Node balance(List<IRValue> values, InstructionKind kind) {
+        var current = new ArrayList<Node>(values.size());
+        for (final var value : values) {
+            current.add(Node.leaf(value));
+        }
+        while (current.size() > 1) {
+            final var next = new ArrayList<Node>((current.size() + 1) / 2);
+            for (int i = 0; i + 1 < current.size(); i += 2) {
+                next.add(Node.of(kind, current.get(i), current.get(i + 1)));
+            }
+            if (current.size() % 2 == 1) {
+                next.add(current.get(current.size() - 1));
+            }
+            current = next;
+        }
+        return current.isEmpty() ? null : current.get(0);
+    }
+
+    /**
+     * 按后序生成计算该树的指令, 根结点写入 target, 其余结点写入新的临时变量
+     *
+     * @return 该树的值; 树为叶子时即是叶子本身, 不生成指令
+     */
+    private static IRValue emit(Node node, IRVariable target, IRValueFactory values, List<Instruction> output) {
+        if (node.isLeaf()) {
+            return node.leaf();
+        }
+        final var lhs = emit(node.lhs(), null, values, output);
+        final var rhs = emit(node.rhs(), null, values, output);
+        final var result = target == null ? values.temp() : target;
+        output.add(Instruction.createBinary(node.kind(), result, lhs, rhs));
+        return result;
+    }
+}
@@ -0,0 +1,280 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.cfg.ControlFlowGraph;
+import cn.edu.hitsz.compiler.ir.cfg.DominatorTree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 将 IR 转换为 SSA 形式
+ * <br>
+ * 临时变量本来就只被赋值一次, 无需处理; 具名变量 x 的每次定义都得到一个新版本 {@code x.1}, {@code x.2}, ...,
+ * 之后对 x 的读取都改为读取当时有效的版本. 在第一次定义之前读取的 x 是程序的输入, 仍记作 x 本身 (版本 0).
+ * <br>
+ * 按 Cytron 等人的算法进行:
+ * <ol>
+ *     <li>在每个定义了 x 的块的迭代支配边界上插入 x 的 φ 函数 (最小 SSA, 不做活跃性剪枝)</li>
+ *     <li>沿支配树深度优先遍历, 用每个变量一个的版本栈完成重命名, 并填写后继块中 φ 函数对应于本块的操作数</li>
+ * </ol>
+ * 从入口不可达的块永远不会执行, 直接删除. 作为 pass 运行时, 由指令列表切分出的图中没有汇合点, 因此不会产生 φ 函数;
+ * 有汇合点的图可以直接用 {@link #construct(ControlFlowGraph, IRValueFactory)} 转换.
+ * 离开 SSA 形式见 {@link SSADestructionPass}.
+ */
+public class SSAConstructionPass implements IRPass {
+    /**
+     * 版本号与原名之间的分隔符, 源语言的标识符中不会出现
+     */
+    public static final char VERSION_SEPARATOR = '.';
+
+    @Override
+    public String name() {
+        return "ssa";
+    }
+
+    /**
+     * @param variable IR 变量
+     * @return 该变量的原名: 对于 SSA 版本 {@code x.n} 为 x, 其余变量为其自身的名字
+     */
+    public static String baseName(IRVariable variable) {
+        final var name = variable.getName();
+        final var separator = name.indexOf(VERSION_SEPARATOR);
+        return separator < 0 ? name : name.substring(0, separator);
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions, PassContext context) {
+        final var cfg = ControlFlowGraph.of(instructions);
+        final var result = build(cfg, context.getValueFactory());
+
+        // 不可达的块在结果中为空, 拼接时自然被丢弃
+        var unreachable = 0;
+        for (int block = 0; block < cfg.size(); block++) {
+            if (!cfg.isReachable(block)) {
+                unreachable += cfg.block(block).size();
+            }
+        }
+        context.note("created %d versions of named variables, inserted %d phis, removed %d unreachable instructions"
+            .formatted(result.versions(), result.phis(), unreachable));
+        return result.cfg().toInstructions();
+    }
+
+    /**
+     * 把控制流图转换为 SSA 形式, 见类的说明. 不修改输入的图
+     *
+     * @param cfg    不含 φ 函数的控制流图
+     * @param values 创建各版本变量所用的工厂
+     * @return 结构与输入相同的控制流图: φ 函数位于块首, 其操作数与 {@link ControlFlowGraph#predecessors(int)} 一一对应;
+     * 不可达的块为空
+     */
+    public static ControlFlowGraph construct(ControlFlowGraph cfg, IRValueFactory values) {
+        return build(cfg, values).cfg();
+    }
+
+    /**
+     * 一次构造的结果, 以及创建的版本数与 φ 函数数
+     */
+    private record Construction(ControlFlowGraph cfg, int versions, int phis) {
+    }
+
+    private static Construction build(ControlFlowGraph cfg, IRValueFactory values) {
+        for (int block = 0; block < cfg.size(); block++) {
+            if (cfg.block(block).stream().anyMatch(instruction -> instruction.getKind().isPhi())) {
+                throw new RuntimeException("IR is already in SSA form");
+            }
+        }
+        final var dominators = DominatorTree.of(cfg);
+
+        // 每个块中待插入的 φ 函数, 按原变量名索引
+        final var phis = new ArrayList<Map<IRVariable, Phi>>(cfg.size());
+        for (int i = 0; i < cfg.size(); i++) {
+            phis.add(new LinkedHashMap<>());
+        }
+        insertPhis(cfg, dominators, phis);
+
+        final var renamer = new Renamer(cfg, dominators, phis, values);
+        renamer.rename(0);
+
+        // 组装结果: φ 函数位于块首, 不可达的块没有被重命名, 为空
+        final var blocks = new ArrayList<List<Instruction>>(cfg.size());
+        final var successors = new ArrayList<List<Integer>>(cfg.size());
+        var phiCount = 0;
+        for (int block = 0; block < cfg.size(); block++) {
+            final var code = new ArrayList<Instruction>();
+            for (final var entry : phis.get(block).entrySet()) {
+                final var phi = entry.getValue();
+                // 来自不可达前驱的操作数不会被重命名填写, 那条边永远不会走到, 取原变量即可
+                for (int i = 0; i < phi.incoming.length; i++) {
+                    if (phi.incoming[i] == null) {
+                        phi.incoming[i] = entry.getKey();
+                    }
+                }
+                code.add(Instruction.createPhi(phi.result, List.of(phi.incoming)));
+                phiCount++;
+            }
+            code.addAll(renamer.renamed.get(block));
+            blocks.add(code);
+            successors.add(cfg.successors(block));
+        }
+        return new Construction(new ControlFlowGraph(blocks, successors), renamer.versionCount, phiCount);
+    }
+
+    /**
+     * 尚未组装为指令的 φ 函数
+     */
+    private static class Phi {
+        IRVariable result;
+        final IRValue[] incoming;
+
+        Phi(IRVariable variable, int predecessors) {
+            this.result = variable;
+            this.incoming = new IRValue[predecessors];
+        }
+    }
+
+    private static void insertPhis(ControlFlowGraph cfg, DominatorTree dominators, List<Map<IRVariable, Phi>> phis) {
+        // 每个具名变量在哪些可达的块中被定义
+        final Map<IRVariable, Set<Integer>> definitionSites = new LinkedHashMap<>();
+        for (final var block : cfg.reversePostorder()) {
+            for (final var instruction : cfg.block(block)) {
+                if (!instruction.getKind().isReturn() && instruction.getResult().isNamed()) {
+                    definitionSites.computeIfAbsent(instruction.getResult(), ignored -> new TreeSet<>()).add(block);
+                }
+            }
+        }
+
+        for (final var entry : definitionSites.entrySet()) {
+            final var variable = entry.getKey();
+            final var worklist = new ArrayDeque<>(entry.getValue());
+            while (!worklist.isEmpty()) {
+                final var block = worklist.poll();
+                for (final var frontier : dominators.frontier(block)) {
+                    if (!phis.get(frontier).containsKey(variable)) {
+                        phis.get(frontier).put(variable, new Phi(variable, cfg.predecessors(frontier).size()));
+                        // φ 函数本身也是一次定义
+                        worklist.add(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 沿支配树进行重命名
+     */
+    private static class Renamer {
+        Renamer(ControlFlowGraph cfg, DominatorTree dominators, List<Map<IRVariable, Phi>> phis, IRValueFactory values) {
+            this.cfg = cfg;
+            this.dominators = dominators;
+            this.phis = phis;
+            this.values = values;
+            this.renamed = new ArrayList<>(cfg.size());
+            for (int i = 0; i < cfg.size(); i++) {
+                renamed.add(new ArrayList<>());
+            }
+        }
+
+        /**
+         * 重命名以 entry 为根的支配子树. 用显式栈代替递归, 以免支配树很深时栈溢出
+         */
+        void rename(int entry) {
+            // 每一帧记录本块压入版本栈的变量, 离开该块时弹出
+            final var frames = new ArrayDeque<Frame>();
+            frames.push(enter(entry));
+            while (!frames.isEmpty()) {
+                final var frame = frames.peek();
+                final var children = dominators.children(frame.block);
+                if (frame.nextChild < children.size()) {
+                    frames.push(enter(children.get(frame.nextChild++)));
+                } else {
+                    frame.pushed.forEach(variable -> stacks.get(variable).pop());
+                    frames.pop();
+                }
+            }
+        }
+
+        private static class Frame {
+            final int block;
+            final List<IRVariable> pushed = new ArrayList<>();
+            int nextChild = 0;
+
+            Frame(int block) {
+                this.block = block;
+            }
+        }
+
+        private Frame enter(int block) {
+            final var frame = new Frame(block);
+            for (final var phi : phis.get(block).values()) {
+                phi.result = define(phi.result, frame);
+            }
+
+            final var output = renamed.get(block);
+            for (final var instruction : cfg.block(block)) {
+                final var kind = instruction.getKind();
+                final var operands = new ArrayList<IRValue>(instruction.getOperands().size());
+                for (final var operand : instruction.getOperands()) {
+                    operands.add(use(operand));
+                }
+                if (kind.isReturn()) {
+                    output.add(Instruction.createRet(operands.get(0)));
+                    continue;
+                }
+
+                final var result = define(instruction.getResult(), frame);
+                output.add(switch (kind) {
+                    case MOV -> Instruction.createMov(result, operands.get(0));
+                    default -> Instruction.createBinary(kind, result, operands.get(0), operands.get(1));
+                });
+            }
+
+            for (final var successor : cfg.successors(block)) {
+                final var index = cfg.predecessors(successor).indexOf(block);
+                for (final var entry : phis.get(successor).entrySet()) {
+                    entry.getValue().incoming[index] = use(entry.getKey());
+                }
+            }
+            return frame;
+        }
+
+        private IRValue use(IRValue value) {
+            if (value instanceof IRVariable variable && variable.isNamed()) {
+                final var stack = stacks.get(variable);
+                return stack == null || stack.isEmpty() ? variable : stack.peek();
+            }
+            return value;
+        }
+
+        private IRVariable define(IRVariable variable, Frame frame) {
+            if (variable.isTemp()) {
+                return variable;
+            }
+            final var version = versions.merge(variable, 1, Integer::sum);
+            final var renamedVariable = values.named(variable.getName() + VERSION_SEPARATOR + version);
+            stacks.computeIfAbsent(variable, ignored -> new ArrayDeque<>()).push(renamedVariable);
+            frame.pushed.add(variable);
+            versionCount++;
+            return renamedVariable;
+        }
+
+        private final ControlFlowGraph cfg;
+        private final DominatorTree dominators;
+        private final List<Map<IRVariable, Phi>> phis;
+        private final IRValueFactory values;
+        private final Map<IRVariable, ArrayDeque<IRVariable>> stacks = new HashMap<>();
+        private final Map<IRVariable, Integer> versions = new HashMap<>();
+        // 以块号为下标, 重命名后的指令 (不含 φ 函数)
+        final List<List<Instruction>> renamed;
+        int versionCount = 0;
+    }
+}
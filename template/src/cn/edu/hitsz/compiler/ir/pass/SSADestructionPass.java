@@ -0,0 +1,280 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.cfg.ControlFlowGraph;
+import cn.edu.hitsz.compiler.ir.dataflow.Liveness;
+import cn.edu.hitsz.compiler.utils.Bits;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 离开 SSA 形式
+ * <br>
+ * 依次进行三步:
+ * <ol>
+ *     <li>把每个 φ 函数改写为其各前驱块末尾的复写. 同一前驱中的复写是并行的, 按依赖关系排成顺序的 MOV,
+ *     遇到环时借助一个新的临时变量打断</li>
+ *     <li>用活跃变量分析检查同一原名的各个版本 ({@code x}, {@code x.1}, {@code x.2}, ...) 是否互相干扰,
+ *     即某个版本在另一个版本被定义的位置仍然活跃. 不干扰的一组版本全部改回原名, 干扰的保留版本名</li>
+ *     <li>删除改名后出现的 {@code MOV x, x}</li>
+ * </ol>
+ * 复写放在前驱块的末尾, 因此要求有 φ 函数的块的每个前驱都只有一个后继 (没有关键边). 由指令列表切分出的图总是如此;
+ * 直接给出的图见 {@link #destruct(ControlFlowGraph, IRValueFactory)}.
+ */
+public class SSADestructionPass implements IRPass {
+    @Override
+    public String name() {
+        return "out-of-ssa";
+    }
+
+    @Override
+    public List<Instruction> run(List<Instruction> instructions, PassContext context) {
+        // 没有 φ 函数时 IR 不会被第一步修改, 可以直接使用缓存的分析结果
+        final var cached = instructions.stream().anyMatch(instruction -> instruction.getKind().isPhi())
+            ? null : context.getAnalysis(Liveness.class, instructions, Liveness::of);
+        final var result = destruct(ControlFlowGraph.of(instructions), context.getValueFactory(), cached);
+        context.note("lowered %d phis, merged %d of %d versioned variables back to their names, removed %d self moves"
+            .formatted(result.phis(), result.merged(), result.groups(), result.selfMoves()));
+        return result.cfg().toInstructions();
+    }
+
+    /**
+     * 让 SSA 形式的控制流图离开 SSA 形式, 见类的说明. 不修改输入的图
+     *
+     * @param cfg    SSA 形式的控制流图, 其中不能有关键边
+     * @param values 创建临时变量所用的工厂
+     * @return 结构与输入相同的控制流图, 其中没有 φ 函数
+     */
+    public static ControlFlowGraph destruct(ControlFlowGraph cfg, IRValueFactory values) {
+        return destruct(cfg, values, null).cfg();
+    }
+
+    /**
+     * 一次离开 SSA 形式的结果, 以及各步的统计
+     */
+    private record Destruction(ControlFlowGraph cfg, int phis, int merged, int groups, int selfMoves) {
+    }
+
+    /**
+     * @param cached 输入中没有 φ 函数时可以直接使用的活跃变量分析结果; 没有时为 null
+     */
+    private static Destruction destruct(ControlFlowGraph input, IRValueFactory values, Liveness cached) {
+        // 第一步会修改各块的指令, 因此在副本上进行
+        final var cfg = input.copy();
+        final var phiCount = lowerPhis(cfg, values);
+        final var liveness = phiCount == 0 && cached != null ? cached : Liveness.of(cfg);
+
+        // 按原名把具名变量的各个版本分组, 不含版本的组无需处理
+        final var variables = liveness.getVariables();
+        final Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < variables.size(); i++) {
+            if (variables.variable(i).isNamed()) {
+                groups.computeIfAbsent(SSAConstructionPass.baseName(variables.variable(i)), ignored -> new ArrayList<>()).add(i);
+            }
+        }
+        groups.entrySet().removeIf(entry -> entry.getValue().stream()
+            .allMatch(index -> variables.variable(index).getName().equals(entry.getKey())));
+
+        final var names = new ArrayList<>(groups.keySet());
+        final var groupOf = new int[variables.size()];
+        Arrays.fill(groupOf, -1);
+        for (int group = 0; group < names.size(); group++) {
+            for (final var index : groups.get(names.get(group))) {
+                groupOf[index] = group;
+            }
+        }
+        final var interfering = findInterferingGroups(liveness, groupOf, names.size());
+
+        final Map<IRVariable, IRVariable> renaming = new HashMap<>();
+        var merged = 0;
+        for (int group = 0; group < names.size(); group++) {
+            if (interfering[group]) {
+                continue;
+            }
+            final var base = values.named(names.get(group));
+            for (final var index : groups.get(names.get(group))) {
+                renaming.put(variables.variable(index), base);
+            }
+            merged++;
+        }
+
+        // 第三步: 改名并删除自身复写; 各块的指令取自分析所用的图, 与 cfg 的内容相同
+        final var analyzed = liveness.getControlFlowGraph();
+        final var blocks = new ArrayList<List<Instruction>>(analyzed.size());
+        final var successors = new ArrayList<List<Integer>>(analyzed.size());
+        var selfMoves = 0;
+        for (int block = 0; block < analyzed.size(); block++) {
+            final var code = new ArrayList<Instruction>(analyzed.block(block).size());
+            for (final var instruction : analyzed.block(block)) {
+                final var renamed = rename(instruction, renaming);
+                if (renamed.getKind().isUnary() && renamed.getFrom().equals(renamed.getResult())) {
+                    selfMoves++;
+                    continue;
+                }
+                code.add(renamed);
+            }
+            blocks.add(code);
+            successors.add(analyzed.successors(block));
+        }
+        return new Destruction(new ControlFlowGraph(blocks, successors), phiCount, merged, names.size(), selfMoves);
+    }
+
+    /**
+     * 第一步: 把 φ 函数改写为前驱块末尾的顺序复写
+     *
+     * @return 被改写的 φ 函数个数
+     */
+    private static int lowerPhis(ControlFlowGraph cfg, IRValueFactory values) {
+        // 以块号为下标, 每个块末尾需要的并行复写 (目标 -> 来源)
+        final var copies = new ArrayList<Map<IRVariable, IRValue>>(cfg.size());
+        for (int i = 0; i < cfg.size(); i++) {
+            copies.add(new LinkedHashMap<>());
+        }
+
+        var count = 0;
+        for (int block = 0; block < cfg.size(); block++) {
+            final var code = cfg.block(block);
+            final var predecessors = cfg.predecessors(block);
+            while (!code.isEmpty() && code.get(0).getKind().isPhi()) {
+                final var phi = code.remove(0);
+                final var incoming = phi.getIncoming();
+                if (incoming.size() != predecessors.size()) {
+                    throw new RuntimeException("Phi has %d operands but block %d has %d predecessors: %s"
+                        .formatted(incoming.size(), block, predecessors.size(), phi));
+                }
+                for (int i = 0; i < incoming.size(); i++) {
+                    final var predecessor = predecessors.get(i);
+                    if (cfg.successors(predecessor).size() > 1) {
+                        throw new RuntimeException("Critical edge %d -> %d must be split before leaving SSA form"
+                            .formatted(predecessor, block));
+                    }
+                    copies.get(predecessor).put(phi.getResult(), incoming.get(i));
+                }
+                count++;
+            }
+        }
+
+        for (int block = 0; block < cfg.size(); block++) {
+            if (copies.get(block).isEmpty()) {
+                continue;
+            }
+            final var code = cfg.block(block);
+            final var sequential = sequentialize(copies.get(block), values);
+            // 有后继的块不会以 RET 结尾, 复写直接放在末尾
+            code.addAll(sequential);
+        }
+        return count;
+    }
+
+    /**
+     * 把一组并行复写排成等价的顺序 MOV
+     * <br>
+     * 反复发射目标不再被其余复写读取的那条; 剩下的复写都在环上, 此时把环上某个来源先存入新的临时变量, 打开这个环.
+     */
+    private static List<Instruction> sequentialize(Map<IRVariable, IRValue> parallel, IRValueFactory values) {
+        final var pending = new LinkedHashMap<IRVariable, IRValue>();
+        parallel.forEach((target, source) -> {
+            if (!target.equals(source)) {
+                pending.put(target, source);
+            }
+        });
+
+        final var result = new ArrayList<Instruction>(pending.size());
+        while (!pending.isEmpty()) {
+            IRVariable ready = null;
+            for (final var target : pending.keySet()) {
+                if (!pending.containsValue(target)) {
+                    ready = target;
+                    break;
+                }
+            }
+
+            if (ready != null) {
+                result.add(Instruction.createMov(ready, pending.remove(ready)));
+                continue;
+            }
+
+            // 每个目标都还要被读取, 说明剩下的都是环: 保存其中一个目标的旧值, 并让读取它的复写改读临时变量
+            final var target = pending.keySet().iterator().next();
+            final var saved = values.temp();
+            result.add(Instruction.createMov(saved, target));
+            pending.replaceAll((ignored, source) -> source.equals(target) ? saved : source);
+        }
+        return result;
+    }
+
+    /**
+     * 第二步: 在每个块中从后往前扫描, 维护每组当前活跃的版本个数, 找出有版本互相干扰的组
+     *
+     * @param groupOf 以变量下标为下标, 变量所在组的编号; 不属于任何组的为 -1
+     * @return 以组的编号为下标, 该组是否有版本互相干扰
+     */
+    private static boolean[] findInterferingGroups(Liveness liveness, int[] groupOf, int groupCount) {
+        final var cfg = liveness.getControlFlowGraph();
+        final var variables = liveness.getVariables();
+        final var interfering = new boolean[groupCount];
+        for (int block = 0; block < cfg.size(); block++) {
+            final var live = liveness.liveOut(block).clone();
+            final var liveCount = new int[groupCount];
+            for (int i = Bits.nextSetBit(live, 0); i >= 0; i = Bits.nextSetBit(live, i + 1)) {
+                if (groupOf[i] >= 0) {
+                    liveCount[groupOf[i]]++;
+                }
+            }
+
+            final var code = cfg.block(block);
+            for (int i = code.size() - 1; i >= 0; i--) {
+                final var instruction = code.get(i);
+                if (!instruction.getKind().isReturn()) {
+                    final var result = variables.indexOf(instruction.getResult());
+                    final var group = groupOf[result];
+                    if (Bits.get(live, result)) {
+                        Bits.clear(live, result);
+                        if (group >= 0) {
+                            liveCount[group]--;
+                        }
+                    }
+                    if (group >= 0 && liveCount[group] > 0) {
+                        interfering[group] = true;
+                    }
+                }
+                for (final var operand : instruction.getOperands()) {
+                    if (operand instanceof IRVariable variable) {
+                        final var index = variables.indexOf(variable);
+                        if (!Bits.get(live, index)) {
+                            Bits.set(live, index);
+                            if (groupOf[index] >= 0) {
+                                liveCount[groupOf[index]]++;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return interfering;
+    }
+
+    private static Instruction rename(Instruction instruction, Map<IRVariable, IRVariable> renaming) {
+        final var operands = new ArrayList<IRValue>(instruction.getOperands().size());
+        for (final var operand : instruction.getOperands()) {
+            operands.add(operand instanceof IRVariable variable ? renaming.getOrDefault(variable, variable) : operand);
+        }
+        final var kind = instruction.getKind();
+        if (kind.isReturn()) {
+            return Instruction.createRet(operands.get(0));
+        }
+        final var result = renaming.getOrDefault(instruction.getResult(), instruction.getResult());
+        return switch (kind) {
+            case MOV -> Instruction.createMov(result, operands.get(0));
+            default -> Instruction.createBinary(kind, result, operands.get(0), operands.get(1));
+        };
+    }
+}
@@ -0,0 +1,116 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 强度削弱: 将乘以常数的 MUL 改写为移位与加减
+ * <br>
+ * 对于一个操作数为变量, 另一个为立即数的 MUL, 从 {@link MultiplyPlan} 中查出乘以该常数的方案,
+ * 仅当方案的代价低于 li + mul 时才改写. 例如 {@code x * 10} 改写为 {@code (x << 3) + (x << 1)},
+ * {@code x * 7} 改写为 {@code (x << 3) - x}. 中间结果存放在新的临时变量中.
+ */
+public class StrengthReductionPass extends BlockLocalPass {
+    @Override
+    public String name() {
+        return "strength-reduce";
+    }
+
+    @Override
+    protected boolean createsTemps() {
+        return true;
+    }
+
+    @Override
+    protected List<Instruction> runOnBlock(List<Instruction> block, PassContext context) {
+        final var result = new ArrayList<Instruction>(block.size());
+        var reduced = 0;
+        var costBefore = 0;
+        var costAfter = 0;
+
+        for (final var instruction : block) {
+            if (instruction.getKind() != InstructionKind.MUL) {
+                result.add(instruction);
+                continue;
+            }
+
+            final var lhs = instruction.getLHS();
+            final var rhs = instruction.getRHS();
+            final MultiplyPlan plan;
+            final IRVariable operand;
+            if (lhs instanceof IRVariable variable && rhs instanceof IRImmediate immediate) {
+                plan = MultiplyPlan.of(immediate.getValue());
+                operand = variable;
+            } else if (lhs instanceof IRImmediate immediate && rhs instanceof IRVariable variable) {
+                plan = MultiplyPlan.of(immediate.getValue());
+                operand = variable;
+            } else {
+                result.add(instruction);
+                continue;
+            }
+
+            if (!plan.isProfitable()) {
+                result.add(instruction);
+                continue;
+            }
+            emit(plan, instruction.getResult(), operand, context.getValueFactory(), result);
+            reduced++;
+            costBefore += plan.multiplyCost();
+            costAfter += plan.cost();
+        }
+
+        if (reduced > 0) {
+            context.note("reduced %d multiplications, estimated cost %d -> %d".formatted(reduced, costBefore, costAfter));
+        }
+        return result;
+    }
+
+    /**
+     * 按方案生成计算 {@code target = x * c} 的指令. 只有最后一条指令写入 target, 因此 target 与 x 相同时也是正确的.
+     */
+    private static void emit(MultiplyPlan plan, IRVariable target, IRVariable x, IRValueFactory values, List<Instruction> output) {
+        // 正项排在前面, 以便从正项开始累加; 只有全为负项时才需要从 0 开始减
+        final var terms = plan.terms().stream()
+            .sorted(Comparator.comparing(MultiplyPlan.Term::negative))
+            .toList();
+        if (terms.isEmpty()) {
+            output.add(Instruction.createMov(target, IRImmediate.of(0)));
+            return;
+        }
+
+        IRValue accumulator = null;
+        for (int i = 0; i < terms.size(); i++) {
+            final var term = terms.get(i);
+            final var last = i == terms.size() - 1;
+
+            IRValue value = x;
+            if (term.shift() > 0) {
+                // 只有一个正项时, 移位的结果就是最终结果
+                final var shifted = last && accumulator == null && !term.negative() ? target : values.temp();
+                output.add(Instruction.createSll(shifted, x, IRImmediate.of(term.shift())));
+                value = shifted;
+            }
+
+            if (accumulator == null && !term.negative()) {
+                if (last && value != target) {
+                    output.add(Instruction.createMov(target, value));
+                }
+                accumulator = value;
+                continue;
+            }
+
+            final var sum = last ? target : values.temp();
+            final var kind = term.negative() ? InstructionKind.SUB : InstructionKind.ADD;
+            output.add(Instruction.createBinary(kind, sum, accumulator == null ? IRImmediate.of(0) : accumulator, value));
+            accumulator = sum;
+        }
+    }
+}
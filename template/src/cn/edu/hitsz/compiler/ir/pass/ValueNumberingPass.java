@@ -0,0 +1,140 @@
+package cn.edu.hitsz.compiler.ir.pass;
+
+import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 局部值编号 (local value numbering), 消除基本块内的公共子表达式
+ * <br>
+ * 为块中出现的每个值分配一个值编号: 同一个立即数总是同一个编号, 第一次被读取时还未赋值的变量 (程序的输入) 获得一个新编号,
+ * 运算结果的编号由 (种类, 左操作数编号, 右操作数编号) 决定, 其中 ADD, MUL 与 MULH 可交换, 两个操作数编号按大小排序.
+ * MOV 的结果与其源操作数编号相同.
+ * <br>
+ * 若某个运算的编号之前已经出现过, 且仍有变量保存着这个值, 就把该运算替换为从这个变量 MOV.
+ * 变量被重新赋值后其编号随之改变, 因此之前保存在它里面的值不会再被错误地复用.
+ * 产生的 MOV 可由 {@link CopyPropagationPass} 进一步消除.
+ */
+public class ValueNumberingPass extends BlockLocalPass {
+    @Override
+    public String name() {
+        return "lvn";
+    }
+
+    /**
+     * 运算表达式, 操作数用值编号表示
+     */
+    private record Expression(InstructionKind kind, int lhs, int rhs) {
+        static Expression of(InstructionKind kind, int lhs, int rhs) {
+            if (isCommutative(kind) && lhs > rhs) {
+                return new Expression(kind, rhs, lhs);
+            }
+            return new Expression(kind, lhs, rhs);
+        }
+    }
+
+    @Override
+    protected List<Instruction> runOnBlock(List<Instruction> block, PassContext context) {
+        final var numbering = new Numbering();
+        final Map<Expression, Integer> expressions = new HashMap<>();
+        final var result = new ArrayList<Instruction>(block.size());
+        var reused = 0;
+
+        for (final var instruction : block) {
+            final var kind = instruction.getKind();
+            if (kind.isReturn()) {
+                result.add(instruction);
+                continue;
+            }
+
+            final var target = instruction.getResult();
+            if (kind.isUnary()) {
+                numbering.assign(target, numbering.of(instruction.getFrom()));
+                result.add(instruction);
+                continue;
+            }
+
+            final var expression = Expression.of(kind,
+                numbering.of(instruction.getLHS()), numbering.of(instruction.getRHS()));
+            final var known = expressions.get(expression);
+            final var holder = known == null ? null : numbering.holderOf(known);
+            if (holder != null) {
+                result.add(Instruction.createMov(target, holder));
+                numbering.assign(target, known);
+                reused++;
+            } else {
+                final var number = numbering.fresh();
+                expressions.put(expression, number);
+                numbering.assign(target, number);
+                result.add(instruction);
+            }
+        }
+
+        if (reused > 0) {
+            context.note("replaced %d redundant computations".formatted(reused));
+        }
+        return result;
+    }
+
+    private static boolean isCommutative(InstructionKind kind) {
+        return kind == InstructionKind.ADD || kind == InstructionKind.MUL || kind == InstructionKind.MULH;
+    }
+
+    /**
+     * 值编号的分配, 以及每个编号当前保存在哪些变量中
+     */
+    private static class Numbering {
+        int of(IRValue value) {
+            if (value instanceof IRImmediate immediate) {
+                return constants.computeIfAbsent(immediate.getValue(), ignored -> fresh());
+            }
+
+            final var variable = (IRVariable) value;
+            final var number = variables.get(variable);
+            if (number != null) {
+                return number;
+            }
+
+            // 尚未赋值就被读取的变量, 其值是程序的输入
+            final var input = fresh();
+            assign(variable, input);
+            return input;
+        }
+
+        int fresh() {
+            holders.add(new ArrayList<>());
+            return holders.size() - 1;
+        }
+
+        void assign(IRVariable variable, int number) {
+            variables.put(variable, number);
+            holders.get(number).add(variable);
+        }
+
+        /**
+         * @return 当前仍保存着该编号的值的变量; 若没有则返回 null
+         */
+        IRVariable holderOf(int number) {
+            final var candidates = holders.get(number);
+            for (int i = 0; i < candidates.size(); i++) {
+                final var candidate = candidates.get(i);
+                if (variables.get(candidate) == number) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        private final Map<Integer, Integer> constants = new HashMap<>();
+        private final Map<IRVariable, Integer> variables = new HashMap<>();
+        // 以值编号为下标, 曾经被赋予该值的变量, 其中一些可能已被重新赋值
+        private final List<List<IRVariable>> holders = new ArrayList<>();
+    }
+}
@@ -78,7 +78,7 @@ public class LexicalAnalyzer {
                     // 非关键字的标识符
                     TokenKind idKind = TokenKind.fromString("id");
                     tokens.add(Token.normal(idKind, id));
-                    symbolTable.add(id);
+                    symbolTable.intern(id);
                 }
             }else if(Character.isDigit(curChar)){
                 StringBuilder number = new StringBuilder();
@@ -4,8 +4,10 @@ import cn.edu.hitsz.compiler.parser.table.Term;
 import cn.edu.hitsz.compiler.utils.FilePathConfig;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -28,16 +30,22 @@ import java.util.Map;
 public class TokenKind extends Term {
     // 允许用作 TokenKind 的 id 的字符串集合
     private static final Map<String, TokenKind> allowed = new HashMap<>();
-    private static final TokenKind eof = new TokenKind("$", -1);
+    // 按序号排列的所有 TokenKind, EOF 的序号固定为 0
+    private static final List<TokenKind> allInOrdinalOrder = new ArrayList<>();
+    private static final TokenKind eof = new TokenKind("$", -1, 0);
 
     /**
      * 从码点文件中读取允许的标识符集合
+     * <br>
+     * 每个 TokenKind 的序号按其在码点文件中出现的顺序从 1 开始分配 (0 留给 EOF)
      */
     public static void loadTokenKinds() {
         if (!allowed.isEmpty()) {
             throw new RuntimeException("Can not set allowed twice");
         }
 
+        allInOrdinalOrder.add(eof);
+
         final var lines = FileUtils.readLines(FilePathConfig.CODING_MAP_PATH);
         for (final var line : lines) {
             // 码点文件每行形如:
@@ -47,7 +55,9 @@ public class TokenKind extends Term {
             final var code = Integer.parseInt(words[0]);
             final var id = words[1];
 
-            allowed.put(id, new TokenKind(id, code));
+            final var tokenKind = new TokenKind(id, code, allInOrdinalOrder.size());
+            allowed.put(id, tokenKind);
+            allInOrdinalOrder.add(tokenKind);
         }
 
         // EOF
@@ -73,6 +83,20 @@ public class TokenKind extends Term {
         return Collections.unmodifiableMap(allowed);
     }
 
+    /**
+     * @return 按序号排列的所有 TokenKind (含 EOF)
+     */
+    public static List<TokenKind> allTokenKindsInOrdinalOrder() {
+        return Collections.unmodifiableList(allInOrdinalOrder);
+    }
+
+    /**
+     * @return TokenKind 的个数 (含 EOF), 也即序号的上界
+     */
+    public static int count() {
+        return allInOrdinalOrder.size();
+    }
+
     /**
      * @param id 标识符
      * @return 从给定的标识符中构造出的 TokenKind
@@ -107,8 +131,8 @@ public class TokenKind extends Term {
         return code;
     }
 
-    private TokenKind(String id, int code) {
-        super(id);
+    private TokenKind(String id, int code, int ordinal) {
+        super(id, ordinal);
         this.code = code;
     }
 
@@ -0,0 +1,71 @@
+package cn.edu.hitsz.compiler.parser;
+
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+/**
+ * 表达式树, 用于按 Sethi–Ullman 顺序生成 IR
+ * <br>
+ * 每个结点的标号是计算它时最多同时存活的临时变量个数: 叶子 (变量或立即数) 不需要临时变量, 标号为 0;
+ * 内部结点的两个子树标号相等时为其加 1, 否则为两者中较大的那个. 生成指令时先计算标号较大的子树,
+ * 这样计算另一个子树时只多占用一个临时变量, 整棵树同时存活的临时变量数恰好等于根的标号, 是所有计算顺序中最少的.
+ * <br>
+ * 只改变子树的计算顺序, 指令的左右操作数不变, 因此对 SUB 与 DIV 也同样适用; 表达式中没有副作用, 计算顺序不影响结果.
+ */
+final class ExpressionTree {
+    static ExpressionTree leaf(IRValue value) {
+        return new ExpressionTree(null, null, null, value, 0);
+    }
+
+    static ExpressionTree of(InstructionKind kind, ExpressionTree lhs, ExpressionTree rhs) {
+        final var label = lhs.label == rhs.label ? lhs.label + 1 : Math.max(lhs.label, rhs.label);
+        return new ExpressionTree(kind, lhs, rhs, null, label);
+    }
+
+    /**
+     * @return 计算该树所需的临时变量个数
+     */
+    int label() {
+        return label;
+    }
+
+    /**
+     * 将计算该树的指令加入 buffer, 每个内部结点的结果存入一个新的临时变量
+     *
+     * @return 该树的值
+     */
+    IRValue emit(IRBuffer buffer, IRValueFactory values) {
+        if (leaf != null) {
+            return leaf;
+        }
+
+        final IRValue lhsValue;
+        final IRValue rhsValue;
+        if (rhs.label > lhs.label) {
+            rhsValue = rhs.emit(buffer, values);
+            lhsValue = lhs.emit(buffer, values);
+        } else {
+            lhsValue = lhs.emit(buffer, values);
+            rhsValue = rhs.emit(buffer, values);
+        }
+        final var result = values.temp();
+        buffer.appendBinary(kind, result, lhsValue, rhsValue);
+        return result;
+    }
+
+    private ExpressionTree(InstructionKind kind, ExpressionTree lhs, ExpressionTree rhs, IRValue leaf, int label) {
+        this.kind = kind;
+        this.lhs = lhs;
+        this.rhs = rhs;
+        this.leaf = leaf;
+        this.label = label;
+    }
+
+    private final InstructionKind kind;
+    private final ExpressionTree lhs;
+    private final ExpressionTree rhs;
+    private final IRValue leaf;
+    private final int label;
+}
@@ -1,16 +1,18 @@
 package cn.edu.hitsz.compiler.parser;
 
 import cn.edu.hitsz.compiler.NotImplementedException;
-import cn.edu.hitsz.compiler.ir.IRImmediate;
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRFile;
+import cn.edu.hitsz.compiler.ir.IRValue;
+import cn.edu.hitsz.compiler.ir.IRValueFactory;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
-import cn.edu.hitsz.compiler.utils.FileUtils;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
 
@@ -20,16 +22,45 @@ public class IRGenerator implements ActionObserver {
 
     public SymbolTable table;
     private final Stack<Symbol> tokenStack = new Stack<>();
-    private List<Instruction> IRList = new ArrayList<>();
+    // 生成的 IR 直接按列存入 IRBuffer, 不为每条指令创建 Instruction 对象
+    private final IRBuffer irBuffer = new IRBuffer();
+    // 本次编译所用的 IR 值工厂, 具名变量与立即数都由它复用, 临时变量由它编号
+    private final IRValueFactory values;
+    // 是否按 Sethi–Ullman 顺序生成表达式的指令
+    private boolean sethiUllman = false;
+
+    public IRGenerator() {
+        this(new IRValueFactory());
+    }
+
+    /**
+     * @param values 本次编译所用的 IR 值工厂
+     */
+    public IRGenerator(IRValueFactory values) {
+        this.values = values;
+    }
+
+    /**
+     * 设置表达式的计算顺序. 默认按规约的顺序从左到右生成指令; 开启后先为每个表达式构造表达式树,
+     * 再按 Sethi–Ullman 标号先计算需要临时变量较多的子树, 使同时存活的临时变量最少, 见 {@link ExpressionTree}.
+     *
+     * @param sethiUllman 是否按 Sethi–Ullman 顺序生成表达式的指令
+     * @return this
+     */
+    public IRGenerator setSethiUllman(boolean sethiUllman) {
+        this.sethiUllman = sethiUllman;
+        return this;
+    }
+
     @Override
     public void whenShift(Status currentStatus, Token currentToken) {
         // TODO
         String number = "^[0-9]+$";
         Symbol curSymbol = new Symbol(currentToken);
         if(currentToken.getText().matches(number)){
-            curSymbol.value = IRImmediate.of(Integer.parseInt(currentToken.getText()));
+            curSymbol.value = values.immediate(Integer.parseInt(currentToken.getText()));
         }else{
-            curSymbol.value = IRVariable.named(currentToken.getText());
+            curSymbol.value = values.named(currentToken.getText());
         }
         tokenStack.push(curSymbol);
     }
@@ -47,47 +78,74 @@ public class IRGenerator implements ActionObserver {
                 curToken_left = tokenStack.pop();
                 valueTemp = (IRVariable) curToken_left.value;
                 curNonTeiminal.value = null;
-                IRList.add(Instruction.createMov(valueTemp, curToken_right.value));
+                irBuffer.appendMov(valueTemp, valueOf(curToken_right));
                 tokenStack.push(curNonTeiminal);
                 break;
             case 7:     //S -> return E;
                 curToken_right = tokenStack.pop();
                 tokenStack.pop();
                 curNonTeiminal.value = null;
-                IRList.add(Instruction.createRet(curToken_right.value));
+                irBuffer.appendRet(valueOf(curToken_right));
                 tokenStack.push(curNonTeiminal);
                 break;
             case 8:     //E -> E + A;
                 curToken_right = tokenStack.pop();
                 tokenStack.pop();
                 curToken_left = tokenStack.pop();
-                valueTemp = IRVariable.temp();  //生成临时变量
-                IRList.add(Instruction.createAdd(valueTemp, curToken_left.value, curToken_right.value));
-                curNonTeiminal.value = valueTemp;
+                if(sethiUllman) {
+                    curNonTeiminal.tree = ExpressionTree.of(InstructionKind.ADD, treeOf(curToken_left), treeOf(curToken_right));
+                } else {
+                    valueTemp = values.temp();  //生成临时变量
+                    irBuffer.appendAdd(valueTemp, curToken_left.value, curToken_right.value);
+                    curNonTeiminal.value = valueTemp;
+                }
                 tokenStack.push(curNonTeiminal);
                 break;
             case 9:     //E -> E - A;
                 curToken_right = tokenStack.pop();
                 tokenStack.pop();
                 curToken_left = tokenStack.pop();
-                valueTemp = IRVariable.temp();  //生成临时变量
-                IRList.add(Instruction.createSub(valueTemp, curToken_left.value, curToken_right.value));
-                curNonTeiminal.value = valueTemp;
+                if(sethiUllman) {
+                    curNonTeiminal.tree = ExpressionTree.of(InstructionKind.SUB, treeOf(curToken_left), treeOf(curToken_right));
+                } else {
+                    valueTemp = values.temp();  //生成临时变量
+                    irBuffer.appendSub(valueTemp, curToken_left.value, curToken_right.value);
+                    curNonTeiminal.value = valueTemp;
+                }
                 tokenStack.push(curNonTeiminal);
                 break;
             case 10:    //E -> A;
             case 12:    //A -> B;
             case 14:    //B -> id;
-                curNonTeiminal.value = tokenStack.pop().value;
+                curToken_right = tokenStack.pop();
+                curNonTeiminal.value = curToken_right.value;
+                curNonTeiminal.tree = curToken_right.tree;
                 tokenStack.push(curNonTeiminal);
                 break;
             case 11:    //A -> A * B;
                 curToken_right = tokenStack.pop();
                 tokenStack.pop();
                 curToken_left = tokenStack.pop();
-                valueTemp = IRVariable.temp();  //生成临时变量
-                IRList.add(Instruction.createMul(valueTemp, curToken_left.value, curToken_right.value));
-                curNonTeiminal.value = valueTemp;
+                if(sethiUllman) {
+                    curNonTeiminal.tree = ExpressionTree.of(InstructionKind.MUL, treeOf(curToken_left), treeOf(curToken_right));
+                } else {
+                    valueTemp = values.temp();  //生成临时变量
+                    irBuffer.appendMul(valueTemp, curToken_left.value, curToken_right.value);
+                    curNonTeiminal.value = valueTemp;
+                }
+                tokenStack.push(curNonTeiminal);
+                break;
+            case 16:    //A -> A / B;
+                curToken_right = tokenStack.pop();
+                tokenStack.pop();
+                curToken_left = tokenStack.pop();
+                if(sethiUllman) {
+                    curNonTeiminal.tree = ExpressionTree.of(InstructionKind.DIV, treeOf(curToken_left), treeOf(curToken_right));
+                } else {
+                    valueTemp = values.temp();  //生成临时变量
+                    irBuffer.appendDiv(valueTemp, curToken_left.value, curToken_right.value);
+                    curNonTeiminal.value = valueTemp;
+                }
                 tokenStack.push(curNonTeiminal);
                 break;
             case 13:    //B -> ( E );
@@ -95,6 +153,7 @@ public class IRGenerator implements ActionObserver {
                 curToken_right = tokenStack.pop();
                 tokenStack.pop();
                 curNonTeiminal.value = curToken_right.value;
+                curNonTeiminal.tree = curToken_right.tree;
                 tokenStack.push(curNonTeiminal);
                 break;
             case 15:    //B -> IntConst;
@@ -111,6 +170,17 @@ public class IRGenerator implements ActionObserver {
     }
 
 
+    private static ExpressionTree treeOf(Symbol symbol) {
+        return symbol.tree != null ? symbol.tree : ExpressionTree.leaf(symbol.value);
+    }
+
+    /**
+     * @return 表达式的值; 若表达式是一棵树, 则先生成计算它的指令
+     */
+    private IRValue valueOf(Symbol symbol) {
+        return symbol.tree != null ? symbol.tree.emit(irBuffer, values) : symbol.value;
+    }
+
     @Override
     public void whenAccept(Status currentStatus) {
         // TODO
@@ -125,11 +195,32 @@ public class IRGenerator implements ActionObserver {
 
     public List<Instruction> getIR() {
         // TODO
-        return IRList;
+        return irBuffer.toInstructions();
+    }
+
+    /**
+     * @return 本次编译所用的 IR 值工厂, 后续各阶段应当用它创建新的临时变量
+     */
+    public IRValueFactory getValueFactory() {
+        return values;
+    }
+
+    public IRBuffer getIRBuffer() {
+        return irBuffer;
     }
 
     public void dumpIR(String path) {
-        FileUtils.writeLines(path, getIR().stream().map(Instruction::toString).toList());
+        irBuffer.dump(path);
+    }
+
+    /**
+     * 以二进制格式输出 IR, 供后端直接读取
+     *
+     * @param path       输出文件路径
+     * @param sourceHash 源代码的摘要, 见 {@link IRFile#hashSource(String)}
+     */
+    public void dumpIRBinary(String path, byte[] sourceHash) {
+        IRFile.write(path, irBuffer, sourceHash);
     }
 }
 
@@ -3,8 +3,8 @@ package cn.edu.hitsz.compiler.parser;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.parser.table.Production;
 import cn.edu.hitsz.compiler.parser.table.Status;
+import cn.edu.hitsz.compiler.parser.trace.ReductionTrace;
 import cn.edu.hitsz.compiler.symtab.SymbolTable;
-import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -14,13 +14,26 @@ import java.util.List;
  * <br>
  * 该类将自己注册为 LR 驱动程序的动作观察者, 在每次 reduce 将规约的产生式存起来, 待到语法分析结束之后便能按规约顺序输出所有规约到产生式.
  * 该类的输出结果会被作为判断实验二代码正误的根据.
+ * <br>
+ * 若构造时给出了 {@link ReductionTrace}, 则每次规约都会立即写入其中, 不再在内存中保存规约序列. 这时不需要 (也不能) 再调用
+ * {@link #dumpToFile(String)}; 规约序列由调用者负责关闭, 以便语法分析出错时也能写完已有的规约.
  */
 public class ProductionCollector implements ActionObserver {
     public ProductionCollector(Production beginProduction) {
+        this(beginProduction, null);
+    }
+
+    /**
+     * @param beginProduction 起始产生式
+     * @param trace           规约序列的流式输出, 由调用者关闭
+     */
+    public ProductionCollector(Production beginProduction, ReductionTrace trace) {
         this.beginProduction = beginProduction;
+        this.trace = trace;
     }
 
     private final Production beginProduction;
+    private final ReductionTrace trace;
     private final List<Production> reducedProductions = new ArrayList<>();
 
     /**
@@ -29,13 +42,19 @@ public class ProductionCollector implements ActionObserver {
      * @param path 文件路径
      */
     public void dumpToFile(String path) {
-        FileUtils.writeLines(path, reducedProductions.stream().map(Production::toString).toList());
+        if (trace != null) {
+            throw new RuntimeException("Reductions have already been streamed to the trace");
+        }
+
+        try (final var output = ReductionTrace.text(path)) {
+            reducedProductions.forEach(output::append);
+        }
     }
 
     @Override
     public void whenReduce(Status currentStatus, Production production) {
         // 当规约时, 记录规约到的产生式
-        reducedProductions.add(production);
+        record(production);
     }
 
     @Override
@@ -46,11 +65,19 @@ public class ProductionCollector implements ActionObserver {
     @Override
     public void whenAccept(Status currentStatus) {
         // 当接受时, 记录下对起始产生式的规约
-        reducedProductions.add(beginProduction);
+        record(beginProduction);
     }
 
     @Override
     public void setSymbolTable(SymbolTable table) {
         // do nothing
     }
+
+    private void record(Production production) {
+        if (trace != null) {
+            trace.append(production);
+        } else {
+            reducedProductions.add(production);
+        }
+    }
 }
@@ -11,6 +11,8 @@ public class Symbol {
     public NonTerminal nonTerminal;
     SourceCodeType type = null;
     IRValue value = null;
+    // 按 Sethi–Ullman 顺序生成 IR 时, 表达式先构造为树, 在赋值或返回时才生成指令
+    ExpressionTree tree = null;
     public Symbol(Token token) {
         this.token = token;
         this.nonTerminal = null;
@@ -0,0 +1,321 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.utils.Bits;
+
+import java.util.*;
+
+/**
+ * 文法分析: 计算所有非终结符的 nullable, first 与 follow 集合
+ * <br>
+ * 三者都以工作表 (worklist) 形式的不动点迭代求出. 集合以 {@code long[]} 位集合存储, 位的索引即终结符的序号,
+ * 各非终结符的集合也直接以其序号为下标存放.
+ * 计算时先根据产生式建立集合间的包含关系 (依赖图), 只有当某个集合真正发生变化时才会重新传播到依赖它的集合上,
+ * 因此左递归, 间接递归都不需要特殊处理.
+ * <br>
+ * 该类只依赖产生式列表, 可以被各种分析表生成程序 (SLR, LR(1), LALR) 复用.
+ */
+public class GrammarAnalysis {
+    /**
+     * @param productions  产生式列表, 第一条产生式的头被视为开始符号
+     * @param terminals    所有终结符
+     * @param nonTerminals 所有非终结符
+     */
+    public GrammarAnalysis(List<Production> productions,
+                           Collection<TokenKind> terminals,
+                           Collection<NonTerminal> nonTerminals) {
+        this.productions = productions;
+
+        final var terminalBound = terminals.stream().mapToInt(Term::getOrdinal).max().orElse(-1) + 1;
+        this.terminals = new TokenKind[terminalBound];
+        for (final var terminal : terminals) {
+            this.terminals[terminal.getOrdinal()] = terminal;
+        }
+
+        final var nonTerminalBound = nonTerminals.stream().mapToInt(Term::getOrdinal).max().orElse(-1) + 1;
+        this.nonTerminals = new NonTerminal[nonTerminalBound];
+        for (final var nonTerminal : nonTerminals) {
+            this.nonTerminals[nonTerminal.getOrdinal()] = nonTerminal;
+        }
+
+        this.nullable = new boolean[nonTerminalBound];
+        this.first = new long[nonTerminalBound][];
+        this.follow = new long[nonTerminalBound][];
+        for (int i = 0; i < nonTerminalBound; i++) {
+            first[i] = Bits.create(terminalBound);
+            follow[i] = Bits.create(terminalBound);
+        }
+
+        calcNullable();
+        calcFirst();
+        calcFollow();
+    }
+
+    /**
+     * @param nonTerminal 非终结符
+     * @return 该非终结符能否推导出空串
+     */
+    public boolean isNullable(NonTerminal nonTerminal) {
+        return nullable[indexOf(nonTerminal)];
+    }
+
+    /**
+     * @param term 文法符号
+     * @return 该文法符号的 first 集合
+     */
+    public Set<TokenKind> getFirst(Term term) {
+        if (term instanceof TokenKind tokenKind) {
+            return Set.of(tokenKind);
+        }
+
+        return toSet(first[indexOf((NonTerminal) term)]);
+    }
+
+    /**
+     * @param nonTerminal 非终结符
+     * @return 该非终结符的 follow 集合
+     */
+    public Set<TokenKind> getFollow(NonTerminal nonTerminal) {
+        return toSet(follow[indexOf(nonTerminal)]);
+    }
+
+    /**
+     * 计算文法符号串的 first 集合, 供 LR(1) 一类需要向前看符号的闭包计算使用
+     *
+     * @param symbols 文法符号串
+     * @return 该符号串的 first 集合
+     */
+    public Set<TokenKind> getFirstOfSequence(List<Term> symbols) {
+        final var result = Bits.create(terminals.length);
+        firstOfSequence(symbols, 0, result);
+        return toSet(result);
+    }
+
+    /**
+     * @param symbols 文法符号串
+     * @return 该符号串能否推导出空串
+     */
+    public boolean isNullableSequence(List<Term> symbols) {
+        for (final var symbol : symbols) {
+            if (!isNullableTerm(symbol)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param nonTerminal 非终结符
+     * @return 其 first 集合的位表示, 位的索引即终结符的序号. 返回值不应被修改
+     */
+    public long[] getFirstBits(NonTerminal nonTerminal) {
+        return first[indexOf(nonTerminal)];
+    }
+
+    /**
+     * @param nonTerminal 非终结符
+     * @return 其 follow 集合的位表示, 位的索引即终结符的序号. 返回值不应被修改
+     */
+    public long[] getFollowBits(NonTerminal nonTerminal) {
+        return follow[indexOf(nonTerminal)];
+    }
+
+    private final List<Production> productions;
+    // 以序号为下标的终结符与非终结符, 不参与分析的序号处为 null
+    private final TokenKind[] terminals;
+    private final NonTerminal[] nonTerminals;
+
+    private final boolean[] nullable;
+    private final long[][] first;
+    private final long[][] follow;
+
+    /**
+     * 计算 nullable: 为每条产生式维护其体中尚未确定可空的符号个数, 个数降为 0 时其头便可空
+     */
+    private void calcNullable() {
+        final var remaining = new int[productions.size()];
+        // 非终结符 B -> 体中含有 B 的产生式
+        final var usedIn = new ArrayList<List<Integer>>();
+        for (int i = 0; i < nonTerminals.length; i++) {
+            usedIn.add(new ArrayList<>());
+        }
+
+        final var worklist = new ArrayDeque<Integer>();
+        for (int p = 0; p < productions.size(); p++) {
+            final var body = productions.get(p).body();
+            for (final var symbol : body) {
+                if (symbol instanceof NonTerminal nonTerminal) {
+                    usedIn.get(indexOf(nonTerminal)).add(p);
+                    remaining[p]++;
+                } else {
+                    // 体中含有终结符的产生式永远不可能推导出空串
+                    remaining[p] = Integer.MAX_VALUE / 2;
+                }
+            }
+
+            if (remaining[p] == 0) {
+                markNullable(productions.get(p).head(), worklist);
+            }
+        }
+
+        while (!worklist.isEmpty()) {
+            final var nonTerminal = worklist.pollFirst();
+            for (final var p : usedIn.get(nonTerminal)) {
+                if (--remaining[p] == 0) {
+                    markNullable(productions.get(p).head(), worklist);
+                }
+            }
+        }
+    }
+
+    private void markNullable(NonTerminal nonTerminal, Deque<Integer> worklist) {
+        final var index = indexOf(nonTerminal);
+        if (!nullable[index]) {
+            nullable[index] = true;
+            worklist.addLast(index);
+        }
+    }
+
+    /**
+     * 计算 first: 对 A -> X1 X2 ... Xn, 若 X1...Xi-1 均可空, 则 first(Xi) 包含于 first(A).
+     * 终结符直接加入, 非终结符之间的包含关系作为依赖图的边
+     */
+    private void calcFirst() {
+        // dependents[B] 是所有 first 集合包含 first(B) 的非终结符
+        final var dependents = newAdjacency();
+
+        for (final var production : productions) {
+            final var head = indexOf(production.head());
+            for (final var symbol : production.body()) {
+                if (symbol instanceof TokenKind tokenKind) {
+                    Bits.set(first[head], indexOf(tokenKind));
+                    break;
+                }
+
+                final var nonTerminal = indexOf((NonTerminal) symbol);
+                if (nonTerminal != head) {
+                    dependents.get(nonTerminal).add(head);
+                }
+                if (!nullable[nonTerminal]) {
+                    break;
+                }
+            }
+        }
+
+        propagate(first, dependents);
+    }
+
+    /**
+     * 计算 follow: 开始符号的 follow 含有 EOF; 对 A -> alpha B beta, first(beta) 包含于 follow(B),
+     * 若 beta 可空, 则 follow(A) 也包含于 follow(B)
+     */
+    private void calcFollow() {
+        final var dependents = newAdjacency();
+
+        final var startSymbol = productions.get(0).head();
+        Bits.set(follow[indexOf(startSymbol)], indexOf(TokenKind.eof()));
+
+        for (final var production : productions) {
+            final var head = indexOf(production.head());
+            final var body = production.body();
+            for (int i = 0; i < body.size(); i++) {
+                if (!(body.get(i) instanceof NonTerminal nonTerminal)) {
+                    continue;
+                }
+
+                final var target = indexOf(nonTerminal);
+                final var restNullable = firstOfSequence(body, i + 1, follow[target]);
+                if (restNullable && target != head) {
+                    dependents.get(head).add(target);
+                }
+            }
+        }
+
+        propagate(follow, dependents);
+    }
+
+    /**
+     * 沿依赖图传播集合直到不动点, 只有发生变化的集合才会被再次放入工作表
+     *
+     * @param sets       各非终结符的集合
+     * @param dependents 依赖图, dependents[B] 中的每个 A 都满足 sets[B] 包含于 sets[A]
+     */
+    private void propagate(long[][] sets, List<List<Integer>> dependents) {
+        final var worklist = new ArrayDeque<Integer>();
+        final var inWorklist = new boolean[sets.length];
+        for (int i = 0; i < sets.length; i++) {
+            worklist.addLast(i);
+            inWorklist[i] = true;
+        }
+
+        while (!worklist.isEmpty()) {
+            final var source = worklist.pollFirst();
+            inWorklist[source] = false;
+
+            for (final var target : dependents.get(source)) {
+                if (Bits.orInto(sets[target], sets[source]) && !inWorklist[target]) {
+                    worklist.addLast(target);
+                    inWorklist[target] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 将 symbols[from:] 的 first 集合并入 result
+     *
+     * @return symbols[from:] 是否可空
+     */
+    private boolean firstOfSequence(List<Term> symbols, int from, long[] result) {
+        for (int i = from; i < symbols.size(); i++) {
+            final var symbol = symbols.get(i);
+            if (symbol instanceof TokenKind tokenKind) {
+                Bits.set(result, indexOf(tokenKind));
+                return false;
+            }
+
+            final var nonTerminal = indexOf((NonTerminal) symbol);
+            Bits.orInto(result, first[nonTerminal]);
+            if (!nullable[nonTerminal]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isNullableTerm(Term term) {
+        return term instanceof NonTerminal nonTerminal && nullable[indexOf(nonTerminal)];
+    }
+
+    private List<List<Integer>> newAdjacency() {
+        final var adjacency = new ArrayList<List<Integer>>();
+        for (int i = 0; i < nonTerminals.length; i++) {
+            adjacency.add(new ArrayList<>());
+        }
+        return adjacency;
+    }
+
+    private Set<TokenKind> toSet(long[] bits) {
+        final var result = new LinkedHashSet<TokenKind>();
+        for (int i = Bits.nextSetBit(bits, 0); i >= 0; i = Bits.nextSetBit(bits, i + 1)) {
+            result.add(terminals[i]);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    private int indexOf(TokenKind terminal) {
+        final var index = terminal.getOrdinal();
+        if (index >= terminals.length || terminals[index] != terminal) {
+            throw new RuntimeException("Unknown terminal: " + terminal);
+        }
+        return index;
+    }
+
+    private int indexOf(NonTerminal nonTerminal) {
+        final var index = nonTerminal.getOrdinal();
+        if (index >= nonTerminals.length || nonTerminals[index] != nonTerminal) {
+            throw new RuntimeException("Unknown non-terminal: " + nonTerminal);
+        }
+        return index;
+    }
+}
@@ -13,16 +13,21 @@ import java.util.*;
  */
 public class GrammarInfo {
     private final Map<String, NonTerminal> nonTerminals = new HashMap<>();
+    private final List<NonTerminal> nonTerminalsInOrder = new ArrayList<>();
     private final Map<String, Production> productions = new HashMap<>();
     private final List<Production> productionsInOrder = new ArrayList<>();
 
     private NonTerminal getOrCreateNonTerminal(String name) {
-        nonTerminals.computeIfAbsent(name, NonTerminal::new);
-        return nonTerminals.get(name);
+        return nonTerminals.computeIfAbsent(name, key -> {
+            // 非终结符的序号即其在语法文件中首次出现的顺序
+            final var nonTerminal = new NonTerminal(key, nonTerminalsInOrder.size());
+            nonTerminalsInOrder.add(nonTerminal);
+            return nonTerminal;
+        });
     }
 
-    private GrammarInfo() {
-        final var lines = FileUtils.readLines(FilePathConfig.GRAMMAR_PATH);
+    private GrammarInfo(String path) {
+        final var lines = FileUtils.readLines(path);
         for (int idx = 0; idx < lines.size(); idx++) {
             final var line = lines.get(idx);
             // 形如 `A -> B ( id intConst ) C;` 的产生式
@@ -56,12 +61,23 @@ public class GrammarInfo {
 
     private static GrammarInfo getInstance() {
         if (instance == null) {
-            instance = new GrammarInfo();
+            instance = new GrammarInfo(FilePathConfig.GRAMMAR_PATH);
         }
 
         return instance;
     }
 
+    /**
+     * 改用另一个语法文件, 之前得到的非终结符与产生式都不应再被使用
+     * <br>
+     * 正常的编译流程不需要调用此方法, 它供需要处理多个文法的工具 (比如分析表生成的基准测试) 使用
+     *
+     * @param path 语法文件路径
+     */
+    public static void load(String path) {
+        instance = new GrammarInfo(path);
+    }
+
     public static Map<String, NonTerminal> getNonTerminals() {
         return Collections.unmodifiableMap(getInstance().nonTerminals);
     }
@@ -70,6 +86,13 @@ public class GrammarInfo {
         return Collections.unmodifiableMap(getInstance().productions);
     }
 
+    /**
+     * @return 按序号排列的所有非终结符
+     */
+    public static List<NonTerminal> getNonTerminalsInOrder() {
+        return Collections.unmodifiableList(getInstance().nonTerminalsInOrder);
+    }
+
     public static NonTerminal getNonTerminal(String name) {
         final var nonTerminals = getNonTerminals();
         if (!nonTerminals.containsKey(name)) {
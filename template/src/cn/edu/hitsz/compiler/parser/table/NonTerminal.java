@@ -2,14 +2,11 @@ package cn.edu.hitsz.compiler.parser.table;
 
 /**
  * 表示文法符号中的非终结符, 你不应该修改此文件
+ * <br>
+ * 非终结符只应由 {@link GrammarInfo} 创建, 其它地方请通过 {@link GrammarInfo#getNonTerminal(String)} 获得
  */
 public class NonTerminal extends Term {
-    public NonTerminal(String id) {
-        super(id);
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-        return obj instanceof NonTerminal && super.equals(obj);
+    NonTerminal(String id, int ordinal) {
+        super(id, ordinal);
     }
 }
@@ -3,13 +3,14 @@ package cn.edu.hitsz.compiler.parser.table;
 import cn.edu.hitsz.compiler.lexer.Token;
 import cn.edu.hitsz.compiler.lexer.TokenKind;
 
-import java.util.HashMap;
 import java.util.Map;
 
 /**
  * 表示 LR 分析表中的一个状态, 你不应该修改此文件
  * <br>
  * 状态的等价性由其编号唯一决定. 即两状态 equals 当且仅当它们的 index 相同
+ * <br>
+ * action 与 goto 表都是以文法符号序号索引的 {@link TermMap}, 查表时不涉及字符串运算
  *
  * @param index  状态在 LR 表中的索引/编号
  * @param action 在该状态下遇到终结符后应该转移到哪个状态
@@ -112,7 +113,7 @@ public record Status(int index, Map<TokenKind, Action> action, Map<NonTerminal,
     }
 
     private Status(int index) {
-        this(index, new HashMap<>(), new HashMap<>());
+        this(index, new TermMap<>(TokenKind.count()), new TermMap<>());
     }
 
     private static final Status errorInstance = new Status(-1);
@@ -4,8 +4,9 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 /**
  * 根据语法文件构造 LR 分析表.
@@ -15,8 +16,29 @@ import java.util.stream.Stream;
 public class TableGenerator {
     public TableGenerator() {
         this.productions = GrammarInfo.getProductionsInOrder();
-        this.terminals = new HashSet<>(TokenKind.allAllowedTokenKinds().values());
-        this.nonTerminals = new HashSet<>(GrammarInfo.getNonTerminals().values());
+        // 只有在文法中出现的终结符 (以及 EOF) 才会成为分析表的列
+        final var usedTerminals = productions.stream()
+            .flatMap(production -> production.body().stream())
+            .filter(TokenKind.class::isInstance)
+            .collect(Collectors.toSet());
+        this.terminals = TokenKind.allTokenKindsInOrdinalOrder().stream()
+            .filter(terminal -> terminal == TokenKind.eof() || usedTerminals.contains(terminal))
+            .toList();
+        this.nonTerminals = GrammarInfo.getNonTerminalsInOrder();
+
+        this.terminalPositions = new int[TokenKind.count()];
+        for (int i = 0; i < terminals.size(); i++) {
+            terminalPositions[terminals.get(i).getOrdinal()] = i;
+        }
+
+        // 以非终结符序号为下标, 按头部归类产生式
+        this.productionsByHead = new ArrayList<>();
+        for (int i = 0; i < nonTerminals.size(); i++) {
+            productionsByHead.add(new ArrayList<>());
+        }
+        for (final var production : productions) {
+            productionsByHead.get(production.head().getOrdinal()).add(production);
+        }
 
         if (productions.get(0).body().size() != 1) {
             throw new RuntimeException("The first production in grammar file must like S -> S'");
@@ -27,8 +49,7 @@ public class TableGenerator {
      * 主体方法
      */
     public void run() {
-        calcFirst();
-        calcFollow();
+        analyzeGrammar();
         constructDFA();
         dumpItems();
         genTable();
@@ -41,7 +62,7 @@ public class TableGenerator {
         final var lines = new ArrayList<String>();
         for (final var status : allStatusInIndexOrder) {
             lines.add("%d: ".formatted(status.index()));
-            for (final var item : including.get(status)) {
+            for (final var item : including.get(status.index())) {
                 lines.add("    " + item);
             }
         }
@@ -53,128 +74,31 @@ public class TableGenerator {
      * @return 构造出的 LR 表
      */
     public LRTable getTable() {
-        return new LRTable(allStatusInIndexOrder, new ArrayList<>(terminals), new ArrayList<>(nonTerminals));
-    }
-
-    private final List<Production> productions;
-    private final Set<TokenKind> terminals;
-    private final Set<NonTerminal> nonTerminals;
-
-    private final Map<Term, Set<TokenKind>> first = new HashMap<>();
-    private final Map<Term, Set<TokenKind>> follow = new HashMap<>();
-
-    private final Set<Term> visited = new HashSet<>();
-
-    /**
-     * 计算所有符号的 first 集合 <br>
-     * 终结符的 first 就是它自身, 非终结符的 first 则递归计算
-     */
-    private void calcFirst() {
-        for (final var terminal : terminals) {
-            first.put(terminal, Set.of(terminal));
-        }
-
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFirst(nonTerminal);
-        }
-
+        return new LRTable(allStatusInIndexOrder, terminals, nonTerminals);
     }
 
     /**
-     * 递归计算特定非终结符的 first
-     *
-     * @param nonTerminal 非终结符
-     * @return 其 first 集合
+     * @return 对该文法的 first/follow 分析结果, 须在 {@link #run()} 之后调用
      */
-    private Set<TokenKind> calcFirst(Term nonTerminal) {
-        // 如果已经被计算, 则直接返回缓存的结果
-        if (first.containsKey(nonTerminal)) {
-            return first.get(nonTerminal);
-        }
-
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            if (nonTerminal == production.head()) {
-                // 在文法中寻找以该非终结符为头的产生式
-                final var firstSymbol = production.body().get(0);
-                // 记录已经在栈中的递归过的非终结符, 防止直接或间接的左递归导致程序死循环
-                if (!visited.contains(firstSymbol)) {
-                    // 随后递归查找该产生式体的第一个文法符号的 first 集合
-                    // 它的 first 集合也是该非终结符的 first 集合
-                    visited.add(firstSymbol);
-                    result.addAll(calcFirst(firstSymbol));
-                }
-            }
-        }
-
-        first.put(nonTerminal, result);
-        return result;
+    public GrammarAnalysis getAnalysis() {
+        return analysis;
     }
 
+    private final List<Production> productions;
+    // 终结符与非终结符都按序号排列
+    private final List<TokenKind> terminals;
+    private final List<NonTerminal> nonTerminals;
+    private final List<List<Production>> productionsByHead;
+    // 以终结符序号为下标, 记录其在 terminals 中的位置
+    private final int[] terminalPositions;
 
-    /**
-     * 计算所有非终结符的 follow 集合
-     */
-    private void calcFollow() {
-        for (final var nonTerminal : nonTerminals) {
-            visited.clear();
-            calcFollow(nonTerminal);
-        }
-
-        // 对于找完所有产生式了都还没没有 follow 的非终结符
-        // 它必然是一个没有被使用的非终结符, 这意味着它的 follow 就是 EOF
-        nonTerminals.stream()
-            .map(follow::get).filter(Set::isEmpty)
-            .forEach(set -> set.add(TokenKind.eof()));
-    }
+    private GrammarAnalysis analysis;
 
     /**
-     * 递归计算给定非终结符的 follow 集合
-     *
-     * @param nonTerminal 给定的非终止符
-     * @return 其 follow 集合
+     * 计算所有非终结符的 nullable, first 与 follow 集合
      */
-    private Set<TokenKind> calcFollow(NonTerminal nonTerminal) {
-        // 与 first 类似, 先查找缓存
-        if (follow.containsKey(nonTerminal)) {
-            return follow.get(nonTerminal);
-        }
-
-        final var result = new LinkedHashSet<TokenKind>();
-        for (final var production : productions) {
-            final var body = production.body();
-
-            // 对该非终结符在每条产生式体中的可能出现, 我们都要将紧跟在该出现后面的项的 first 加入其 follow 集合
-            // 我们直接枚举每条产生式体的每个项
-            for (int i = 0; i < body.size() - 1; i++) {
-                // 如果发现目前的 curr 的话, 后面跟着的符号的 first 就是它的 follow
-                final var symbol = body.get(i);
-                final var next = body.get(i + 1);
-
-                if (symbol.equals(nonTerminal)) {
-                    result.addAll(first.get(next));
-                }
-            }
-
-            // 如果该非终结符出现在产生式的末尾, 那么该产生式的头的 follow 集合也要加入其 follow 集合中
-            final var lastInBody = body.get(body.size() - 1);
-            if (lastInBody.equals(nonTerminal)) {
-                final var head = production.head();
-                if (visited.contains(head)) {
-                    // 如果该产生式头已经在栈中了, 那么意味着这个非终结符有可能一直展开自己
-                    // 这时候 EOF 也可能是它的 Follow
-                    result.add(TokenKind.eof());
-                } else {
-                    // 否则直接递归查找
-                    visited.add(head);
-                    result.addAll(calcFollow(head));
-                }
-            }
-        }
-
-        follow.put(nonTerminal, result);
-        return result;
+    private void analyzeGrammar() {
+        analysis = new GrammarAnalysis(productions, terminals, nonTerminals);
     }
 
     /**
@@ -239,9 +163,11 @@ public class TableGenerator {
         }
     }
 
-    private final Map<Set<Item>, Status> belongTo = new HashMap<>();
-    private final Map<Status, Set<Item>> including = new HashMap<>();
+    // 以状态编号为下标的项集
+    private final List<Set<Item>> including = new ArrayList<>();
     private final List<Status> allStatusInIndexOrder = new ArrayList<>();
+    // 构造规范项目集族时记录的转移: gotoIndices[状态编号][文法符号位置] = 转移到的状态编号, 无转移时为 -1
+    private final List<int[]> gotoIndices = new ArrayList<>();
 
     /**
      * 构造出所有状态并维护状态与项集之间的对应关系
@@ -252,21 +178,27 @@ public class TableGenerator {
         final var collections = constructCanonicalLRCollection(initItem);
 
         for (int idx = 0; idx < collections.size(); idx++) {
-            final var status = Status.create(idx);
-            allStatusInIndexOrder.add(status);
-
-            final var items = collections.get(idx);
-            including.put(status, items);
-            belongTo.put(items, status);
+            allStatusInIndexOrder.add(Status.create(idx));
+            including.add(collections.get(idx));
         }
     }
 
     /**
      * @param head 头部符号
-     * @return 返回一个流, 其中的元素都是以 head 为头的产生式
+     * @return 以 head 为头的产生式
+     */
+    private List<Production> getProductionsByHead(Term head) {
+        return head instanceof NonTerminal nonTerminal ? productionsByHead.get(nonTerminal.getOrdinal()) : List.of();
+    }
+
+    /**
+     * 文法符号在 "所有非终结符, 所有终结符" 这一排列中的位置, 用作 gotoIndices 的下标
+     *
+     * @param term 文法符号
+     * @return 位置
      */
-    private Stream<Production> getProductionsByHead(Term head) {
-        return productions.stream().filter(production -> production.head().equals(head));
+    private int positionOf(Term term) {
+        return term instanceof TokenKind ? nonTerminals.size() + terminalPositions[term.getOrdinal()] : term.getOrdinal();
     }
 
     /**
@@ -285,16 +217,16 @@ public class TableGenerator {
         while (!unexpanded.isEmpty()) {
             final var top = unexpanded.pollFirst();
             // 获得当前项中点后面的符号
-            top.getAfterDot().ifPresent(afterDot ->
-                // 随后查找以该符号作为头部的产生式
-                getProductionsByHead(afterDot)
-                    // 构造点在对应产生式开头的新项
-                    .map(production -> new Item(production, 0))
-                    // 对于不在 result 中的新项
-                    .filter(item -> !result.contains(item))
-                    // 加入队列并加入结果中
-                    .peek(unexpanded::add)
-                    .forEach(result::add));
+            top.getAfterDot().ifPresent(afterDot -> {
+                // 随后查找以该符号作为头部的产生式, 构造点在对应产生式开头的新项
+                for (final var production : getProductionsByHead(afterDot)) {
+                    final var item = new Item(production, 0);
+                    // 对于不在 result 中的新项, 加入队列并加入结果中
+                    if (result.add(item)) {
+                        unexpanded.addLast(item);
+                    }
+                }
+            });
         }
 
         return result;
@@ -322,40 +254,71 @@ public class TableGenerator {
 
     /**
      * 构造 LR(0) 规范项目集族
+     * <br>
+     * 搜索按层进行: 同一层 (frontier) 内所有 (项集, 文法符号) 对的 GO 函数互不依赖, 交给 fork-join 线程池并行计算,
+     * 算出的项集先经过并发的哈希索引去重 (相同的项集只保留一个实例). 随后再按 "状态顺序, 文法符号顺序" 串行地为新项集编号,
+     * 这与单线程 BFS 的发现顺序完全一致, 因此状态编号以及 {@link LRTable#dumpTable} 的输出与线程数无关.
      *
      * @param initItem 起始项目 S -> . S'
      * @return 规范项目集族
      */
     private List<Set<Item>> constructCanonicalLRCollection(Item initItem) {
-        // 先收集所有的文法符号备用
-        final var terms = new LinkedHashSet<Term>();
+        // 先收集所有的文法符号备用, 其下标即 positionOf 的结果
+        final var terms = new ArrayList<Term>();
         terms.addAll(nonTerminals);
         terms.addAll(terminals);
 
         // 构造初始项目集族
         final var initClosure = constructClosure(Set.of(initItem));
 
-        // 同样以 BFS 形式搜索
-        final var result = new LinkedHashSet<>(Set.of(initClosure));
-        final var unexpanded = new ArrayDeque<>(Set.of(initClosure));
+        // 项集的并发去重索引: 值是该项集的唯一实例, 之后便可以用引用比较代替集合比较
+        final var canonical = new ConcurrentHashMap<Set<Item>, Set<Item>>();
+        canonical.put(initClosure, initClosure);
+
+        final var result = new ArrayList<Set<Item>>();
+        final var numbering = new IdentityHashMap<Set<Item>, Integer>();
+        result.add(initClosure);
+        numbering.put(initClosure, 0);
+
+        var frontier = List.of(initClosure);
+        while (!frontier.isEmpty()) {
+            final var current = frontier;
+            // 并行求出本层每个项集关于每个文法符号的后继项目集 (按 项集 * 文法符号 的顺序排列)
+            final var successors = IntStream.range(0, current.size() * terms.size()).parallel()
+                .mapToObj(i -> {
+                    final var to = constructGoto(current.get(i / terms.size()), terms.get(i % terms.size()));
+                    return to.isEmpty() ? to : canonical.computeIfAbsent(to, key -> key);
+                })
+                .toList();
+
+            // 串行地按发现顺序编号, 保证结果确定
+            final var next = new ArrayList<Set<Item>>();
+            for (int i = 0; i < successors.size(); i++) {
+                if (i % terms.size() == 0) {
+                    final var edges = new int[terms.size()];
+                    Arrays.fill(edges, -1);
+                    gotoIndices.add(edges);
+                }
 
-        while (!unexpanded.isEmpty()) {
-            final var items = unexpanded.pollFirst();
-
-            // 对于每个未被探索的集族
-            for (final var term : terms) {
-                // 尝试对每一个文法符号都求一个后继项目集
-                final var to = constructGoto(items, term);
-                // 如果还没被加入到 result 中
-                if (!to.isEmpty() && !result.contains(to)) {
-                    // 就加入 result 和待探索列表中
+                final var to = successors.get(i);
+                if (to.isEmpty()) {
+                    continue;
+                }
+
+                var toIndex = numbering.get(to);
+                if (toIndex == null) {
+                    toIndex = result.size();
+                    numbering.put(to, toIndex);
                     result.add(to);
-                    unexpanded.addLast(to);
+                    next.add(to);
                 }
+                gotoIndices.get(gotoIndices.size() - 1)[i % terms.size()] = toIndex;
             }
+
+            frontier = next;
         }
 
-        return new ArrayList<>(result);
+        return result;
     }
 
     /**
@@ -364,7 +327,7 @@ public class TableGenerator {
     private void genTable() {
         // 依索引顺序对每个状态的每个项目
         for (final var status : allStatusInIndexOrder) {
-            for (final var item : including.get(status)) {
+            for (final var item : including.get(status.index())) {
                 final var afterDotOpt = item.getAfterDot();
 
                 // 根据项目的点的位置和点后面跟着的文法符号进行分类
@@ -379,14 +342,15 @@ public class TableGenerator {
                         // 如果项目代表某个产生式的末尾, 那么再遇到对于任何位于 follow(A) 内的文法符号都应该规约 A
                         final var production = item.production();
                         final var head = production.head();
-                        for (final var a : follow.get(head)) {
+                        for (final var a : analysis.getFollow(head)) {
                             status.setAction(a, Action.reduce(production));
                         }
                     }
 
                 } else {
                     final var symbol = afterDotOpt.get();
-                    final var next = belongTo.get(constructGoto(including.get(status), symbol));
+                    // 探索时已经记录下了每个状态的转移, 不必再次求 GO(I, X)
+                    final var next = allStatusInIndexOrder.get(gotoIndices.get(status.index())[positionOf(symbol)]);
 
                     if (symbol instanceof TokenKind tokenKind) {
                         // A -> alpha . a beta
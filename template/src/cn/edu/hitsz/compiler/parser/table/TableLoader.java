@@ -4,9 +4,7 @@ import cn.edu.hitsz.compiler.lexer.TokenKind;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 读取 "编译工作台" 生成的语法分析表并将其转换为 LRTable 结构, 你不应该修改此文件
@@ -37,10 +35,12 @@ public class TableLoader {
             .map(TokenKind::fromString).toList();
         final var nonTerminals = symbolHeader
             .subList(gotoColumnBegin, gotoColumnEnd).stream()
-            .map(NonTerminal::new).toList();
+            .map(GrammarInfo::getNonTerminal).toList();
 
-        // 再往下便是表的主体部分
-        final var statusRows = csv.subList(2, csv.size());
+        // 再往下便是表的主体部分, 跳过文件末尾可能存在的空行
+        final var statusRows = csv.subList(2, csv.size()).stream()
+            .filter(row -> !row.get(statusColumnIndex).isEmpty())
+            .toList();
 
         // 首先读取所有状态编号, 构造出对应的 Status 对象
         for (final var row : statusRows) {
@@ -49,12 +49,12 @@ public class TableLoader {
             final var status = Status.create(statusIndex);
 
             statusInIndexOrder.add(status);
-            statuses.put(statusIndex, status);
+            putStatus(status);
         }
 
         // 然后再读取 ACTION 和 GOTO 表, 为构造出的 Status 对象填充 action 和 goto 信息
         for (final var row : statusRows) {
-            final var status = statuses.get(Integer.valueOf(row.get(statusColumnIndex)));
+            final var status = getStatus(row.get(statusColumnIndex));
 
             // 处理 ACTION 表
             for (int idx = actionColumnBegin; idx < actionColumnEnd; idx++) {
@@ -80,7 +80,24 @@ public class TableLoader {
     }
 
     private final List<Status> statusInIndexOrder = new ArrayList<>();
-    private final Map<Integer, Status> statuses = new HashMap<>();
+    // 以状态编号为下标的状态表
+    private final List<Status> statuses = new ArrayList<>();
+
+    private void putStatus(Status status) {
+        while (statuses.size() <= status.index()) {
+            statuses.add(null);
+        }
+        statuses.set(status.index(), status);
+    }
+
+    private Status getStatus(String indexText) {
+        final var index = Integer.parseInt(indexText);
+        final var status = index < statuses.size() ? statuses.get(index) : null;
+        if (status == null) {
+            throw new RuntimeException("Unknown status in table: " + indexText);
+        }
+        return status;
+    }
 
     /**
      * 解析 ACTION 表的字符串
@@ -102,9 +119,7 @@ public class TableLoader {
 
         return switch (command) {
             case "shift" -> {
-                final var statusIndex = Integer.valueOf(words[1]);
-                final var status = statuses.get(statusIndex);
-                yield Action.shift(status);
+                yield Action.shift(getStatus(words[1]));
             }
 
             case "reduce" -> {
@@ -128,7 +143,7 @@ public class TableLoader {
         if (text.isEmpty()) {
             return Status.error();
         } else {
-            return statuses.get(Integer.valueOf(text));
+            return getStatus(text);
         }
     }
 }
@@ -4,6 +4,12 @@ package cn.edu.hitsz.compiler.parser.table;
  * 文法符号, 你不应该修改此文件
  * <br>
  * 该类为所有文法符号 (终止符与非终止符) 的基类
+ * <br>
+ * 文法符号都是被驻留 (intern) 的: 终结符由 {@link cn.edu.hitsz.compiler.lexer.TokenKind#loadTokenKinds()} 创建,
+ * 非终结符由 {@link GrammarInfo} 创建, 同名的符号在整个程序中只有一个实例. 创建时它们会分别获得一个从 0 开始的稠密序号 (ordinal),
+ * 终结符与非终结符的序号各自独立编号. 因此文法符号的等价性就是引用相等, 而各种以文法符号为键的表都可以直接用序号索引数组.
+ *
+ * @see TermMap 以序号索引的 Map 实现
  */
 public abstract class Term {
     /**
@@ -15,15 +21,23 @@ public abstract class Term {
         return termName;
     }
 
+    /**
+     * 获得该文法符号的序号. 终结符与非终结符的序号分别从 0 开始稠密编号
+     *
+     * @return 序号
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
     @Override
-    public boolean equals(Object obj) {
-        return obj instanceof Term term
-            && term.termName.equals(termName);
+    public final boolean equals(Object obj) {
+        return this == obj;
     }
 
     @Override
-    public int hashCode() {
-        return termName.hashCode();
+    public final int hashCode() {
+        return ordinal;
     }
 
     @Override
@@ -31,9 +45,11 @@ public abstract class Term {
         return termName;
     }
 
-    protected Term(String termName) {
+    protected Term(String termName, int ordinal) {
         this.termName = termName;
+        this.ordinal = ordinal;
     }
 
     private final String termName;
+    private final int ordinal;
 }
@@ -0,0 +1,177 @@
+package cn.edu.hitsz.compiler.parser.table;
+
+import java.util.*;
+
+/**
+ * 以文法符号为键的 Map, 类似于 {@link EnumMap}
+ * <br>
+ * 由于文法符号都是驻留的, 且带有稠密的序号, 我们直接用序号作为数组下标存放键值对, 查找只需一次数组访问与一次引用比较,
+ * 不必计算字符串的哈希值. 遍历顺序即序号顺序.
+ * <br>
+ * 同一个 TermMap 中的键应当全部是终结符或全部是非终结符, 因为两者的序号是分别编号的.
+ *
+ * @param <K> 键的类型, 为 {@link cn.edu.hitsz.compiler.lexer.TokenKind} 或 {@link NonTerminal}
+ * @param <V> 值的类型
+ */
+public class TermMap<K extends Term, V> extends AbstractMap<K, V> {
+    public TermMap() {
+        this(8);
+    }
+
+    /**
+     * @param capacity 预计的序号上界
+     */
+    public TermMap(int capacity) {
+        this.keys = new Term[Math.max(capacity, 1)];
+        this.values = new Object[keys.length];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Term term && slotOf(term) >= 0;
+    }
+
+    @Override
+    public V get(Object key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        if (key instanceof Term term) {
+            final var slot = slotOf(term);
+            if (slot >= 0) {
+                return (V) values[slot];
+            }
+        }
+        return defaultValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        final var ordinal = key.getOrdinal();
+        if (ordinal >= keys.length) {
+            final var newLength = Math.max(ordinal + 1, keys.length * 2);
+            keys = Arrays.copyOf(keys, newLength);
+            values = Arrays.copyOf(values, newLength);
+        }
+
+        if (keys[ordinal] == null) {
+            size++;
+        } else if (keys[ordinal] != key) {
+            throw new RuntimeException("Ordinal %d of %s is already taken by %s".formatted(ordinal, key, keys[ordinal]));
+        }
+
+        final var old = (V) values[ordinal];
+        keys[ordinal] = key;
+        values[ordinal] = value;
+        return old;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (!(key instanceof Term term)) {
+            return null;
+        }
+
+        final var slot = slotOf(term);
+        if (slot < 0) {
+            return null;
+        }
+
+        final var old = (V) values[slot];
+        keys[slot] = null;
+        values[slot] = null;
+        size--;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private Term[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    /**
+     * @return 该键所在的下标; 若键不在表中则返回 -1
+     */
+    private int slotOf(Term term) {
+        final var ordinal = term.getOrdinal();
+        return ordinal >= 0 && ordinal < keys.length && keys[ordinal] == term ? ordinal : -1;
+    }
+
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+        private int next = advance(0);
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < keys.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            final var slot = next;
+            last = slot;
+            next = advance(slot + 1);
+            return new SimpleEntry<>((K) keys[slot], (V) values[slot]) {
+                @Override
+                public V setValue(V value) {
+                    values[slot] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+
+            TermMap.this.remove(keys[last]);
+            last = -1;
+        }
+
+        private int advance(int from) {
+            var slot = from;
+            while (slot < keys.length && keys[slot] == null) {
+                slot++;
+            }
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package cn.edu.hitsz.compiler.parser.trace;
+
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * 二进制格式的规约序列
+ * <br>
+ * 文件以 4 字节的魔数 {@link #MAGIC} 开头, 其后每条规约是产生式编号的无符号 LEB128 变长编码: 每字节低 7 位存数据,
+ * 最高位表示后面是否还有字节. 我们的产生式编号都小于 128, 所以每条规约只占一个字节.
+ */
+class BinaryReductionTrace implements ReductionTrace {
+    static final byte[] MAGIC = {'R', 'T', 'R', '1'};
+
+    BinaryReductionTrace(String path) {
+        try {
+            this.output = new BufferedOutputStream(Files.newOutputStream(Paths.get(path)), 1 << 16);
+            this.output.write(MAGIC);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+        this.path = path;
+    }
+
+    @Override
+    public void append(Production production) {
+        try {
+            writeVarint(output, production.index());
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            output.close();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    private final OutputStream output;
+    private final String path;
+
+    private static void writeVarint(OutputStream output, int value) throws IOException {
+        var rest = value;
+        while ((rest & ~0x7F) != 0) {
+            output.write((rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        output.write(rest);
+    }
+}
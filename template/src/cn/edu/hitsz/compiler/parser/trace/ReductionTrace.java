@@ -0,0 +1,48 @@
+package cn.edu.hitsz.compiler.parser.trace;
+
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+/**
+ * 规约序列的流式输出
+ * <br>
+ * 语法分析每规约一次就调用一次 {@link #append(Production)}, 实现类负责立即把它写出去, 而不是在内存中攒起整个规约序列.
+ * 因此无论输入程序多大, 输出规约序列所占用的内存都是常数.
+ * <br>
+ * 目前有两种格式:
+ * <ul>
+ *     <li>文本格式, 与 parser_list.txt 相同, 每行一条产生式</li>
+ *     <li>二进制格式, 每条规约只记录产生式编号的变长整数编码, 需要用 {@link ReductionTraceReader} 解码</li>
+ * </ul>
+ *
+ * @see ReductionTraceReader 读取并重放规约序列
+ */
+public interface ReductionTrace extends AutoCloseable {
+    /**
+     * @param path 输出文件路径
+     * @return 以文本格式输出的规约序列
+     */
+    static ReductionTrace text(String path) {
+        return new TextReductionTrace(path);
+    }
+
+    /**
+     * @param path 输出文件路径
+     * @return 以二进制格式输出的规约序列
+     */
+    static ReductionTrace binary(String path) {
+        return new BinaryReductionTrace(path);
+    }
+
+    /**
+     * 记录一次规约
+     *
+     * @param production 规约所用的产生式
+     */
+    void append(Production production);
+
+    /**
+     * 写出缓冲中的所有内容并关闭文件
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,110 @@
+package cn.edu.hitsz.compiler.parser.trace;
+
+import cn.edu.hitsz.compiler.lexer.TokenKind;
+import cn.edu.hitsz.compiler.parser.table.GrammarInfo;
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 读取由 {@link ReductionTrace} 输出的规约序列, 并按原顺序逐条重放
+ * <br>
+ * 文本与二进制两种格式都可以读取, 根据文件开头的魔数自动区分. 产生式通过 {@link GrammarInfo} 还原,
+ * 所以重放时使用的语法文件必须与输出时相同.
+ * <br>
+ * 该类也可以作为命令行工具把二进制规约序列解码为 parser_list.txt 格式的文本 (在 template 目录下运行):
+ * <pre>
+ * java cn.edu.hitsz.compiler.parser.trace.ReductionTraceReader &lt;二进制规约序列&gt; &lt;输出文本路径&gt;
+ * </pre>
+ */
+public final class ReductionTraceReader {
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            throw new RuntimeException("Usage: ReductionTraceReader <binary trace> <text output>");
+        }
+
+        TokenKind.loadTokenKinds();
+        try (final var output = ReductionTrace.text(args[1])) {
+            replay(args[0], output::append);
+        }
+    }
+
+    /**
+     * 按原顺序重放规约序列
+     *
+     * @param path     规约序列文件路径
+     * @param consumer 每条规约的产生式会依次传给它
+     */
+    public static void replay(String path, Consumer<Production> consumer) {
+        try (final var input = new BufferedInputStream(Files.newInputStream(Paths.get(path)), 1 << 16)) {
+            final var head = input.readNBytes(BinaryReductionTrace.MAGIC.length);
+            if (Arrays.equals(head, BinaryReductionTrace.MAGIC)) {
+                replayBinary(input, consumer);
+            } else {
+                replayText(head, input, consumer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception on " + path, e);
+        }
+    }
+
+    private static void replayBinary(InputStream input, Consumer<Production> consumer) throws IOException {
+        final var productions = GrammarInfo.getProductionsInOrder();
+        while (true) {
+            final var index = readVarint(input);
+            if (index < 0) {
+                return;
+            }
+            if (index < 1 || index > productions.size()) {
+                throw new RuntimeException("Unknown production index in trace: " + index);
+            }
+
+            // 产生式编号从 1 开始
+            consumer.accept(productions.get(index - 1));
+        }
+    }
+
+    private static void replayText(byte[] head, InputStream input, Consumer<Production> consumer) throws IOException {
+        // 开头用于判断魔数的几个字节也是文本的一部分, 需要拼回去
+        final var reader = new BufferedReader(new InputStreamReader(
+            new SequenceInputStream(new ByteArrayInputStream(head), input), StandardCharsets.UTF_8));
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+                consumer.accept(GrammarInfo.getProductionByText(line));
+            }
+        }
+    }
+
+    /**
+     * @return 读出的值; 若已到达文件末尾则返回 -1
+     */
+    private static int readVarint(InputStream input) throws IOException {
+        var result = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final var b = input.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new RuntimeException("Truncated varint in reduction trace");
+            }
+
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+
+        throw new RuntimeException("Malformed varint in reduction trace");
+    }
+
+    private ReductionTraceReader() {
+    }
+}
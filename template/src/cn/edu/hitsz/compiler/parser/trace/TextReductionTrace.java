@@ -0,0 +1,62 @@
+package cn.edu.hitsz.compiler.parser.trace;
+
+import cn.edu.hitsz.compiler.parser.table.Production;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * 文本格式的规约序列, 输出与 parser_list.txt 完全相同
+ * <br>
+ * 每条产生式的文本只在第一次被规约时构造一次, 之后直接复用.
+ */
+class TextReductionTrace implements ReductionTrace {
+    TextReductionTrace(String path) {
+        try {
+            this.writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+        this.path = path;
+    }
+
+    @Override
+    public void append(Production production) {
+        try {
+            writer.write(textOf(production));
+            writer.newLine();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException("IO Exception for " + path, e);
+        }
+    }
+
+    private final BufferedWriter writer;
+    private final String path;
+    // 以产生式编号为下标的文本缓存
+    private String[] texts = new String[16];
+
+    private String textOf(Production production) {
+        final var index = production.index();
+        if (index >= texts.length) {
+            texts = Arrays.copyOf(texts, Math.max(index + 1, texts.length * 2));
+        }
+
+        if (texts[index] == null) {
+            texts[index] = production.toString();
+        }
+        return texts[index];
+    }
+}
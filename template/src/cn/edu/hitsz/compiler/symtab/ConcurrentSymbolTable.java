@@ -0,0 +1,23 @@
+package cn.edu.hitsz.compiler.symtab;
+
+/**
+ * 线程安全的符号表, 供多个文件并行编译时共享
+ * <br>
+ * 与 {@link SymbolTable} 只有存储不同: 符号存放在 {@link StripedSymbolStorage} 中, 按文本的哈希值分散到若干个各自加锁的分片里,
+ * 不同分片上的操作互不阻塞, 因此多个词法分析器同时加入符号时很少互相等待.
+ * <br>
+ * 在这个表中:
+ * <ul>
+ *     <li>{@link #intern(CharSequence)} (以及 {@link #add(String)}) 的查找与插入在同一次加锁中完成,
+ *     并发加入同一个符号的多个线程总是得到同一个 id</li>
+ *     <li>{@link #setType(int, SourceCodeType)} 的检查与设置也在同一次加锁中完成,
+ *     并发设置同一个符号的类型时恰有一个线程成功, 其余线程得到异常</li>
+ *     <li>id 依赖于线程的调度, 每次运行可能不同; 但 {@link #dumpTable(String)}
+ *     总是按文本排序输出, 所以输出的内容只取决于加入了哪些符号</li>
+ * </ul>
+ */
+public class ConcurrentSymbolTable extends SymbolTable {
+    public ConcurrentSymbolTable() {
+        super(new StripedSymbolStorage());
+    }
+}
@@ -0,0 +1,126 @@
+package cn.edu.hitsz.compiler.symtab;
+
+import java.util.PriorityQueue;
+
+/**
+ * 线程安全的符号存储, 用于 {@link ConcurrentSymbolTable}
+ * <br>
+ * 符号按文本的哈希值分散到若干个分片中, 每个分片是一个独立的 {@link SymbolPool}, 由自己的锁保护.
+ * 不同分片上的操作互不阻塞, 因此多个词法分析器同时加入符号时很少互相等待.
+ * id 由分片号与分片内的序号拼成, 它依赖于线程的调度, 每次运行可能不同.
+ */
+final class StripedSymbolStorage implements SymbolStorage {
+    // 分片数为 2 的 STRIPE_BITS 次幂, id 的低 STRIPE_BITS 位是分片号
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPE_MASK = (1 << STRIPE_BITS) - 1;
+
+    StripedSymbolStorage() {
+        this.stripes = new SymbolPool[1 << STRIPE_BITS];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new SymbolPool();
+        }
+    }
+
+    @Override
+    public int intern(CharSequence text) {
+        final var stripe = stripeOf(text);
+        final var pool = stripes[stripe];
+        synchronized (pool) {
+            return pool.intern(text) << STRIPE_BITS | stripe;
+        }
+    }
+
+    @Override
+    public int find(CharSequence text) {
+        final var stripe = stripeOf(text);
+        final var pool = stripes[stripe];
+        final int local;
+        synchronized (pool) {
+            local = pool.find(text);
+        }
+        return local < 0 ? -1 : local << STRIPE_BITS | stripe;
+    }
+
+    @Override
+    public int size() {
+        var size = 0;
+        for (final var pool : stripes) {
+            synchronized (pool) {
+                size += pool.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String text(int id) {
+        final var pool = stripes[id & STRIPE_MASK];
+        synchronized (pool) {
+            return pool.text(id >>> STRIPE_BITS);
+        }
+    }
+
+    @Override
+    public byte type(int id) {
+        final var pool = stripes[id & STRIPE_MASK];
+        synchronized (pool) {
+            return pool.type(id >>> STRIPE_BITS);
+        }
+    }
+
+    @Override
+    public boolean setTypeOnce(int id, byte type) {
+        final var pool = stripes[id & STRIPE_MASK];
+        synchronized (pool) {
+            return pool.setTypeOnce(id >>> STRIPE_BITS, type);
+        }
+    }
+
+    /**
+     * 每个分片各自懒惰地维护有序的 id 序列, 这里把它们多路归并成全局的顺序
+     */
+    @Override
+    public int[] sortedIds() {
+        final var sorted = new int[stripes.length][];
+        final var texts = new String[stripes.length][];
+        var total = 0;
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            final var pool = stripes[stripe];
+            synchronized (pool) {
+                sorted[stripe] = pool.sortedIds();
+                texts[stripe] = new String[sorted[stripe].length];
+                for (int i = 0; i < sorted[stripe].length; i++) {
+                    texts[stripe][i] = pool.text(sorted[stripe][i]);
+                }
+            }
+            total += sorted[stripe].length;
+        }
+
+        // 堆中元素为 {分片号, 该分片中下一个待输出的位置}; 不同分片的文本一定不同, 所以顺序是唯一的
+        final var heads = new PriorityQueue<int[]>(stripes.length,
+            (lhs, rhs) -> texts[lhs[0]][lhs[1]].compareTo(texts[rhs[0]][rhs[1]]));
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            if (sorted[stripe].length > 0) {
+                heads.add(new int[]{stripe, 0});
+            }
+        }
+
+        final var result = new int[total];
+        for (int i = 0; i < total; i++) {
+            final var head = heads.poll();
+            final var stripe = head[0];
+            result[i] = sorted[stripe][head[1]] << STRIPE_BITS | stripe;
+            if (++head[1] < sorted[stripe].length) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    private final SymbolPool[] stripes;
+
+    private static int stripeOf(CharSequence text) {
+        // 分片内的哈希索引使用哈希值的低位, 分片号则取乘法散列后的高位, 两者互不相关
+        return (SymbolPool.hashOf(text) * 0x9E3779B9) >>> (Integer.SIZE - STRIPE_BITS);
+    }
+}
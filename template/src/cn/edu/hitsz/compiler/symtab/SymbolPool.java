@@ -0,0 +1,254 @@
+package cn.edu.hitsz.compiler.symtab;
+
+import java.util.Arrays;
+
+/**
+ * 符号表的存储引擎
+ * <br>
+ * 所有符号的文本首尾相接地存放在一个连续的字符池中, 每个符号按加入的先后获得一个从 0 开始的稠密编号 (id),
+ * 其在字符池中的起止位置, 哈希值与类型都以 id 为下标存放在基本类型数组里. 查找使用开放定址 (线性探测) 的哈希索引,
+ * 索引中只存放 id, 因此除了扩容以外, 加入与查找符号都不会创建任何对象.
+ * <br>
+ * 该类同时懒惰地维护按文本排序的 id 序列: 每次需要时只对上次排序之后新加入的 id 排序, 再与已排好的部分归并.
+ * <br>
+ * 该类不是线程安全的.
+ */
+final class SymbolPool implements SymbolStorage {
+    SymbolPool() {
+        this.chars = new char[256];
+        this.starts = new int[17];
+        this.hashes = new int[16];
+        this.types = new byte[16];
+        this.index = new int[32];
+        this.sorted = new int[0];
+    }
+
+    /**
+     * @return 符号个数, 也即 id 的上界
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param text 符号文本
+     * @return 该符号的 id; 若不存在则返回 -1
+     */
+    @Override
+    public int find(CharSequence text) {
+        final var hash = hashOf(text);
+        final var mask = index.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final var id = index[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (hashes[id] == hash && textEquals(id, text)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * 查找符号, 若不存在则加入
+     *
+     * @param text 符号文本
+     * @return 该符号的 id
+     */
+    @Override
+    public int intern(CharSequence text) {
+        final var hash = hashOf(text);
+        final var mask = index.length - 1;
+        var slot = hash & mask;
+        for (; ; slot = (slot + 1) & mask) {
+            final var id = index[slot] - 1;
+            if (id < 0) {
+                break;
+            }
+            if (hashes[id] == hash && textEquals(id, text)) {
+                return id;
+            }
+        }
+
+        final var id = append(text, hash);
+        index[slot] = id + 1;
+        // 负载因子保持在 1/2 以下, 保证探测序列足够短
+        if (size * 2 > index.length) {
+            rehash(index.length * 2);
+        }
+        return id;
+    }
+
+    @Override
+    public String text(int id) {
+        return new String(chars, starts[id], starts[id + 1] - starts[id]);
+    }
+
+    @Override
+    public byte type(int id) {
+        return types[id];
+    }
+
+    @Override
+    public boolean setTypeOnce(int id, byte type) {
+        if (types[id] != NO_TYPE) {
+            return false;
+        }
+        types[id] = type;
+        return true;
+    }
+
+    /**
+     * 按 {@link String#compareTo} 的规则比较两个符号的文本
+     */
+    int compare(int lhs, int rhs) {
+        final var lhsStart = starts[lhs];
+        final var lhsLength = starts[lhs + 1] - lhsStart;
+        final var rhsStart = starts[rhs];
+        final var rhsLength = starts[rhs + 1] - rhsStart;
+        final var mismatch = Arrays.mismatch(chars, lhsStart, lhsStart + lhsLength, chars, rhsStart, rhsStart + rhsLength);
+        if (mismatch < 0 || mismatch == Math.min(lhsLength, rhsLength)) {
+            return lhsLength - rhsLength;
+        }
+        return chars[lhsStart + mismatch] - chars[rhsStart + mismatch];
+    }
+
+    /**
+     * @return 按文本排序的所有 id, 返回值的长度即 {@link #size()}, 不应被修改
+     */
+    @Override
+    public int[] sortedIds() {
+        if (sorted.length == size) {
+            return sorted;
+        }
+
+        // 只对新加入的 id 排序, 再与已排序的部分归并
+        final var fresh = new int[size - sorted.length];
+        for (int i = 0; i < fresh.length; i++) {
+            fresh[i] = sorted.length + i;
+        }
+        mergeSort(fresh, new int[fresh.length], 0, fresh.length);
+
+        final var merged = new int[size];
+        merge(sorted, fresh, merged);
+        sorted = merged;
+        return sorted;
+    }
+
+    private char[] chars;
+    private int charsUsed = 0;
+    // starts[id] 是第 id 个符号在字符池中的起始位置, starts[id + 1] 即其结束位置
+    private int[] starts;
+    private int[] hashes;
+    private byte[] types;
+    // 开放定址的哈希索引, 存放 id + 1, 0 表示空槽; 长度总是 2 的幂
+    private int[] index;
+    private int size = 0;
+    private int[] sorted;
+
+    private int append(CharSequence text, int hash) {
+        final var length = text.length();
+        if (charsUsed + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(charsUsed + length, chars.length * 2));
+        }
+        if (size == hashes.length) {
+            final var capacity = hashes.length * 2;
+            starts = Arrays.copyOf(starts, capacity + 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+
+        if (text instanceof String string) {
+            string.getChars(0, length, chars, charsUsed);
+        } else {
+            for (int i = 0; i < length; i++) {
+                chars[charsUsed + i] = text.charAt(i);
+            }
+        }
+
+        final var id = size++;
+        charsUsed += length;
+        starts[id + 1] = charsUsed;
+        hashes[id] = hash;
+        types[id] = NO_TYPE;
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        index = new int[capacity];
+        final var mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            var slot = hashes[id] & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = id + 1;
+        }
+    }
+
+    private boolean textEquals(int id, CharSequence text) {
+        final var start = starts[id];
+        final var length = starts[id + 1] - start;
+        if (length != text.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int hashOf(CharSequence text) {
+        int hash;
+        if (text instanceof String string) {
+            // String 会缓存自己的哈希值
+            hash = string.hashCode();
+        } else {
+            hash = 0;
+            for (int i = 0; i < text.length(); i++) {
+                hash = 31 * hash + text.charAt(i);
+            }
+        }
+        // 与 HashMap 相同, 把高位混入低位, 因为索引只用到低位
+        return hash ^ (hash >>> 16);
+    }
+
+    private void mergeSort(int[] ids, int[] buffer, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+
+        final var middle = (from + to) >>> 1;
+        mergeSort(ids, buffer, from, middle);
+        mergeSort(ids, buffer, middle, to);
+
+        System.arraycopy(ids, from, buffer, from, to - from);
+        int i = from, j = middle, k = from;
+        while (i < middle && j < to) {
+            ids[k++] = compare(buffer[i], buffer[j]) <= 0 ? buffer[i++] : buffer[j++];
+        }
+        while (i < middle) {
+            ids[k++] = buffer[i++];
+        }
+        while (j < to) {
+            ids[k++] = buffer[j++];
+        }
+    }
+
+    private void merge(int[] lhs, int[] rhs, int[] result) {
+        int i = 0, j = 0, k = 0;
+        while (i < lhs.length && j < rhs.length) {
+            result[k++] = compare(lhs[i], rhs[j]) <= 0 ? lhs[i++] : rhs[j++];
+        }
+        while (i < lhs.length) {
+            result[k++] = lhs[i++];
+        }
+        while (j < rhs.length) {
+            result[k++] = rhs[j++];
+        }
+    }
+}
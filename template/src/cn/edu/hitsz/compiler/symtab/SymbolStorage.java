@@ -0,0 +1,57 @@
+package cn.edu.hitsz.compiler.symtab;
+
+/**
+ * 符号表背后的存储, {@link SymbolTable} 的所有操作都通过它完成
+ * <br>
+ * 每个符号都有一个由存储分配的 int id; 类型以 {@link SourceCodeType} 的序号存放, 尚未确定时为 {@link #NO_TYPE}.
+ * 各操作是否线程安全由实现类决定: {@link SymbolPool} 只能在单个线程中使用, {@link StripedSymbolStorage} 可以被多个线程共享.
+ */
+interface SymbolStorage {
+    // 代表 "尚未确定类型" 的值
+    byte NO_TYPE = -1;
+
+    /**
+     * @return 符号个数
+     */
+    int size();
+
+    /**
+     * @param text 符号文本
+     * @return 该符号的 id; 若不存在则返回 -1
+     */
+    int find(CharSequence text);
+
+    /**
+     * 查找符号, 若不存在则加入
+     *
+     * @param text 符号文本
+     * @return 该符号的 id
+     */
+    int intern(CharSequence text);
+
+    /**
+     * @param id 符号的 id
+     * @return 符号文本
+     */
+    String text(int id);
+
+    /**
+     * @param id 符号的 id
+     * @return 符号类型的序号, 尚未确定时为 {@link #NO_TYPE}
+     */
+    byte type(int id);
+
+    /**
+     * 在符号的类型尚未确定时设置它, 检查与设置是一个不可分的操作
+     *
+     * @param id   符号的 id
+     * @param type 符号类型的序号
+     * @return 是否设置成功; 类型已经确定时不做修改, 返回 false
+     */
+    boolean setTypeOnce(int id, byte type);
+
+    /**
+     * @return 按文本排序的所有 id, 不应被修改
+     */
+    int[] sortedIds();
+}
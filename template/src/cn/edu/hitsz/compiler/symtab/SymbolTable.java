@@ -1,12 +1,8 @@
 package cn.edu.hitsz.compiler.symtab;
 
-import cn.edu.hitsz.compiler.NotImplementedException;
 import cn.edu.hitsz.compiler.utils.FileUtils;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 符号表
@@ -17,10 +13,18 @@ import java.util.Map;
  */
 public class SymbolTable {
 
-    private final Map<String, SymbolTableEntry> entries;    // 使用 HashMap 存储符号表的条目
+    // 存放所有符号的文本与类型; 默认的存储中每个符号都有一个从 0 开始的稠密 id, 即其加入符号表的先后次序
+    private final SymbolStorage storage;
 
     public SymbolTable(){
-        entries = new HashMap<>();      // 初始化符号表
+        this(new SymbolPool());      // 初始化符号表
+    }
+
+    /**
+     * @param storage 存储符号的引擎, 所有操作都通过它完成
+     */
+    SymbolTable(SymbolStorage storage) {
+        this.storage = storage;
     }
 
     /**
@@ -31,28 +35,21 @@ public class SymbolTable {
      * @throws RuntimeException 该符号在表中不存在
      */
     public SymbolTableEntry get(String text) {
-        if(!entries.containsKey(text)){
+        final var id = idOf(text);
+        if (id < 0) {
             throw new RuntimeException("Symbol not found: " + text);
         }
-        return entries.get(text);
+        return new SymbolTableEntry(this, id);
     }
 
     /**
      * 在符号表中新增条目
      *
      * @param text 待加入符号表中的新符号的文本表示
-     * @return 该符号在符号表中对应的新条目
-     * @throws RuntimeException 该符号已在表中存在
+     * @return 该符号在符号表中对应的条目; 若该符号已存在, 则返回已有的条目
      */
     public SymbolTableEntry add(String text) {
-        // 检查符号是否已经存在
-        if (entries.containsKey(text)) {
-            return entries.get(text);
-        }
-        // 添加新条目，默认类型默认设为 null
-        SymbolTableEntry newEntry = new SymbolTableEntry(text);
-        entries.put(text, newEntry);
-        return newEntry;
+        return new SymbolTableEntry(this, intern(text));
     }
 
     /**
@@ -62,34 +59,81 @@ public class SymbolTable {
      * @return 该符号的条目是否位于符号表中
      */
     public boolean has(String text) {
-        return entries.containsKey(text);
+        return idOf(text) >= 0;
+    }
+
+    /**
+     * 查找符号, 若不存在则加入, 新符号的类型为 null. 与 {@link #add(String)} 相同, 但不构造条目对象.
+     *
+     * @param text 符号的文本表示
+     * @return 该符号的 id
+     */
+    public int intern(CharSequence text) {
+        return storage.intern(text);
+    }
+
+    /**
+     * @param text 符号的文本表示
+     * @return 该符号的 id; 若不存在则返回 -1
+     */
+    public int idOf(CharSequence text) {
+        return storage.find(text);
     }
 
     /**
-     * 获得符号表的所有条目以供 {@code dumpTable} 使用
+     * @return 符号表中的符号个数, 所有 id 都小于它
+     */
+    public int size() {
+        return storage.size();
+    }
+
+    /**
+     * @param id 符号的 id
+     * @return 符号的文本表示
+     */
+    public String getText(int id) {
+        return storage.text(id);
+    }
+
+    /**
+     * @param id 符号的 id
+     * @return 该符号的类型, 尚未确定时为 null
+     */
+    public SourceCodeType getType(int id) {
+        final var type = storage.type(id);
+        return type == SymbolStorage.NO_TYPE ? null : TYPES[type];
+    }
+
+    /**
+     * 设置符号的类型, 每个符号的类型只能设置一次
      *
-     * @return 符号表的所有条目
+     * @param id   符号的 id
+     * @param type 该符号的类型
+     * @throws RuntimeException 该符号的类型已经设置过
      */
-    private Map<String, SymbolTableEntry> getAllEntries() {
-        return entries;
+    public void setType(int id, SourceCodeType type) {
+        if (!storage.setTypeOnce(id, (byte) type.ordinal())) {
+            throw new RuntimeException("Can NOT set type for an entry twice");
+        }
     }
 
     /**
      * 将符号表按格式输出
+     * <br>
+     * 按文本排序的顺序是懒惰维护的, 每次输出只需对上次输出之后新加入的符号排序.
      *
      * @param path 输出文件路径
      */
     public void dumpTable(String path) {
-        final var entriesInOrder = new ArrayList<>(getAllEntries().values());
-        entriesInOrder.sort(Comparator.comparing(SymbolTableEntry::getText));
-
-        final var lines = new ArrayList<String>();
-        for (final var entry : entriesInOrder) {
+        final var ids = storage.sortedIds();
+        final var lines = new ArrayList<String>(ids.length);
+        for (final var id : ids) {
             // null in %s will be "null"
-            lines.add("(%s, %s)".formatted(entry.getText(), entry.getType()));
+            lines.add("(%s, %s)".formatted(getText(id), getType(id)));
         }
 
         FileUtils.writeLines(path, lines);
     }
-}
 
+    private static final SourceCodeType[] TYPES = SourceCodeType.values();
+}
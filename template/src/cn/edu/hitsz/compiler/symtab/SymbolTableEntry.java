@@ -2,28 +2,39 @@ package cn.edu.hitsz.compiler.symtab;
 
 /**
  * 符号表条目
+ * <br>
+ * 条目本身不存放任何信息, 只是符号表中某个 id 的视图, 其文本与类型都保存在 {@link SymbolTable} 中.
+ * 因此同一个符号的不同条目对象总是看到相同的类型.
  */
 public class SymbolTableEntry {
     /**
-     * @param text 符号的文本表示. 对于标识符符号, 该参数应该为标识符文本.
+     * @param table 条目所在的符号表
+     * @param id    符号在表中的 id
      */
-    public SymbolTableEntry(String text) {
-        this.text = text;
-        this.type = null;
+    SymbolTableEntry(SymbolTable table, int id) {
+        this.table = table;
+        this.id = id;
+    }
+
+    /**
+     * @return 符号在表中的 id
+     */
+    public int getId() {
+        return id;
     }
 
     /**
      * @return 符号的文本表示
      */
     public String getText() {
-        return text;
+        return table.getText(id);
     }
 
     /**
      * @return 该标识符符号可以绑定到的源语言对象的类型
      */
     public SourceCodeType getType() {
-        return type;
+        return table.getType(id);
     }
 
     /**
@@ -33,13 +44,9 @@ public class SymbolTableEntry {
      * @param type 该标识符符号可以绑定到的源语言对象的类型
      */
     public void setType(SourceCodeType type) {
-        if (this.type != null) {
-            throw new RuntimeException("Can NOT set type for an entry twice");
-        }
-
-        this.type = type;
+        table.setType(id, type);
     }
 
-    private final String text;
-    private SourceCodeType type;
+    private final SymbolTable table;
+    private final int id;
 }
@@ -0,0 +1,122 @@
+package cn.edu.hitsz.compiler.utils;
+
+import java.util.Arrays;
+
+/**
+ * 以 {@code long[]} 表示的位集合的工具函数
+ * <br>
+ * 与 {@link java.util.BitSet} 相比, 直接操作数组可以让调用者自行决定集合的存储方式 (比如把许多集合摊平到一个二维数组里),
+ * 并且在并集这种不动点迭代中最频繁的操作上可以顺便得知集合是否发生了变化.
+ */
+public final class Bits {
+    /**
+     * @param size 集合中元素索引的上界 (不含)
+     * @return 能容纳 [0, size) 的空位集合
+     */
+    public static long[] create(int size) {
+        return new long[(size + 63) >>> 6];
+    }
+
+    public static boolean get(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    public static void clear(long[] bits, int index) {
+        bits[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * 将 src 并入 dst
+     *
+     * @param dst 目标集合, 会被修改
+     * @param src 源集合, 长度不能超过 dst
+     * @return dst 是否发生了变化
+     */
+    public static boolean orInto(long[] dst, long[] src) {
+        long changed = 0;
+        for (int i = 0; i < src.length; i++) {
+            final var merged = dst[i] | src[i];
+            changed |= merged ^ dst[i];
+            dst[i] = merged;
+        }
+        return changed != 0;
+    }
+
+    /**
+     * 将 dst 与 src 求交, 结果存入 dst
+     *
+     * @param dst 目标集合, 会被修改
+     * @param src 源集合, 长度必须与 dst 相同
+     * @return dst 是否发生了变化
+     */
+    public static boolean andInto(long[] dst, long[] src) {
+        long changed = 0;
+        for (int i = 0; i < dst.length; i++) {
+            final var merged = dst[i] & src[i];
+            changed |= merged ^ dst[i];
+            dst[i] = merged;
+        }
+        return changed != 0;
+    }
+
+    /**
+     * 将 [0, size) 全部置位
+     *
+     * @param bits 位集合, 须能容纳 [0, size)
+     * @param size 集合中元素索引的上界 (不含)
+     */
+    public static void fill(long[] bits, int size) {
+        final var full = size >>> 6;
+        Arrays.fill(bits, 0, full, -1L);
+        if ((size & 63) != 0) {
+            bits[full] = (1L << size) - 1;
+        }
+    }
+
+    /**
+     * @param bits 位集合
+     * @param from 起始索引 (含)
+     * @return 从 from 开始的第一个被置位的索引; 若不存在则返回 -1
+     */
+    public static int nextSetBit(long[] bits, int from) {
+        var word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+
+        var current = bits[word] & (-1L << from);
+        while (true) {
+            if (current != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(current);
+            }
+            if (++word == bits.length) {
+                return -1;
+            }
+            current = bits[word];
+        }
+    }
+
+    public static int cardinality(long[] bits) {
+        var count = 0;
+        for (final var word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public static boolean isEmpty(long[] bits) {
+        for (final var word : bits) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Bits() {
+    }
+}
@@ -52,11 +52,31 @@ public final class FilePathConfig {
      */
     public static final String INTERMEDIATE_CODE_PATH = "data/out/intermediate_code.txt";
 
+    /**
+     * 二进制格式的中间代码, 可供后端直接读取
+     */
+    public static final String INTERMEDIATE_CODE_BINARY_PATH = "data/out/intermediate_code.bin";
+
+    /**
+     * 经过各 pass 变换之后的中间代码
+     */
+    public static final String OPTIMIZED_CODE_PATH = "data/out/optimized_code.txt";
+
+    /**
+     * 各 pass 的耗时与指令条数
+     */
+    public static final String PASS_REPORT_PATH = "data/out/pass_report.txt";
+
     /**
      * IR 模拟执行的结果
      */
     public static final String EMULATE_RESULT = "data/out/ir_emulate_result.txt";
 
+    /**
+     * IR 执行的剖析数据, 见 {@link IRProfile}
+     */
+    public static final String IR_PROFILE_PATH = "data/out/ir_profile.txt";
+
     /**
      * 汇编代码
      */
@@ -1,9 +1,11 @@
 package cn.edu.hitsz.compiler.utils;
 
+import cn.edu.hitsz.compiler.ir.IRBuffer;
 import cn.edu.hitsz.compiler.ir.IRImmediate;
 import cn.edu.hitsz.compiler.ir.IRValue;
 import cn.edu.hitsz.compiler.ir.IRVariable;
 import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
 
 import java.util.HashMap;
 import java.util.List;
@@ -12,64 +14,253 @@ import java.util.Optional;
 
 /**
  * 用来模拟执行 IR 的类
+ * <br>
+ * 加载时先把 {@link IRBuffer} 译为紧凑的指令码, 执行时只读写 int 数组, 不创建任何对象:
+ * <ul>
+ *     <li>每个 IR 变量占据 frame 中以其 id 为下标的一个槽; 每个不同的立即数也占据一个槽, 加载时就写入其值.
+ *     于是所有操作数都是槽号, 执行时无需再区分立即数与变量</li>
+ *     <li>每条指令译为 code 中连续的 4 个 int: 操作码, 结果槽, 左操作数槽, 右操作数槽. 只译到第一条 RET 为止,
+ *     与生成的汇编一样, 之后的指令不会执行</li>
+ *     <li>IR 中没有跳转, 被执行的每条指令都会按顺序执行一次, 因此读取未赋值的变量可以在加载时就查出,
+ *     执行时不必再逐次检查. 这样的 IR 在执行时报错, 与逐条检查的行为一致</li>
+ * </ul>
+ * 同一个模拟器可以反复执行, 每次的结果相同.
+ * <br>
+ * 打开剖析 ({@link #setProfiling(boolean)}) 后, 执行时另走一个逐条计数的循环, 结果见 {@link #getProfile()};
+ * 未打开时只在每次执行开始时多判断一次, 指令循环与不剖析时完全相同.
  */
 public class IREmulator {
     public static IREmulator load(List<Instruction> instructions) {
-        return new IREmulator(instructions);
+        return new IREmulator(IRBuffer.of(instructions));
+    }
+
+    public static IREmulator load(IRBuffer buffer) {
+        return new IREmulator(buffer);
+    }
+
+    /**
+     * @param profiling 执行时是否记录剖析数据
+     * @return this
+     */
+    public IREmulator setProfiling(boolean profiling) {
+        this.profiling = profiling;
+        return this;
+    }
+
+    /**
+     * @return 最近一次打开剖析的执行所得的剖析数据; 还没有这样的执行时为 null
+     */
+    public IRProfile getProfile() {
+        return profile;
     }
 
     public Optional<Integer> execute() {
-        for (final var instruction : instructions) {
-            switch (instruction.getKind()) {
-                case MOV -> {
-                    final var from = eval(instruction.getFrom());
-                    environment.put(instruction.getResult(), from);
-                }
+        if (undefinedUse != null) {
+            throw new RuntimeException("Use of undefined IR variable: " + undefinedUse);
+        }
+        if (profiling) {
+            return executeProfiled();
+        }
 
-                case ADD -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs + rhs);
+        final var code = this.code;
+        final var frame = this.frame;
+        for (int pc = 0; pc < code.length; pc += 4) {
+            final var result = code[pc + 1];
+            final var lhs = frame[code[pc + 2]];
+            final var rhs = frame[code[pc + 3]];
+            switch (code[pc]) {
+                case OP_ADD -> frame[result] = lhs + rhs;
+                case OP_SUB -> frame[result] = lhs - rhs;
+                case OP_MUL -> frame[result] = lhs * rhs;
+                case OP_MOV -> frame[result] = lhs;
+                case OP_SLL -> frame[result] = lhs << rhs;
+                case OP_SRL -> frame[result] = lhs >>> rhs;
+                case OP_SRA -> frame[result] = lhs >> rhs;
+                // 除法的边界情况以 InstructionKind#apply 为准
+                case OP_DIV -> frame[result] = InstructionKind.DIV.apply(lhs, rhs);
+                case OP_MULH -> frame[result] = InstructionKind.MULH.apply(lhs, rhs);
+                case OP_RET -> {
+                    executed = true;
+                    return Optional.of(lhs);
                 }
+                default -> throw new RuntimeException("Illegal opcode: " + code[pc]);
+            }
+        }
 
-                case SUB -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs - rhs);
-                }
+        executed = true;
+        return Optional.empty();
+    }
 
-                case MUL -> {
-                    final var lhs = eval(instruction.getLHS());
-                    final var rhs = eval(instruction.getRHS());
-                    environment.put(instruction.getResult(), lhs * rhs);
-                }
+    /**
+     * 与 {@link #execute()} 的语义相同, 同时对每条指令计数. 各指令的计算以 {@link InstructionKind#apply(int, int)} 为准
+     */
+    private Optional<Integer> executeProfiled() {
+        final var variableCount = buffer.variableCount();
+        final var reads = new long[variableCount];
+        final var writes = new long[variableCount];
+        final var result = new IRProfile();
 
-                case RET -> this.returnValue = eval(instruction.getReturnValue());
+        // 以对具名变量的赋值或 RET 结尾的一段指令是一条语句, 见 IRProfile
+        final var statementCount = new long[code.length / 4 + 1];
+        var statement = 0;
+        Integer returned = null;
+        for (int i = 0; i < code.length / 4; i++) {
+            final var kind = buffer.kind(i);
+            final var lhs = code[i * 4 + 2];
+            final var rhs = code[i * 4 + 3];
+            result.kindCounts[kind.ordinal()]++;
+            statementCount[statement]++;
+            if (!buffer.isLhsImmediate(i)) {
+                reads[lhs]++;
+            }
+            if (kind.isBinary() && !buffer.isRhsImmediate(i)) {
+                reads[rhs]++;
+            }
 
-                default -> throw new RuntimeException("Unknown instruction kind: " + instruction.getKind());
+            if (kind.isReturn()) {
+                returned = frame[lhs];
+                result.statements.add(new IRProfile.Statement("return", statementCount[statement++]));
+                break;
+            }
+            final var target = code[i * 4 + 1];
+            frame[target] = kind.isBinary() ? kind.apply(frame[lhs], frame[rhs]) : frame[lhs];
+            writes[target]++;
+            if (buffer.variable(target).isNamed()) {
+                result.statements.add(new IRProfile.Statement(buffer.variable(target).getName(), statementCount[statement++]));
+            }
+        }
+        // 没有 RET 时, 最后一次对具名变量赋值之后的指令不属于任何语句
+        if (statementCount[statement] > 0) {
+            result.statements.add(new IRProfile.Statement("-", statementCount[statement]));
+        }
+        for (int id = 0; id < variableCount; id++) {
+            if (reads[id] + writes[id] > 0) {
+                result.variables.put(buffer.variable(id).getName(), new long[]{reads[id], writes[id]});
             }
         }
 
-        return Optional.ofNullable(this.returnValue);
+        executed = true;
+        profile = result;
+        return Optional.ofNullable(returned);
     }
 
+    /**
+     * @param value IR 值
+     * @return 执行结束时该值的值; 变量尚未执行或在执行中未被赋值时返回 null
+     */
     public Integer eval(IRValue value) {
         if (value instanceof IRImmediate immediate) {
             return immediate.getValue();
         } else if (value instanceof IRVariable variable) {
-            return environment.get(variable);
+            final var id = buffer.findVariable(variable);
+            return executed && id >= 0 && defined[id] ? frame[id] : null;
         } else {
             throw new RuntimeException("Unknown IR value type");
         }
     }
 
-    private IREmulator(List<Instruction> instructions) {
-        this.instructions = instructions;
-        this.environment = new HashMap<>();
-        this.returnValue = null;
+    // 操作码, 与 InstructionKind 一一对应
+    private static final int OP_ADD = 0;
+    private static final int OP_SUB = 1;
+    private static final int OP_MUL = 2;
+    private static final int OP_MOV = 3;
+    private static final int OP_RET = 4;
+    private static final int OP_SLL = 5;
+    private static final int OP_SRL = 6;
+    private static final int OP_SRA = 7;
+    private static final int OP_DIV = 8;
+    private static final int OP_MULH = 9;
+
+    private IREmulator(IRBuffer buffer) {
+        this.buffer = buffer;
+        this.defined = new boolean[buffer.variableCount()];
+
+        var end = buffer.size();
+        for (int i = 0; i < buffer.size(); i++) {
+            if (buffer.kind(i).isReturn()) {
+                end = i + 1;
+                break;
+            }
+        }
+
+        // 立即数的槽排在所有变量之后
+        final Map<Integer, Integer> constantSlots = new HashMap<>();
+        this.code = new int[end * 4];
+        IRVariable undefined = null;
+        for (int i = 0; i < end; i++) {
+            final var kind = buffer.kind(i);
+            final var lhs = slot(buffer.isLhsImmediate(i), buffer.lhs(i), constantSlots);
+            // MOV 与 RET 没有右操作数, 随便读取一个槽即可
+            final var rhs = kind.isBinary() ? slot(buffer.isRhsImmediate(i), buffer.rhs(i), constantSlots) : lhs;
+            if (undefined == null) {
+                undefined = findUndefined(buffer, i, lhs, rhs);
+            }
+
+            code[i * 4] = opcode(kind);
+            code[i * 4 + 1] = kind.isReturn() ? 0 : buffer.result(i);
+            code[i * 4 + 2] = lhs;
+            code[i * 4 + 3] = rhs;
+            if (!kind.isReturn()) {
+                defined[buffer.result(i)] = true;
+            }
+        }
+        this.undefinedUse = undefined;
+
+        // RET 的结果槽为 0, frame 至少要有一个槽
+        this.frame = new int[Math.max(buffer.variableCount() + constantSlots.size(), 1)];
+        constantSlots.forEach((value, slot) -> frame[slot] = value);
     }
 
-    private final List<Instruction> instructions;
-    private final Map<IRVariable, Integer> environment;
-    private Integer returnValue;
+    private final IRBuffer buffer;
+    private final int[] code;
+    // 前 variableCount 个槽是以变量 id 为下标的变量值, 之后是立即数
+    private final int[] frame;
+    // 以变量 id 为下标, 该变量是否会被执行的指令赋值
+    private final boolean[] defined;
+    // 第一个在赋值之前被读取的变量; 没有时为 null
+    private final IRVariable undefinedUse;
+    private boolean executed = false;
+    private boolean profiling = false;
+    private IRProfile profile = null;
+
+    /**
+     * @param immediate 操作数是否为立即数
+     * @param operand   立即数的值或变量 id
+     * @return 操作数所在的槽; 第一次遇到的立即数分配一个新槽
+     */
+    private int slot(boolean immediate, int operand, Map<Integer, Integer> constantSlots) {
+        if (!immediate) {
+            return operand;
+        }
+        return constantSlots.computeIfAbsent(operand, ignored -> buffer.variableCount() + constantSlots.size());
+    }
+
+    /**
+     * @return 第 index 条指令读取的变量中尚未被赋值的那个; 都已赋值时返回 null
+     */
+    private IRVariable findUndefined(IRBuffer buffer, int index, int lhs, int rhs) {
+        if (!buffer.isLhsImmediate(index) && !defined[lhs]) {
+            return buffer.variable(lhs);
+        }
+        if (buffer.kind(index).isBinary() && !buffer.isRhsImmediate(index) && !defined[rhs]) {
+            return buffer.variable(rhs);
+        }
+        return null;
+    }
+
+    private static int opcode(InstructionKind kind) {
+        return switch (kind) {
+            case ADD -> OP_ADD;
+            case SUB -> OP_SUB;
+            case MUL -> OP_MUL;
+            case MOV -> OP_MOV;
+            case RET -> OP_RET;
+            case SLL -> OP_SLL;
+            case SRL -> OP_SRL;
+            case SRA -> OP_SRA;
+            case DIV -> OP_DIV;
+            case MULH -> OP_MULH;
+            case PHI -> throw new RuntimeException("Can NOT emulate PHI, leave SSA form first");
+        };
+    }
 }
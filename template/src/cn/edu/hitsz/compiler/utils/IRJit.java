@@ -0,0 +1,203 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRBuffer;
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.Instruction;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.lang.classfile.ClassFile;
+import java.lang.classfile.CodeBuilder;
+import java.lang.constant.ClassDesc;
+import java.lang.constant.ConstantDescs;
+import java.lang.constant.MethodTypeDesc;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 把 IR 编译为 JVM 字节码执行, 结果与 {@link IREmulator} 相同
+ * <br>
+ * 用 {@link ClassFile} API 生成一个只有静态方法 {@code int run()} 的类, 并作为隐藏类加载:
+ * <ul>
+ *     <li>每个 IR 变量对应 run 的一个局部变量, 槽号即是变量在 {@link IRBuffer} 中的 id; 立即数直接作为常量压栈</li>
+ *     <li>二元 IR 译为对应的 int 运算指令. MULH 借助 long 乘法计算, DIV 调用 {@link #div(int, int)}, 以保持除以 0 的语义</li>
+ *     <li>只编译到第一条 RET 为止, 与模拟执行一致; 没有 RET 的程序没有返回值, 不生成类</li>
+ * </ul>
+ * 生成与加载类的开销远大于 {@link IREmulator#load(IRBuffer)}, 只适合要反复执行的程序: 多次调用 {@link #run()} 之后,
+ * 它会被 JVM 的 JIT 编译为本地代码. 隐藏类不被任何类加载器引用, 不再使用时即可被回收.
+ * <br>
+ * JVM 方法的字节码不能超过 64KB, 过大的程序无法编译, 见 {@link #canCompile(IRBuffer)}.
+ */
+public final class IRJit {
+    public static IRJit compile(List<Instruction> instructions) {
+        return compile(IRBuffer.of(instructions));
+    }
+
+    /**
+     * @param buffer 要编译的 IR
+     * @return 编译得到的程序
+     * @throws RuntimeException 程序过大, 或生成的字节码无法加载
+     */
+    public static IRJit compile(IRBuffer buffer) {
+        if (!canCompile(buffer)) {
+            throw new RuntimeException("IR is too large to compile into one JVM method: %d instructions, %d variables"
+                .formatted(buffer.size(), buffer.variableCount()));
+        }
+        return new IRJit(buffer);
+    }
+
+    /**
+     * 按每条指令最多占用的字节数估计, 偏保守
+     *
+     * @return 该 IR 能否编译为一个 JVM 方法
+     */
+    public static boolean canCompile(IRBuffer buffer) {
+        return (long) executedCount(buffer) * MAX_BYTES_PER_INSTRUCTION + 1 <= MAX_CODE_LENGTH
+            && buffer.variableCount() <= MAX_LOCALS;
+    }
+
+    /**
+     * @return 程序的返回值; 没有 RET 时为空
+     * @throws RuntimeException 程序读取了未赋值的变量
+     */
+    public Optional<Integer> execute() {
+        return run == null && undefinedUse == null ? Optional.empty() : Optional.of(run());
+    }
+
+    /**
+     * 执行编译得到的程序
+     *
+     * @return 程序的返回值
+     * @throws RuntimeException 程序没有 RET, 或读取了未赋值的变量
+     */
+    public int run() {
+        if (undefinedUse != null) {
+            throw new RuntimeException("Use of undefined IR variable: " + undefinedUse);
+        }
+        if (run == null) {
+            throw new RuntimeException("IR has no RET instruction");
+        }
+        try {
+            return (int) run.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 生成的代码中 DIV 的实现, 语义见 {@link InstructionKind#apply(int, int)}
+     */
+    public static int div(int lhs, int rhs) {
+        return InstructionKind.DIV.apply(lhs, rhs);
+    }
+
+    private static final int MAX_CODE_LENGTH = 65535;
+    private static final int MAX_LOCALS = 65535;
+    // MULH 最长: 两次 wide iload 与 i2l, lmul, bipush 32, lshr, l2i, wide istore
+    private static final int MAX_BYTES_PER_INSTRUCTION = 19;
+
+    private static final ClassDesc CD_IR_JIT = ClassDesc.of(IRJit.class.getName());
+    private static final MethodTypeDesc MTD_INT = MethodTypeDesc.of(ConstantDescs.CD_int);
+    private static final MethodTypeDesc MTD_INT_INT_INT = MethodTypeDesc.of(ConstantDescs.CD_int, ConstantDescs.CD_int, ConstantDescs.CD_int);
+
+    private final MethodHandle run;
+    // 第一个在赋值之前被读取的变量; 没有时为 null
+    private final IRVariable undefinedUse;
+
+    private IRJit(IRBuffer buffer) {
+        final var end = executedCount(buffer);
+        final var hasReturn = end > 0 && buffer.kind(end - 1).isReturn();
+
+        // 与 IREmulator 一样, 没有跳转的 IR 在编译时就能查出对未赋值变量的读取; 这样的方法也无法通过字节码校验
+        final var defined = new boolean[buffer.variableCount()];
+        IRVariable undefined = null;
+        for (int i = 0; i < end && undefined == null; i++) {
+            if (!buffer.isLhsImmediate(i) && !defined[buffer.lhs(i)]) {
+                undefined = buffer.variable(buffer.lhs(i));
+            } else if (buffer.kind(i).isBinary() && !buffer.isRhsImmediate(i) && !defined[buffer.rhs(i)]) {
+                undefined = buffer.variable(buffer.rhs(i));
+            } else if (!buffer.kind(i).isReturn()) {
+                defined[buffer.result(i)] = true;
+            }
+        }
+        this.undefinedUse = undefined;
+        if (!hasReturn || undefined != null) {
+            this.run = null;
+            return;
+        }
+
+        // 隐藏类必须与用来定义它的 Lookup 在同一个包中
+        final var lookup = MethodHandles.lookup();
+        final var name = ClassDesc.of(IRJit.class.getPackageName() + ".CompiledIR");
+        final var bytes = ClassFile.of().build(name, classBuilder -> classBuilder
+            .withFlags(ClassFile.ACC_FINAL | ClassFile.ACC_SYNTHETIC)
+            .withMethodBody("run", MTD_INT, ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, code -> {
+                for (int i = 0; i < end; i++) {
+                    emit(code, buffer, i);
+                }
+            }));
+
+        try {
+            final var hidden = lookup.defineHiddenClass(bytes, true);
+            this.run = hidden.findStatic(hidden.lookupClass(), "run", MethodType.methodType(int.class));
+        } catch (IllegalAccessException | NoSuchMethodException e) {
+            throw new RuntimeException("Failed to load compiled IR", e);
+        }
+    }
+
+    /**
+     * @return 会被执行的指令条数, 即到第一条 RET 为止 (含)
+     */
+    private static int executedCount(IRBuffer buffer) {
+        for (int i = 0; i < buffer.size(); i++) {
+            if (buffer.kind(i).isReturn()) {
+                return i + 1;
+            }
+        }
+        return buffer.size();
+    }
+
+    private static void emit(CodeBuilder code, IRBuffer buffer, int index) {
+        final var kind = buffer.kind(index);
+        load(code, buffer.isLhsImmediate(index), buffer.lhs(index));
+        switch (kind) {
+            case MOV -> {
+                code.istore(buffer.result(index));
+                return;
+            }
+            case RET -> {
+                code.ireturn();
+                return;
+            }
+            case MULH -> code.i2l();
+            default -> {
+            }
+        }
+
+        load(code, buffer.isRhsImmediate(index), buffer.rhs(index));
+        switch (kind) {
+            case ADD -> code.iadd();
+            case SUB -> code.isub();
+            case MUL -> code.imul();
+            case SLL -> code.ishl();
+            case SRL -> code.iushr();
+            case SRA -> code.ishr();
+            case DIV -> code.invokestatic(CD_IR_JIT, "div", MTD_INT_INT_INT);
+            case MULH -> code.i2l().lmul().bipush(32).lshr().l2i();
+            default -> throw new RuntimeException("Can NOT compile IR kind: " + kind);
+        }
+        code.istore(buffer.result(index));
+    }
+
+    private static void load(CodeBuilder code, boolean immediate, int operand) {
+        if (immediate) {
+            code.loadConstant(operand);
+        } else {
+            code.iload(operand);
+        }
+    }
+}
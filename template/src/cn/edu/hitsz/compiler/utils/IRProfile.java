@@ -0,0 +1,103 @@
+package cn.edu.hitsz.compiler.utils;
+
+import cn.edu.hitsz.compiler.ir.IRVariable;
+import cn.edu.hitsz.compiler.ir.InstructionKind;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * IR 执行的剖析数据: 各种指令与各条语句执行的指令条数, 以及各变量被读写的次数, 见 {@link IREmulator#setProfiling(boolean)}
+ * <br>
+ * IR 不记录源代码位置. IRGenerator 为每条赋值语句生成的指令以对具名变量的赋值结尾, return 语句以 RET 结尾,
+ * 因此以这样的指令为界把 IR 分为语句; 经过 pass 变换的 IR 也按同样的规则划分.
+ * <br>
+ * 可以用 {@link #dump(String)} 写入文本文件, 再用 {@link #read(String)} 读回, 供汇编生成时的寄存器分配使用. 每行一项:
+ * <ul>
+ *     <li>{@code kind <种类> <执行次数>}</li>
+ *     <li>{@code statement <序号> <被赋值的变量或 return> <执行的指令条数>}</li>
+ *     <li>{@code variable <变量名> <读次数> <写次数>}, 按读写总次数从多到少</li>
+ * </ul>
+ */
+public final class IRProfile {
+    /**
+     * 一条语句: 它赋值的变量名 (return 语句为 "return"), 以及其中被执行的指令条数
+     */
+    public record Statement(String target, long count) {
+    }
+
+    public static IRProfile read(String path) {
+        final var profile = new IRProfile();
+        for (final var line : FileUtils.readLines(path)) {
+            final var fields = line.trim().split("\\s+");
+            switch (fields[0]) {
+                case "kind" -> profile.kindCounts[InstructionKind.valueOf(fields[1]).ordinal()] = Long.parseLong(fields[2]);
+                case "statement" -> profile.statements.add(new Statement(fields[2], Long.parseLong(fields[3])));
+                case "variable" -> profile.variables.put(fields[1], new long[]{Long.parseLong(fields[2]), Long.parseLong(fields[3])});
+                case "" -> {
+                }
+                default -> throw new RuntimeException("Illegal line in profile %s: %s".formatted(path, line));
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * @return 该种指令被执行的次数
+     */
+    public long count(InstructionKind kind) {
+        return kindCounts[kind.ordinal()];
+    }
+
+    public List<Statement> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+
+    public long reads(IRVariable variable) {
+        return variables.getOrDefault(variable.getName(), NONE)[0];
+    }
+
+    public long writes(IRVariable variable) {
+        return variables.getOrDefault(variable.getName(), NONE)[1];
+    }
+
+    /**
+     * @return 变量被读写的总次数, 即它的热度; 剖析时未出现的变量为 0
+     */
+    public long accesses(IRVariable variable) {
+        final var counts = variables.getOrDefault(variable.getName(), NONE);
+        return counts[0] + counts[1];
+    }
+
+    public void dump(String path) {
+        final var lines = new ArrayList<String>();
+        for (final var kind : InstructionKind.values()) {
+            if (kindCounts[kind.ordinal()] > 0) {
+                lines.add("kind %s %d".formatted(kind, kindCounts[kind.ordinal()]));
+            }
+        }
+        for (int i = 0; i < statements.size(); i++) {
+            lines.add("statement %d %s %d".formatted(i + 1, statements.get(i).target(), statements.get(i).count()));
+        }
+        // 排序是稳定的, 热度相同的变量保持首次出现的顺序
+        variables.entrySet().stream()
+            .sorted(Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[0] + entry.getValue()[1]).reversed())
+            .forEach(entry -> lines.add("variable %s %d %d".formatted(entry.getKey(), entry.getValue()[0], entry.getValue()[1])));
+        FileUtils.writeLines(path, lines);
+    }
+
+    private static final long[] NONE = new long[2];
+
+    // 以 InstructionKind 的序号为下标
+    final long[] kindCounts = new long[InstructionKind.values().length];
+    final List<Statement> statements = new ArrayList<>();
+    // 变量名到 {读次数, 写次数}, 按首次出现的顺序
+    final Map<String, long[]> variables = new LinkedHashMap<>();
+
+    IRProfile() {
+    }
+}